@@ -18,8 +18,6 @@ package ca.sfu.federation;
 import ca.sfu.federation.viewer.ApplicationFrame;
 import com.javadocking.util.LookAndFeelUtil;
 import java.util.ResourceBundle;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JPopupMenu;
@@ -32,7 +30,6 @@ import org.apache.commons.lang.exception.ExceptionUtils;
  */
 public class Application implements Runnable {
 
-    private static ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
     private static ResourceBundle resource = ResourceBundle.getBundle(ApplicationContext.APPLICATION_PROPERTIES);
     private static ApplicationContext context = new ApplicationContext();
     private static ApplicationFrame frame;
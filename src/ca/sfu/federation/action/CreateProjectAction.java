@@ -18,6 +18,7 @@ package ca.sfu.federation.action;
 import ca.sfu.federation.Application;
 import ca.sfu.federation.model.Assembly;
 import ca.sfu.federation.model.Behavior;
+import ca.sfu.federation.model.ModelTransaction;
 import ca.sfu.federation.model.ParametricModel;
 import ca.sfu.federation.model.Scenario;
 import ca.sfu.federation.model.geometry.CoordinateSystem;
@@ -95,6 +96,8 @@ public class CreateProjectAction extends AbstractAction {
         logger.log(Level.INFO,"Creating a sample model");
         ParametricModel model = new ParametricModel();
         model.setName("mymodel");
+        // build the model in a single transaction, so that it is updated once
+        ModelTransaction tx = ModelTransaction.begin(model);
         try {
             // scenario 0
             Scenario sc0 = new Scenario("scenario0");
@@ -238,6 +241,8 @@ public class CreateProjectAction extends AbstractAction {
         } catch (Exception ex) {
             String stack = ExceptionUtils.getFullStackTrace(ex);
             logger.log(Level.WARNING,"Could not set update method\n{0}", stack);
+        } finally {
+            tx.commit();
         }
 
         return model;
@@ -15,20 +15,25 @@
  */
 package ca.sfu.federation.action;
 
+import ca.sfu.federation.model.DependencyGraph;
 import ca.sfu.federation.model.INamed;
+import ca.sfu.federation.utils.INamedUtils;
 import ca.sfu.federation.utils.ImageIconUtils;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.*;
 
 /**
- * Delete the INamed from the model.
+ * Delete the INamed from the model.  The user is told which elements depend
+ * on it before the delete is confirmed.
  * @author Davis Marques
  */
 public class EditDeleteAction extends AbstractAction {
     
+    private static final int MAX_LISTED = 10;   // number of dependant elements named in the confirmation
     private static final Logger logger = Logger.getLogger(EditDeleteAction.class.getName());
     private INamed target;
     
@@ -62,12 +67,39 @@ public class EditDeleteAction extends AbstractAction {
     //--------------------------------------------------------------------------
     
     public void actionPerformed(ActionEvent e) {
+        // warn if other elements depend on the target
+        String message = "Are you sure you want to delete '" + this.target.getName() + "'?";
+        List<INamed> dependants = DependencyGraph.getDependantsInModel(this.target);
+        if (dependants.size() > 0) {
+            message = getDependantsMessage(dependants) + "\n" + message;
+        }
         // confirm delete action before proceeding
-        int i = JOptionPane.showOptionDialog(null,"Are you sure you want to delete '" + this.target.getName() + "'?","Confirm Delete",JOptionPane.OK_CANCEL_OPTION,JOptionPane.PLAIN_MESSAGE,null,null,JOptionPane.OK_OPTION);
+        int i = JOptionPane.showOptionDialog(null,message,"Confirm Delete",JOptionPane.OK_CANCEL_OPTION,JOptionPane.PLAIN_MESSAGE,null,null,JOptionPane.OK_OPTION);
         if (i==0) {
             logger.log(Level.INFO,"INamedObjectDeleteAction performed action");
             this.target.delete();
         }
     }
+
+    /**
+     * Get a message listing the elements that depend on the target.
+     * @param Dependants Dependant elements.
+     * @return Message.
+     */
+    private static String getDependantsMessage(List<INamed> Dependants) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Dependants.size() == 1 ? "1 element depends" : Dependants.size() + " elements depend");
+        sb.append(" on it: ");
+        for (int i=0;i<Dependants.size() && i<MAX_LISTED;i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(INamedUtils.getCanonicalName(Dependants.get(i)));
+        }
+        if (Dependants.size() > MAX_LISTED) {
+            sb.append(", ...");
+        }
+        return sb.toString();
+    }
     
 } 
\ No newline at end of file
@@ -19,11 +19,13 @@ import ca.sfu.federation.ApplicationContext;
 import ca.sfu.federation.model.exception.GraphCycleException;
 import ca.sfu.federation.utils.IContextUtils;
 import ca.sfu.federation.utils.INamedUtils;
+import ca.sfu.federation.utils.PathResolver;
 import ca.sfu.federation.utils.ImageIconUtils;
 import java.awt.Graphics;
 import java.awt.Image;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.ImageIcon;
@@ -42,6 +44,10 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
     private Image thumbnail;            // thumbnail representation of the assembly
     private ImageIcon icon;             // icon representation of object
     private boolean visible;            // visibility state
+    private transient long stamp = INamedUtils.nextModificationStamp(); // modification stamp
+    private transient int id;           // element id, or 0 if not yet assigned
+    private transient DependencyGraph graph;    // dependency graph of the elements
+    private transient ElementStore store;       // elements indexed by name
 
     // a collection of parts for this object
     private ArrayList<INamed> elements = new ArrayList<INamed>();
@@ -82,21 +88,17 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
      */
     @Override
     public void add(INamed Named) throws IllegalArgumentException {
-        LinkedHashMap elementsByName = (LinkedHashMap) this.getElementMap();
-        if (!elementsByName.containsKey(Named.getName())) {
-            // add object
-            this.elements.add(Named);
-            // observe element for changes
-            if (Named instanceof Observable) {
-                Observable o = (Observable) Named;
-                o.addObserver(this);
-            }
-            // notify observers of change
-            this.setChanged();
-            this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_ELEMENT_ADD));
-        } else {
-            throw new IllegalArgumentException("An object identified by the same name already exists in the Context.");
+        // add object
+        this.getStore().add(Named);
+        this.getGraph().add(Named);
+        // observe element for changes
+        if (Named instanceof Observable) {
+            Observable o = (Observable) Named;
+            o.addObserver(this);
         }
+        // notify observers of change
+        this.setChanged();
+        this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_ELEMENT_ADD));
     }
 
     /**
@@ -113,7 +115,8 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
             }
         }
         // clear collections
-        this.elements.clear();
+        this.getStore().clear();
+        this.getGraph().clear();
         // notify observers
         this.setChanged();
         this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_ELEMENT_DELETE_REQUEST));
@@ -152,20 +155,18 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
 
     /**
      * Get the local Elements.
-     * @return Collection of NamedObjects in this context.
+     * @return Read-only map of the NamedObjects in this context, by name.
      */
     public Map<String,INamed> getElementMap() {
-        LinkedHashMap<String,INamed> map = new LinkedHashMap<String,INamed>();
-        Iterator it = this.elements.iterator();
-        while (it.hasNext()) {
-            INamed named = (INamed) it.next();
-            map.put(named.getName(),named);
-        }
-        return map;
+        return this.getStore().getElementMap();
     }
 
+    /**
+     * Get the local Elements.
+     * @return Read-only list of the NamedObjects in this context.
+     */
     public List<INamed> getElements() {
-        return this.elements;
+        return this.getStore().getElements();
     }
     
     /**
@@ -173,8 +174,31 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
      * @return Elements in order.
      */
     protected ArrayList getElementsInTopologicalOrder() throws GraphCycleException {
-        Map map = getElementMap();
-        return IContextUtils.getElementsInTopologicalOrder(map);
+        return this.getGraph().getElementsInTopologicalOrder();
+    }
+
+    /**
+     * Get the dependency graph of the elements.  The graph is not serialized,
+     * and is rebuilt when first required.
+     * @return Dependency graph.
+     */
+    protected DependencyGraph getGraph() {
+        if (this.graph == null) {
+            this.graph = new DependencyGraph(this.elements);
+        }
+        return this.graph;
+    }
+
+    /**
+     * Get the element store.  The store is not serialized, and is rebuilt 
+     * when first required.
+     * @return Element store.
+     */
+    private ElementStore getStore() {
+        if (this.store == null) {
+            this.store = new ElementStore(this.elements);
+        }
+        return this.store;
     }
 
     /**
@@ -193,6 +217,29 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
         return IContextUtils.getIndependantElements(elements);
     }
 
+    /**
+     * Get the element id.  The id is assigned when the object is first
+     * registered in a context, or when it is first requested, and does not
+     * change when the object is renamed.
+     * @return Element id.
+     */
+    @Override
+    public synchronized int getId() {
+        if (this.id == 0) {
+            this.id = INamedUtils.nextId();
+        }
+        return this.id;
+    }
+
+    /**
+     * Get the modification stamp.
+     * @return Modification stamp.
+     */
+    @Override
+    public long getModificationStamp() {
+        return this.stamp;
+    }
+
     /**
      * Get the name of this Object.
      * @return The name of this Object.
@@ -248,11 +295,7 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
      * @return True if found, false otherwise.
      */
     public boolean hasObject(String Name) {
-        Map map = getElementMap();
-        if (map.containsKey(Name)) {
-            return true;
-        }
-        return false;
+        return this.getStore().contains(Name);
     }
 
     /**
@@ -261,7 +304,53 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
      * @throws IllegalArgumentException The referenced object could not be located, or the resultant value is null.
      */
     public Object lookup(String Query) throws IllegalArgumentException {
-        return IContextUtils.lookup(this.getElementMap(), Query);
+        return PathResolver.lookup(this, Query);
+    }
+
+    /**
+     * Update a changed element and the elements that depend on it, in 
+     * topological order.  Elements that are not downstream of the change are
+     * not updated.  If the context is part of a model, the change is 
+     * propagated through the whole model.
+     * @param Changed The changed element.
+     * @return True if the affected elements updated successfully, false otherwise.
+     */
+    public boolean propagate(INamed Changed) {
+        return this.propagate(Collections.singletonList(Changed));
+    }
+
+    /**
+     * Update a set of changed elements and the elements that depend on them,
+     * in topological order.  If the context is part of a model, the changes
+     * are propagated through the whole model.
+     * @param Changed The changed elements.
+     * @return True if the affected elements updated successfully, false otherwise.
+     */
+    public boolean propagate(Collection<INamed> Changed) {
+        // the elements of a model are ordered by the model wide dependency graph
+        IContext root = IContextUtils.getRoot(this);
+        if (root != this && root instanceof ParametricModel) {
+            return root.propagate(Changed);
+        }
+        List<INamed> affected;
+        try {
+            affected = this.getGraph().getDownstreamElementsInTopologicalOrder(Changed);
+        } catch (GraphCycleException ex) {
+            String stack = ExceptionUtils.getFullStackTrace(ex);
+            logger.log(Level.WARNING,"Could not get elements in topological order\n\n{0}",stack);
+            return false;
+        }
+        // print out the update order for debugging
+        IContextUtils.logUpdateOrder(this,affected);
+        // update the affected nodes, independent nodes in parallel
+        boolean updateSuccessful = UpdateScheduler.update(this.getGraph().getLevels(affected), null);
+        // if update was successful, notify all observers
+        if (updateSuccessful) {
+            this.setChanged();
+            this.notifyObservers();
+        }
+        // return result
+        return updateSuccessful;
     }
 
     public void registerInContext(IContext Context) throws Exception {
@@ -284,15 +373,14 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
     @Override
     public void remove(INamed Named) throws IllegalArgumentException {
         String childname = Named.getName();
-        LinkedHashMap elementsByName = (LinkedHashMap) this.getElementMap();
-        if (elementsByName.containsKey(childname)) {
+        // remove the NamedObject from the collection
+        if (this.getStore().remove(Named)) {
             // stop listening on the NamedObject
             if (Named instanceof Observable) {
                 Observable o = (Observable) Named;
                 o.deleteObserver(this);
             }
-            // remove the NamedObject from the collection
-            this.elements.remove(Named);
+            this.getGraph().remove(Named);
             // notify observers
             this.setChanged();
             this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_ELEMENT_DELETED));
@@ -308,6 +396,15 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
         IContextUtils.restore(this);
     }
 
+    /**
+     * Mark the object as having changed, and advance its modification stamp.
+     */
+    @Override
+    protected synchronized void setChanged() {
+        super.setChanged();
+        this.stamp = INamedUtils.nextModificationStamp();
+    }
+
     /**
      * Set the Context for this object.
      * @param MyContext The Context for this object.
@@ -342,6 +439,8 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
      */
     public void setVisible(boolean Visible) {
         this.visible = Visible;
+        this.setChanged();
+        this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_PROPERTY_CHANGE));
     }
 
     /**
@@ -349,7 +448,20 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
      * @return True if updated successfully, false otherwise.
      */
     public boolean update() {
-        ArrayList childelements = new ArrayList();
+        boolean updateSuccessful = this.updateElements(null, null);
+        this.notifyUpdated(updateSuccessful);
+        // return result
+        return updateSuccessful;
+    }
+
+    /**
+     * Update the elements of the assembly without notifying its observers.
+     * @param Cancelled Flag that is set when the update is cancelled, or null.
+     * @param Updated Map to which updated nested contexts are added instead of notifying their observers, or null.
+     * @return True if updated successfully, false otherwise.
+     */
+    boolean updateElements(AtomicBoolean Cancelled, Map<IContext,Boolean> Updated) {
+        ArrayList<INamed> childelements = new ArrayList<INamed>();
         try {
             childelements = getElementsInTopologicalOrder();
         } catch (GraphCycleException ex) {
@@ -366,23 +478,20 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
             sb.append(" ");
         }
         logger.log(Level.FINE,"{0} update event. Update sequence is: ", new Object[]{this.name,sb.toString()});
-        // update nodes
-        boolean updateSuccessful = true;
-        Iterator it2 = childelements.iterator();
-        while (it2.hasNext() && updateSuccessful) {
-            Object object = it2.next();
-            if (object instanceof IUpdateable) {
-                IUpdateable updateable = (IUpdateable) object;
-                updateSuccessful = updateable.update();
-            }
-        }
+        // update nodes, independent nodes in parallel
+        return UpdateScheduler.update(this.getGraph().getLevels(childelements), null, Cancelled, Updated);
+    }
+
+    /**
+     * Notify observers that the assembly has been updated.
+     * @param Success True if the elements updated successfully.
+     */
+    void notifyUpdated(boolean Success) {
         // if update was successful, notify all observers
-        if (updateSuccessful) {
+        if (Success) {
             this.setChanged();
             this.notifyObservers();
         }
-        // return result
-        return updateSuccessful;
     }
 
     /**
@@ -399,12 +508,28 @@ public class Assembly extends Observable implements IContext, IViewable, IUpdate
                     INamed named = (INamed) o;
                     this.remove(named);
                     break;
+                case ApplicationContext.EVENT_ELEMENT_ADD:
+                case ApplicationContext.EVENT_ELEMENT_DELETED:
+                    // pass on changes to the elements of nested contexts
+                    this.setChanged();
+                    this.notifyObservers(eventId);
+                    break;
+                case ApplicationContext.EVENT_ELEMENT_CHANGE:
+                    // the element inputs, and so its dependancies, may have changed
+                    this.getGraph().update((INamed) o);
+                    break;
+                case ApplicationContext.EVENT_NAME_CHANGE:
+                    this.getStore().rename((INamed) o);
+                    break;
                 case ApplicationContext.EVENT_PROPERTY_CHANGE:
                 case ApplicationContext.EVENT_UPDATEMETHOD_CHANGE:
-                    logger.log(Level.ALL,"Assembly fired local update");
-                    this.update();
-                    this.setChanged();
-                    this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_ELEMENT_CHANGE));
+                    this.getGraph().update((INamed) o);
+                    if (!ModelTransaction.record(this, (INamed) o)) {
+                        logger.log(Level.ALL,"Assembly fired local update");
+                        this.propagate((INamed) o);
+                        this.setChanged();
+                        this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_ELEMENT_CHANGE));
+                    }
                     break;
             }
         }
@@ -16,7 +16,6 @@
 package ca.sfu.federation.model;
 
 import ca.sfu.federation.ApplicationContext;
-import ca.sfu.federation.model.annotations.Update;
 import ca.sfu.federation.model.exception.NonExistantMethodException;
 import ca.sfu.federation.model.exception.NonExistantUpdateAnnotationException;
 import ca.sfu.federation.utils.INamedUtils;
@@ -85,6 +84,7 @@ public class Component extends Observable implements IViewable, IGraphable, IUpd
     private IContext context;               // the parent context
     private String updateMethodName;        // the name of the user selected update method
     private transient Method updateMethod;  // the user selected update method
+    private transient UpdateMethod updateHandle; // the user selected update method, bound to its Inputs
     private InputTable inputTable;          // inputTable corresponding with the user selected update method signature
     private IViewable result;               // displayable result object .. in theory the result may not be displayable
 
@@ -92,6 +92,8 @@ public class Component extends Observable implements IViewable, IGraphable, IUpd
     private ImageIcon icon;                     // icon representation of component
     private Image thumbnail;                // thumbnail representation of component
     private boolean visible;                // true if the result object should be displayed
+    private transient long stamp = INamedUtils.nextModificationStamp(); // modification stamp
+    private transient int id;           // element id, or 0 if not yet assigned
     
     //--------------------------------------------------------------------------
 
@@ -101,6 +103,8 @@ public class Component extends Observable implements IViewable, IGraphable, IUpd
      */
     public Component(String Name) {
         this.name = Name;
+        this.inputTable = new InputTable(this);
+        this.inputTable.addObserver(this);
         this.icon = ImageIconUtils.loadIconById("component-icon");
         this.thumbnail = ImageIconUtils.loadIconById("component-thumbnail").getImage();
     }
@@ -177,6 +181,29 @@ public class Component extends Observable implements IViewable, IGraphable, IUpd
         return this.inputTable;
     }
     
+    /**
+     * Get the element id.  The id is assigned when the object is first
+     * registered in a context, or when it is first requested, and does not
+     * change when the object is renamed.
+     * @return Element id.
+     */
+    @Override
+    public synchronized int getId() {
+        if (this.id == 0) {
+            this.id = INamedUtils.nextId();
+        }
+        return this.id;
+    }
+
+    /**
+     * Get the modification stamp.
+     * @return Modification stamp.
+     */
+    @Override
+    public long getModificationStamp() {
+        return this.stamp;
+    }
+
     /**
      * Get the name of this object.
      * @return The name of this object.
@@ -214,15 +241,7 @@ public class Component extends Observable implements IViewable, IGraphable, IUpd
      * @return Update methods
      */
     public List<Method> getUpdateMethods() {
-        ArrayList<Method> updatemethods = new ArrayList<Method>();
-        Method[] methods = this.getClass().getDeclaredMethods();
-        // is method is annotated as an update method, add it to the list
-        for (int i=0;i<methods.length;i++) {
-            if (methods[i].isAnnotationPresent(Update.class)) {
-                updatemethods.add(methods[i]);
-            }
-        }
-        return updatemethods;
+        return UpdateMethodRegistry.getUpdateMethods(this.getClass());
     }
     
     /**
@@ -254,6 +273,15 @@ public class Component extends Observable implements IViewable, IGraphable, IUpd
         }
     }
     
+    /**
+     * Mark the object as having changed, and advance its modification stamp.
+     */
+    @Override
+    protected synchronized void setChanged() {
+        super.setChanged();
+        this.stamp = INamedUtils.nextModificationStamp();
+    }
+
     /**
      * Set the Context.
      * @param MyContext The Context for the object.
@@ -275,22 +303,31 @@ public class Component extends Observable implements IViewable, IGraphable, IUpd
     
     /**
      * Set the user input value for a particular input property.  Listen for 
-     * changes on any referenced object properties.
+     * changes on any referenced object properties.  Once all inputs have been
+     * set, the element and the elements downstream of it are updated.
      * @param InputName The name of the input property.
      * @param UserInput The user value for the property.
+     * @throws IllegalArgumentException The user value is malformed, or does not resolve to the class required by the input.
      * TODO: need to consider here what happens if there is no input table, or the named input does not exist
      */
-    public void setInput(String InputName, String UserInput) {
+    public void setInput(String InputName, String UserInput) throws IllegalArgumentException {
         if (this.inputTable != null && this.inputTable.hasInput(InputName)) {
-            this.inputTable.setInput(InputName,UserInput);
-            if (this.inputTable.isPrimed()) {
-                if (this.context instanceof IUpdateable) {
-                    IUpdateable updateable = (IUpdateable) this.context;
-                    updateable.update();
+            // keep background updates off the model while it is edited
+            UpdateService.hold(this.context);
+            try {
+                this.inputTable.setInput(InputName,UserInput);
+                if (this.inputTable.isPrimed()) {
+                    // update this element and the elements that depend on it, 
+                    // or defer the update until the open transaction is committed
+                    if (this.context != null && !ModelTransaction.record(this.context, this)) {
+                        this.context.propagate(this);
+                    }
+                } else if (this.context == null || !ModelTransaction.isOpen(this.context)) {
+                    // just update this element
+                    this.update();
                 }
-            } else {
-                // just update this element
-                this.update();
+            } finally {
+                UpdateService.release(this.context);
             }
         }
     }
@@ -316,34 +353,30 @@ public class Component extends Observable implements IViewable, IGraphable, IUpd
      * @throws NonExistantUpdateAnnotationException The named method does not have an Update annotation.
      */
     public void setUpdateMethod(String UpdateMethodName) throws NonExistantMethodException, NonExistantUpdateAnnotationException {
-        // init
-        Method[] method = this.getClass().getDeclaredMethods();
-        boolean found = false;
-        int i = 0;
-        // for each method
-        while (!found && i<method.length) {
-            // if it is the named method
-            if (method[i].getName().equals(UpdateMethodName) &&
-                method[i].isAnnotationPresent(Update.class)) {
-                // set it as the current update method
-                this.updateMethod = method[i];
-                this.updateMethodName = UpdateMethodName;
-                found = true;
-            } else {
-                throw new NonExistantUpdateAnnotationException();
-            }
-            i++;
-        }
+        // find the named update method
+        UpdateMethod method = UpdateMethodRegistry.getUpdateMethod(this.getClass(), UpdateMethodName);
         // if the update method was not found, throw an exception
-        if (!found) {
+        if (method == null && UpdateMethodRegistry.hasMethod(this.getClass(), UpdateMethodName)) {
+            throw new NonExistantUpdateAnnotationException();
+        } else if (method == null) {
             throw new NonExistantMethodException();
         }
-        // create an input property table for the new update method
+        // keep background updates off the model while it is edited
+        UpdateService.hold(this.context);
         try {
-            this.inputTable.generateInputs(this.updateMethod);
-        } catch (Exception ex) {
-            String stack = ExceptionUtils.getFullStackTrace(ex);
-            logger.log(Level.WARNING,"Could not get inputs\n\n{0}",stack);
+            // set it as the current update method
+            this.updateMethod = method.getMethod();
+            this.updateHandle = method;
+            this.updateMethodName = UpdateMethodName;
+            // create an input property table for the new update method
+            try {
+                this.inputTable.generateInputs(this.updateMethod);
+            } catch (Exception ex) {
+                String stack = ExceptionUtils.getFullStackTrace(ex);
+                logger.log(Level.WARNING,"Could not get inputs\n\n{0}",stack);
+            }
+        } finally {
+            UpdateService.release(this.context);
         }
 //        // notify observers
 //        this.setChanged();
@@ -371,18 +404,18 @@ public class Component extends Observable implements IViewable, IGraphable, IUpd
         // init
         boolean theresult = false;
         // if an update method has been set
-        if (this.updateMethod != null && this.inputTable != null) {
+        if (this.updateHandle != null && this.inputTable != null) {
             // the update method has been set but the input table has not been primed;
             // we can not update, so return false to signal that the update has not succeeded
             if (!this.inputTable.isPrimed()) {
                 return false;
             }
-            // get update method arguements
-            Object[] args = this.inputTable.getInputValues();
-            // invoke the update method
+            // invoke the update method; arguments are read from the inputs
             try {
-                Object updateresult = this.updateMethod.invoke(this,args);
+                this.updateHandle.invoke(this,this.inputTable.getInputs());
                 theresult = true;
+                // the update method changes our state directly
+                this.stamp = INamedUtils.nextModificationStamp();
             } catch (Exception ex) {
                 String stack = ExceptionUtils.getFullStackTrace(ex);
                 logger.log(Level.WARNING,"Could not update state\n\n{0}",stack);
@@ -0,0 +1,973 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.model.exception.GraphCycleException;
+import ca.sfu.federation.utils.IContextUtils;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The dependency graph of the elements in a context.  Each IGraphable element
+ * is assigned an integer node id, and the edges of the graph are held as
+ * arrays of node ids, so the graph is traversed without hashing or map
+ * allocation.  Elements are mapped to their nodes by element id, in an int
+ * map, so no boxed keys or values are held for each node.  The graph is 
+ * maintained incrementally: adding or removing an element touches only that
+ * element's edges, and the edges of an element are rebuilt from its 
+ * dependancies only when the element reports a change.  The topological
+ * order is computed with Kahn's algorithm in O(V+E) time and is reused until
+ * the graph changes.  The elements downstream of a change are
+ * found by walking the successor arrays, in time proportional to the number
+ * of affected elements and their edges, and the direct dependants of an
+ * element are read from its successor array, so that deletion checks do not
+ * scan the dependancies of every element.  If the graph contains a cycle, the
+ * members of each cycle are found with Tarjan's algorithm among the nodes 
+ * that could not be sorted, and a proposed dependancy can be checked for a
+ * cycle by searching downstream of the element before it is made.
+ * Dependancies on objects outside the graph are ignored, since those objects
+ * are updated by their own context.  The elements that depend on each such
+ * object are indexed by its element id, so that if the object is later added
+ * to the graph, only the edges of the elements that depend on it are rebuilt.
+ * @author Davis Marques
+ */
+public class DependencyGraph {
+
+    private static final int[] EMPTY = new int[0];
+
+    private ArrayList<INamed> nodes = new ArrayList<INamed>();      // element for each node id, or null if the id is free
+    private IntMap index = new IntMap();            // node id for each element id
+    private int[][] predecessors = new int[16][];   // ids of the nodes on which each node depends
+    private int[][] successors = new int[16][];     // ids of the nodes that depend on each node
+    private int[] successorCount = new int[16];     // number of successors of each node
+    private int[] free = new int[16];               // node ids available for reuse
+    private int freeCount;                          // number of free node ids
+    private int[][] missing = new int[16][];        // element ids of the graphable objects outside the graph on which each node depends
+    private IntMap waiting = new IntMap();          // slot in waiters for each element id missing from the graph
+    private ArrayList<BitSet> waiters = new ArrayList<BitSet>(); // ids of the nodes that depend on each missing element, or null if the slot is free
+    private int[] freeWaiters = new int[16];        // slots in waiters available for reuse
+    private int freeWaiterCount;                    // number of free slots in waiters
+    private int[] order;                            // node ids in topological order, or null if the graph has changed
+    private int[] visit = new int[16];              // generation in which each node was last visited by a partial traversal
+    private int[] counter = new int[16];            // per node counter for partial traversals
+    private int generation;                         // current partial traversal generation
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * DependencyGraph constructor.
+     */
+    public DependencyGraph() {
+    }
+
+    /**
+     * DependencyGraph constructor.
+     * @param Elements Elements of the graph.
+     */
+    public DependencyGraph(Collection<INamed> Elements) {
+        this.addAll(Elements);
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Add an element to the graph.  Elements that do not implement IGraphable
+     * are not ordered and are ignored.
+     * @param Named Element.
+     */
+    public synchronized void add(INamed Named) {
+        if (this.addNode(Named)) {
+            this.update(Named);
+            // the element may be a missing dependancy of other nodes
+            if (this.waiting.containsKey(Named.getId())) {
+                BitSet dependants = (BitSet) this.waiters.get(this.waiting.get(Named.getId())).clone();
+                for (int i=dependants.nextSetBit(0);i>=0;i=dependants.nextSetBit(i + 1)) {
+                    this.update(this.nodes.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a collection of elements to the graph.
+     * @param Elements Elements.
+     */
+    protected synchronized void addAll(Collection<INamed> Elements) {
+        // add all nodes before any edges, so that edges between elements are
+        // found regardless of the order of the collection
+        Iterator<INamed> iter = Elements.iterator();
+        while (iter.hasNext()) {
+            this.addNode(iter.next());
+        }
+        iter = Elements.iterator();
+        while (iter.hasNext()) {
+            this.update(iter.next());
+        }
+    }
+
+    /**
+     * Add a node for an element, without edges.
+     * @param Named Element.
+     * @return True if a node was added, false otherwise.
+     */
+    private boolean addNode(INamed Named) {
+        if (!(Named instanceof IGraphable) || this.nodeOf(Named) >= 0) {
+            return false;
+        }
+        int id;
+        if (this.freeCount > 0) {
+            id = this.free[--this.freeCount];
+            this.nodes.set(id, Named);
+        } else {
+            id = this.nodes.size();
+            this.nodes.add(Named);
+            if (id == this.predecessors.length) {
+                int capacity = id * 2;
+                this.predecessors = copyOf(this.predecessors, capacity);
+                this.successors = copyOf(this.successors, capacity);
+                this.successorCount = copyOf(this.successorCount, capacity);
+                this.missing = copyOf(this.missing, capacity);
+                this.visit = copyOf(this.visit, capacity);
+                this.counter = copyOf(this.counter, capacity);
+            }
+        }
+        this.index.put(Named.getId(), id);
+        this.predecessors[id] = EMPTY;
+        this.successors[id] = EMPTY;
+        this.successorCount[id] = 0;
+        this.missing[id] = EMPTY;
+        this.order = null;
+        return true;
+    }
+
+    /**
+     * Add an edge from a node to one of its successors.
+     * @param Node Node id.
+     * @param Successor Successor node id.
+     */
+    private void addSuccessor(int Node, int Successor) {
+        int count = this.successorCount[Node];
+        if (count == this.successors[Node].length) {
+            this.successors[Node] = copyOf(this.successors[Node], Math.max(4, count * 2));
+        }
+        this.successors[Node][count] = Successor;
+        this.successorCount[Node] = count + 1;
+    }
+
+    /**
+     * Record that a node depends on an element that is missing from the
+     * graph.
+     * @param ElementId Element id of the missing element.
+     * @param Node Node id.
+     */
+    private void addWaiter(int ElementId, int Node) {
+        BitSet dependants;
+        if (this.waiting.containsKey(ElementId)) {
+            dependants = this.waiters.get(this.waiting.get(ElementId));
+        } else {
+            dependants = new BitSet();
+            int slot;
+            if (this.freeWaiterCount > 0) {
+                slot = this.freeWaiters[--this.freeWaiterCount];
+                this.waiters.set(slot, dependants);
+            } else {
+                slot = this.waiters.size();
+                this.waiters.add(dependants);
+            }
+            this.waiting.put(ElementId, slot);
+        }
+        dependants.set(Node);
+    }
+
+    /**
+     * Remove all elements from the graph.
+     */
+    public synchronized void clear() {
+        this.nodes.clear();
+        this.index.clear();
+        this.waiting.clear();
+        this.waiters.clear();
+        this.freeWaiterCount = 0;
+        this.freeCount = 0;
+        this.order = null;
+    }
+
+    /**
+     * Determine if an element is a node of the graph.
+     * @param Named Element.
+     * @return True if the element is in the graph, false otherwise.
+     */
+    public synchronized boolean contains(INamed Named) {
+        return this.nodeOf(Named) >= 0;
+    }
+
+    /**
+     * Copy an array into a new array of the given length.
+     */
+    private static int[] copyOf(int[] Values, int Length) {
+        int[] result = new int[Length];
+        System.arraycopy(Values, 0, result, 0, Math.min(Values.length, Length));
+        return result;
+    }
+
+    /**
+     * Copy an array into a new array of the given length.
+     */
+    private static int[][] copyOf(int[][] Values, int Length) {
+        int[][] result = new int[Length][];
+        System.arraycopy(Values, 0, result, 0, Math.min(Values.length, Length));
+        return result;
+    }
+
+    /**
+     * Get the objects on which an element depends.  Subclasses may override
+     * this method to resolve dependancies more finely than the element does.
+     * @param Named Element.
+     * @return Objects on which the element depends.
+     */
+    protected Collection getDependancies(INamed Named) {
+        return ((IGraphable) Named).getDependancies().values();
+    }
+
+    /**
+     * Get the objects on which an expression depends.  Subclasses that resolve
+     * the dependancies of elements more finely must resolve the dependancies 
+     * of expressions in the same way.
+     * @param Expr Expression.
+     * @return Objects on which the expression depends.
+     * @throws IllegalArgumentException A reference in the expression can not be resolved.
+     */
+    protected Collection getDependancies(Expression Expr) throws IllegalArgumentException {
+        return Expr.getDependancies();
+    }
+
+    /**
+     * Get the elements that depend directly on an element.  The dependants
+     * are read from the successor edges of the element's node, so the cost
+     * is proportional to their number rather than to the size of the graph.
+     * @param Named Element.
+     * @return Dependants, or an empty list if the element is not in the graph.
+     */
+    public synchronized List<INamed> getDependants(INamed Named) {
+        int id = this.nodeOf(Named);
+        if (id < 0) {
+            return new ArrayList<INamed>();
+        }
+        ArrayList<INamed> result = new ArrayList<INamed>(this.successorCount[id]);
+        for (int i=0;i<this.successorCount[id];i++) {
+            result.add(this.nodes.get(this.successors[id][i]));
+        }
+        return result;
+    }
+
+    /**
+     * Get the elements of the model that depend on an element, or on any
+     * element of a context.  The model wide graph is used where the model
+     * has one, so that dependants in other contexts are found; otherwise the
+     * graph of the element's own context is used.  Elements within the
+     * context itself are not reported.
+     * @param Named Element or context.
+     * @return Elements that depend directly on the element.
+     */
+    public static List<INamed> getDependantsInModel(INamed Named) {
+        // init
+        ArrayList<INamed> result = new ArrayList<INamed>();
+        DependencyGraph graph = null;
+        IContext context = Named.getContext();
+        if (context != null && IContextUtils.getRoot(context) instanceof ParametricModel) {
+            graph = ((ParametricModel) IContextUtils.getRoot(context)).getGraph();
+        } else {
+            graph = getGraph(Named);
+        }
+        if (graph == null) {
+            return result;
+        }
+        // the elements that would be removed along with the element
+        ArrayList<INamed> removed = new ArrayList<INamed>();
+        IdentityHashMap<Object,Object> visited = new IdentityHashMap<Object,Object>();
+        if (Named instanceof IContext) {
+            ModelGraph.collect((IContext) Named, removed, visited);
+        } else {
+            removed.add(Named);
+            visited.put(Named, Named);
+        }
+        // collect the dependants outside of them
+        Iterator<INamed> iter = removed.iterator();
+        while (iter.hasNext()) {
+            Iterator<INamed> deps = graph.getDependants(iter.next()).iterator();
+            while (deps.hasNext()) {
+                INamed dependant = deps.next();
+                if (!visited.containsKey(dependant)) {
+                    visited.put(dependant, dependant);
+                    result.add(dependant);
+                }
+            }
+        }
+        // return result
+        return result;
+    }
+
+    /**
+     * Get the dependency graph in which an element is ordered.  The model wide
+     * graph is used if it is current, otherwise the graph of the element's 
+     * own context.
+     * @param Named Element.
+     * @return Dependency graph, or null if the element is not in a context.
+     */
+    static DependencyGraph getGraph(INamed Named) {
+        IContext context = Named.getContext();
+        if (context == null) {
+            return null;
+        }
+        IContext root = IContextUtils.getRoot(context);
+        if (root instanceof ParametricModel && ((ParametricModel) root).getCurrentGraph() != null) {
+            return ((ParametricModel) root).getCurrentGraph();
+        } else if (context instanceof Assembly) {
+            return ((Assembly) context).getGraph();
+        } else if (context instanceof Scenario) {
+            return ((Scenario) context).getGraph();
+        }
+        return null;
+    }
+
+    /**
+     * Find the strongly connected components of a set of nodes with Tarjan's
+     * algorithm, in O(V+E) time.  Only edges between the given nodes are 
+     * followed.
+     * @param Candidates Node ids.
+     * @param Count Number of node ids.
+     * @return Members of each component that forms a cycle.
+     */
+    private List<List<INamed>> findCycles(int[] Candidates, int Count) {
+        // init
+        int g = this.nextGeneration();
+        for (int i=0;i<Count;i++) {
+            this.visit[Candidates[i]] = g;
+        }
+        int n = this.nodes.size();
+        int[] index = new int[n];           // discovery index of each node, from 1, or 0 if not yet discovered
+        int[] low = new int[n];             // lowest discovery index reachable from each node
+        boolean[] stacked = new boolean[n]; // true if the node is on the component stack
+        int[] stack = new int[Count];       // component stack
+        int[] calls = new int[Count];       // depth first search path
+        int[] edges = new int[Count];       // next successor to visit for each node on the search path
+        int sp = 0;
+        int next = 1;
+        ArrayList<List<INamed>> result = new ArrayList<List<INamed>>();
+        // search from each undiscovered node
+        for (int i=0;i<Count;i++) {
+            if (index[Candidates[i]] != 0) {
+                continue;
+            }
+            int depth = 0;
+            int root = Candidates[i];
+            index[root] = low[root] = next++;
+            stack[sp++] = root;
+            stacked[root] = true;
+            calls[depth] = root;
+            edges[depth++] = 0;
+            while (depth > 0) {
+                int id = calls[depth - 1];
+                if (edges[depth - 1] < this.successorCount[id]) {
+                    int succ = this.successors[id][edges[depth - 1]++];
+                    if (this.visit[succ] != g) {
+                        continue;
+                    }
+                    if (index[succ] == 0) {
+                        index[succ] = low[succ] = next++;
+                        stack[sp++] = succ;
+                        stacked[succ] = true;
+                        calls[depth] = succ;
+                        edges[depth++] = 0;
+                    } else if (stacked[succ]) {
+                        low[id] = Math.min(low[id], index[succ]);
+                    }
+                    continue;
+                }
+                // all successors have been visited
+                depth--;
+                if (depth > 0) {
+                    int caller = calls[depth - 1];
+                    low[caller] = Math.min(low[caller], low[id]);
+                }
+                if (low[id] == index[id]) {
+                    // the node is the root of a component
+                    ArrayList<INamed> component = new ArrayList<INamed>();
+                    int member;
+                    do {
+                        member = stack[--sp];
+                        stacked[member] = false;
+                        component.add(0, this.nodes.get(member));
+                    } while (member != id);
+                    if (component.size() > 1 || indexOf(this.predecessors[id], this.predecessors[id].length, id) >= 0) {
+                        result.add(component);
+                    }
+                }
+            }
+        }
+        // return result
+        return result;
+    }
+
+    /**
+     * Find the cycle that would be formed if an element depended on the 
+     * objects referenced by an expression.  Only the elements downstream of 
+     * the element are searched.
+     * @param Named Element.
+     * @param Expr Expression.
+     * @return Elements of the cycle, starting with the element and following the order of dependancy, or null if no cycle would be formed.
+     * @throws IllegalArgumentException A reference in the expression can not be resolved.
+     */
+    public synchronized List<INamed> getCycle(INamed Named, Expression Expr) throws IllegalArgumentException {
+        // init
+        Collection deps = this.getDependancies(Expr);
+        if (deps.contains(Named)) {
+            return Collections.singletonList(Named);
+        }
+        int key = this.nodeOf(Named);
+        if (key < 0 || deps.isEmpty()) {
+            return null;
+        }
+        BitSet targets = new BitSet();
+        Iterator iter = deps.iterator();
+        while (iter.hasNext()) {
+            int dep = this.nodeOf(iter.next());
+            if (dep >= 0) {
+                targets.set(dep);
+            }
+        }
+        if (targets.isEmpty()) {
+            return null;
+        }
+        // search breadth first for a dependancy downstream of the element,
+        // recording the node from which each node was reached
+        int g = this.nextGeneration();
+        int[] queue = new int[16];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = key;
+        this.visit[key] = g;
+        while (head < tail) {
+            int id = queue[head++];
+            if (targets.get(id)) {
+                // return result
+                LinkedList<INamed> result = new LinkedList<INamed>();
+                for (int node=id;node!=key;node=this.counter[node]) {
+                    result.addFirst(this.nodes.get(node));
+                }
+                result.addFirst(Named);
+                return result;
+            }
+            int[] succs = this.successors[id];
+            for (int i=0;i<this.successorCount[id];i++) {
+                if (this.visit[succs[i]] != g) {
+                    this.visit[succs[i]] = g;
+                    this.counter[succs[i]] = id;
+                    if (tail == queue.length) {
+                        queue = copyOf(queue, tail * 2);
+                    }
+                    queue[tail++] = succs[i];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the cycles in the graph.
+     * @return Members of each cycle, or an empty list if the graph is acyclic.
+     */
+    public synchronized List<List<INamed>> getCycles() {
+        try {
+            if (this.order == null) {
+                this.order = this.sort();
+            }
+        } catch (GraphCycleException ex) {
+            return ex.getCycles();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Get the changed elements and all elements that depend on them, directly
+     * or indirectly, in topological order.  The cost is proportional to the
+     * number of affected elements and their edges, not to the size of the 
+     * graph.
+     * @param Changed Changed elements.  Elements that are not in the graph are ignored.
+     * @return Affected elements in topological order.
+     * @throws GraphCycleException The affected part of the graph contains a cycle.
+     */
+    public synchronized ArrayList<INamed> getDownstreamElementsInTopologicalOrder(Collection<INamed> Changed) throws GraphCycleException {
+        // init
+        int g = this.nextGeneration();
+        int[] closure = new int[Math.max(4, Changed.size())];
+        int n = 0;
+        // mark the changed nodes
+        Iterator<INamed> iter = Changed.iterator();
+        while (iter.hasNext()) {
+            int key = this.nodeOf(iter.next());
+            if (key >= 0 && this.visit[key] != g) {
+                this.visit[key] = g;
+                if (n == closure.length) {
+                    closure = copyOf(closure, n * 2);
+                }
+                closure[n++] = key;
+            }
+        }
+        // mark the nodes downstream of the changed nodes
+        for (int head=0;head<n;head++) {
+            int id = closure[head];
+            int[] succs = this.successors[id];
+            for (int i=0;i<this.successorCount[id];i++) {
+                if (this.visit[succs[i]] != g) {
+                    this.visit[succs[i]] = g;
+                    if (n == closure.length) {
+                        closure = copyOf(closure, n * 2);
+                    }
+                    closure[n++] = succs[i];
+                }
+            }
+        }
+        // count the predecessors of each marked node that are also marked
+        for (int i=0;i<n;i++) {
+            int[] preds = this.predecessors[closure[i]];
+            int count = 0;
+            for (int j=0;j<preds.length;j++) {
+                if (this.visit[preds[j]] == g) {
+                    count++;
+                }
+            }
+            this.counter[closure[i]] = count;
+        }
+        // sort the marked nodes
+        int[] sorted = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int i=0;i<n;i++) {
+            if (this.counter[closure[i]] == 0) {
+                sorted[tail++] = closure[i];
+            }
+        }
+        while (head < tail) {
+            int id = sorted[head++];
+            int[] succs = this.successors[id];
+            for (int i=0;i<this.successorCount[id];i++) {
+                if (--this.counter[succs[i]] == 0) {
+                    sorted[tail++] = succs[i];
+                }
+            }
+        }
+        if (tail < n) {
+            // the nodes that could not be sorted lie on or after a cycle
+            int[] remaining = new int[n - tail];
+            int count = 0;
+            for (int i=0;i<n;i++) {
+                if (this.counter[closure[i]] > 0) {
+                    remaining[count++] = closure[i];
+                }
+            }
+            throw new GraphCycleException(this.findCycles(remaining, count));
+        }
+        // return result
+        ArrayList<INamed> result = new ArrayList<INamed>(n);
+        for (int i=0;i<n;i++) {
+            result.add(this.nodes.get(sorted[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Get the elements in the graph on which an element depends directly.
+     * @param Named Element.
+     * @return Predecessors, or an empty list if the element is not in the graph.
+     */
+    public synchronized List<INamed> getPredecessors(INamed Named) {
+        int key = this.nodeOf(Named);
+        if (key < 0) {
+            return new ArrayList<INamed>();
+        }
+        int[] preds = this.predecessors[key];
+        ArrayList<INamed> result = new ArrayList<INamed>(preds.length);
+        for (int i=0;i<preds.length;i++) {
+            result.add(this.nodes.get(preds[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Determine if any element depends directly on an element.
+     * @param Named Element.
+     * @return True if the element has dependants in the graph, false otherwise.
+     */
+    public synchronized boolean hasDependants(INamed Named) {
+        int key = this.nodeOf(Named);
+        return key >= 0 && this.successorCount[key] > 0;
+    }
+
+    /**
+     * Partition elements into levels, such that no element depends on another
+     * element of the same or a later level.  The elements of a level are 
+     * independent of each other and may be updated in any order, or at the
+     * same time.  An element is placed one level after the latest level of the
+     * elements on which it depends.  Elements keep their relative order within
+     * a level.
+     * @param Elements Elements in topological order.
+     * @return Levels, from first to last.
+     */
+    public synchronized List<List<INamed>> getLevels(List<INamed> Elements) {
+        // init
+        int g = this.nextGeneration();
+        ArrayList<List<INamed>> result = new ArrayList<List<INamed>>();
+        // each element follows the latest level of its predecessors in the list
+        Iterator<INamed> iter = Elements.iterator();
+        while (iter.hasNext()) {
+            INamed named = iter.next();
+            int id = this.nodeOf(named);
+            int level = 0;
+            if (id >= 0) {
+                int[] preds = this.predecessors[id];
+                for (int i=0;i<preds.length;i++) {
+                    if (this.visit[preds[i]] == g) {
+                        level = Math.max(level, this.counter[preds[i]] + 1);
+                    }
+                }
+                this.visit[id] = g;
+                this.counter[id] = level;
+            }
+            if (level == result.size()) {
+                result.add(new ArrayList<INamed>());
+            }
+            result.get(level).add(named);
+        }
+        // return result
+        return result;
+    }
+
+    /**
+     * Get the elements of the graph in topological order, so that each element
+     * follows all of the elements on which it depends.
+     * @return Elements in topological order.
+     * @throws GraphCycleException The graph contains a cycle.
+     */
+    public synchronized ArrayList<INamed> getElementsInTopologicalOrder() throws GraphCycleException {
+        if (this.order == null) {
+            this.order = this.sort();
+        }
+        ArrayList<INamed> result = new ArrayList<INamed>(this.order.length);
+        for (int i=0;i<this.order.length;i++) {
+            result.add(this.nodes.get(this.order[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Rebuild the edges of every element from its dependancies.
+     */
+    public synchronized void refresh() {
+        for (int i=0;i<this.nodes.size();i++) {
+            if (this.nodes.get(i) != null) {
+                this.update(this.nodes.get(i));
+            }
+        }
+    }
+
+    /**
+     * Get the node of an element.
+     * @param Named Element.
+     * @return Node id, or -1 if the object is not an element of the graph.
+     */
+    private int nodeOf(Object Named) {
+        if (!(Named instanceof INamed)) {
+            return -1;
+        }
+        return this.index.get(((INamed) Named).getId());
+    }
+
+    /**
+     * Start a new partial traversal generation.
+     * @return Generation.
+     */
+    private int nextGeneration() {
+        if (this.generation == Integer.MAX_VALUE) {
+            this.visit = new int[this.visit.length];
+            this.generation = 0;
+        }
+        return ++this.generation;
+    }
+
+    /**
+     * Remove an element from the graph, along with its edges.
+     * @param Named Element.
+     */
+    public synchronized void remove(INamed Named) {
+        int id = Named == null ? -1 : this.index.remove(Named.getId());
+        if (id < 0) {
+            return;
+        }
+        // detach from the nodes on which the element depends
+        int[] preds = this.predecessors[id];
+        for (int i=0;i<preds.length;i++) {
+            this.removeSuccessor(preds[i], id);
+        }
+        // detach the nodes that depend on the element; the element is now
+        // missing from the graph
+        int[] succs = this.successors[id];
+        for (int i=0;i<this.successorCount[id];i++) {
+            this.predecessors[succs[i]] = without(this.predecessors[succs[i]], id);
+            this.missing[succs[i]] = with(this.missing[succs[i]], Named.getId());
+            this.addWaiter(Named.getId(), succs[i]);
+        }
+        // no longer wait for the elements on which the element depends
+        int[] absent = this.missing[id];
+        for (int i=0;i<absent.length;i++) {
+            this.removeWaiter(absent[i], id);
+        }
+        // release the id
+        this.nodes.set(id, null);
+        this.predecessors[id] = EMPTY;
+        this.successors[id] = EMPTY;
+        this.successorCount[id] = 0;
+        this.missing[id] = EMPTY;
+        if (this.freeCount == this.free.length) {
+            this.free = copyOf(this.free, this.freeCount * 2);
+        }
+        this.free[this.freeCount++] = id;
+        this.order = null;
+    }
+
+    /**
+     * Remove an edge from a node to one of its successors.
+     * @param Node Node id.
+     * @param Successor Successor node id.
+     */
+    private void removeSuccessor(int Node, int Successor) {
+        int[] succs = this.successors[Node];
+        int count = this.successorCount[Node];
+        for (int i=0;i<count;i++) {
+            if (succs[i] == Successor) {
+                succs[i] = succs[count - 1];
+                this.successorCount[Node] = count - 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Record that a node no longer depends on an element that is missing
+     * from the graph.
+     * @param ElementId Element id of the missing element.
+     * @param Node Node id.
+     */
+    private void removeWaiter(int ElementId, int Node) {
+        if (!this.waiting.containsKey(ElementId)) {
+            return;
+        }
+        int slot = this.waiting.get(ElementId);
+        BitSet dependants = this.waiters.get(slot);
+        dependants.clear(Node);
+        if (dependants.isEmpty()) {
+            // release the slot
+            this.waiting.remove(ElementId);
+            this.waiters.set(slot, null);
+            if (this.freeWaiterCount == this.freeWaiters.length) {
+                this.freeWaiters = copyOf(this.freeWaiters, this.freeWaiterCount * 2);
+            }
+            this.freeWaiters[this.freeWaiterCount++] = slot;
+        }
+    }
+
+    /**
+     * Get the number of elements in the graph.
+     * @return Number of elements.
+     */
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+    /**
+     * Sort the graph with Kahn's algorithm.
+     * @return Node ids in topological order.
+     * @throws GraphCycleException The graph contains a cycle.
+     */
+    private int[] sort() throws GraphCycleException {
+        // init
+        int n = this.nodes.size();
+        int[] indegree = new int[n];
+        int[] result = new int[this.index.size()];
+        int head = 0;
+        int tail = 0;
+        // nodes without dependancies are ready, in the order they were added
+        for (int i=0;i<n;i++) {
+            if (this.nodes.get(i) != null) {
+                indegree[i] = this.predecessors[i].length;
+                if (indegree[i] == 0) {
+                    result[tail++] = i;
+                }
+            }
+        }
+        // a node is ready once all of its predecessors have been ordered
+        while (head < tail) {
+            int id = result[head++];
+            int[] succs = this.successors[id];
+            for (int i=0;i<this.successorCount[id];i++) {
+                if (--indegree[succs[i]] == 0) {
+                    result[tail++] = succs[i];
+                }
+            }
+        }
+        if (tail < result.length) {
+            // the nodes that could not be sorted lie on or after a cycle
+            int[] remaining = new int[result.length - tail];
+            int count = 0;
+            for (int i=0;i<n;i++) {
+                if (this.nodes.get(i) != null && indegree[i] > 0) {
+                    remaining[count++] = i;
+                }
+            }
+            throw new GraphCycleException(this.findCycles(remaining, count));
+        }
+        // return result
+        return result;
+    }
+
+    /**
+     * Rebuild the edges of an element from its dependancies.  Called when the
+     * element reports a change, since its inputs and therefore its
+     * dependancies may have changed.  The cached order is kept if the
+     * dependancies are unchanged.
+     * @param Named Element.
+     */
+    public synchronized void update(INamed Named) {
+        int id = this.nodeOf(Named);
+        if (id < 0) {
+            return;
+        }
+        // find the nodes on which the element now depends
+        Collection deps = this.getDependancies(Named);
+        int[] preds = new int[deps.size()];
+        int[] absent = new int[deps.size()];
+        int count = 0;
+        int absentCount = 0;
+        Iterator iter = deps.iterator();
+        while (iter.hasNext()) {
+            Object object = iter.next();
+            int dep = this.nodeOf(object);
+            if (dep >= 0) {
+                if (indexOf(preds, count, dep) < 0) {
+                    preds[count++] = dep;
+                }
+            } else if (object instanceof IGraphable && object != Named) {
+                int elementId = ((INamed) object).getId();
+                if (indexOf(absent, absentCount, elementId) < 0) {
+                    absent[absentCount++] = elementId;
+                }
+            }
+        }
+        if (count < preds.length) {
+            preds = copyOf(preds, count);
+        }
+        // wait for the missing elements to be added
+        absent = absentCount == 0 ? EMPTY : copyOf(absent, absentCount);
+        int[] wasAbsent = this.missing[id];
+        for (int i=0;i<wasAbsent.length;i++) {
+            if (indexOf(absent, absent.length, wasAbsent[i]) < 0) {
+                this.removeWaiter(wasAbsent[i], id);
+            }
+        }
+        for (int i=0;i<absent.length;i++) {
+            if (indexOf(wasAbsent, wasAbsent.length, absent[i]) < 0) {
+                this.addWaiter(absent[i], id);
+            }
+        }
+        this.missing[id] = absent;
+        // replace the edges if they have changed
+        int[] old = this.predecessors[id];
+        if (sameElements(old, preds)) {
+            return;
+        }
+        for (int i=0;i<old.length;i++) {
+            this.removeSuccessor(old[i], id);
+        }
+        for (int i=0;i<preds.length;i++) {
+            this.addSuccessor(preds[i], id);
+        }
+        this.predecessors[id] = preds;
+        this.order = null;
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Find a value in the first Count elements of an array.
+     * @return Index of the value, or -1 if not found.
+     */
+    private static int indexOf(int[] Values, int Count, int Value) {
+        for (int i=0;i<Count;i++) {
+            if (Values[i] == Value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Determine if two arrays of distinct values hold the same values.
+     */
+    private static boolean sameElements(int[] A, int[] B) {
+        if (A.length != B.length) {
+            return false;
+        }
+        for (int i=0;i<A.length;i++) {
+            if (indexOf(B, B.length, A[i]) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get a copy of an array with a value added, if it is not already present.
+     */
+    private static int[] with(int[] Values, int Value) {
+        if (indexOf(Values, Values.length, Value) >= 0) {
+            return Values;
+        }
+        int[] result = copyOf(Values, Values.length + 1);
+        result[Values.length] = Value;
+        return result;
+    }
+
+    /**
+     * Get a copy of an array with a value removed.
+     */
+    private static int[] without(int[] Values, int Value) {
+        int index = indexOf(Values, Values.length, Value);
+        if (index < 0) {
+            return Values;
+        }
+        int[] result = new int[Values.length - 1];
+        System.arraycopy(Values, 0, result, 0, index);
+        System.arraycopy(Values, index + 1, result, index, Values.length - index - 1);
+        return result;
+    }
+
+}
@@ -0,0 +1,33 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+/**
+ * A compiled, purely numeric expression that is evaluated as a primitive
+ * double.  Evaluation does not allocate.  ExpressionCompiler produces a
+ * DoubleExpression for any subtree made up only of number literals, references
+ * that are statically known to be numbers, and arithmetic operators.
+ * @author Davis Marques
+ */
+interface DoubleExpression {
+
+    /**
+     * Evaluate the expression.
+     * @return Result value.
+     */
+    public double evaluate();
+
+}
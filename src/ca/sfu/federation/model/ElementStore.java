@@ -0,0 +1,279 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.utils.PathResolver;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The elements of a context, in insertion order, indexed by name.  The
+ * index is maintained as elements are added, removed and renamed, so that
+ * finding an element by name does not require a scan of the context.  The
+ * element list and the name map are exposed as read-only views; neither is
+ * copied.  Contexts must call rename when an element fires a name change
+ * event.
+ * <p>
+ * The store wraps the element list of the context, which remains the
+ * serialized form of the context.  The store itself is not serialized, and is
+ * rebuilt from the list when first required.
+ * @author Davis Marques
+ */
+public class ElementStore {
+
+    private List<INamed> elements;                              // elements in insertion order
+    private HashMap<String,INamed> index;                       // element for each name
+    private IdentityHashMap<INamed,String> names;               // name under which each element is indexed
+    private List<INamed> elementsView;                          // read-only view of the elements
+    private Map<String,INamed> mapView;                         // read-only view of the elements by name
+
+    private static final Logger logger = Logger.getLogger(ElementStore.class.getName());
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * ElementStore constructor.
+     * @param Elements Element list of the context.  The list is used as the backing store, and must not be modified other than through the store.
+     */
+    public ElementStore(List<INamed> Elements) {
+        this.elements = Elements;
+        this.elementsView = Collections.unmodifiableList(Elements);
+        this.mapView = new ElementMap();
+        this.index = new HashMap<String,INamed>(Elements.size() * 2);
+        this.names = new IdentityHashMap<INamed,String>(Elements.size() * 2);
+        for (int i=0;i<Elements.size();i++) {
+            this.put(Elements.get(i));
+        }
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Add an element.
+     * @param Named Element.
+     * @throws IllegalArgumentException An object identified by the same name already exists in the store.
+     */
+    public synchronized void add(INamed Named) throws IllegalArgumentException {
+        if (this.index.containsKey(Named.getName())) {
+            throw new IllegalArgumentException("An object identified by the same name already exists in the Context.");
+        }
+        this.elements.add(Named);
+        this.put(Named);
+        PathResolver.invalidate();
+    }
+
+    /**
+     * Remove all elements.
+     */
+    public synchronized void clear() {
+        this.elements.clear();
+        this.index.clear();
+        this.names.clear();
+        PathResolver.invalidate();
+    }
+
+    /**
+     * Determine if the store has an element of the given name.
+     * @param Name Element name.
+     * @return True if found, false otherwise.
+     */
+    public boolean contains(String Name) {
+        return this.get(Name) != null;
+    }
+
+    /**
+     * Get the element of the given name.
+     * @param Name Element name.
+     * @return Element, or null if the store has no element of that name.
+     */
+    public synchronized INamed get(String Name) {
+        INamed named = this.index.get(Name);
+        if (named != null && !Name.equals(named.getName())) {
+            // the element was renamed without notifying its context
+            this.rename(named);
+            named = this.index.get(Name);
+        }
+        return named;
+    }
+
+    /**
+     * Get a read-only view of the elements by name.  The map iterates in
+     * insertion order.
+     * @return Elements by name.
+     */
+    public Map<String,INamed> getElementMap() {
+        return this.mapView;
+    }
+
+    /**
+     * Get a read-only view of the elements.
+     * @return Elements in insertion order.
+     */
+    public List<INamed> getElements() {
+        return this.elementsView;
+    }
+
+    /**
+     * Index an element under its current name.  If another element already
+     * has that name, the element is not indexed.
+     * @param Named Element.
+     */
+    private void put(INamed Named) {
+        String name = Named.getName();
+        if (this.index.containsKey(name)) {
+            logger.log(Level.WARNING,"An object identified by the name {0} already exists in the Context", name);
+            return;
+        }
+        this.index.put(name, Named);
+        this.names.put(Named, name);
+    }
+
+    /**
+     * Remove an element.
+     * @param Named Element.
+     * @return True if the element was removed, false if it is not in the store.
+     */
+    public synchronized boolean remove(INamed Named) {
+        if (!this.elements.remove(Named)) {
+            return false;
+        }
+        PathResolver.invalidate();
+        String name = this.names.remove(Named);
+        if (name != null) {
+            this.index.remove(name);
+            this.reindex(name);
+        }
+        return true;
+    }
+
+    /**
+     * Update the index for an element that has been renamed.
+     * @param Named Renamed element.
+     */
+    public synchronized void rename(INamed Named) {
+        String old = this.names.get(Named);
+        if (old != null && old.equals(Named.getName())) {
+            return;
+        }
+        PathResolver.invalidate();
+        if (old != null) {
+            this.names.remove(Named);
+            this.index.remove(old);
+        }
+        this.put(Named);
+        if (old != null) {
+            this.reindex(old);
+        }
+    }
+
+    /**
+     * Index the first element that has a name that was released by a remove
+     * or rename, if that element could not be indexed before.
+     * @param Name Released name.
+     */
+    private void reindex(String Name) {
+        if (this.names.size() == this.elements.size()) {
+            return;
+        }
+        for (int i=0;i<this.elements.size();i++) {
+            INamed named = this.elements.get(i);
+            if (!this.names.containsKey(named) && Name.equals(named.getName())) {
+                this.put(named);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the number of elements.
+     * @return Number of elements.
+     */
+    public int size() {
+        return this.elements.size();
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Read-only map view of the elements.  Lookups use the name index;
+     * iteration follows the insertion order of the elements.
+     */
+    private class ElementMap extends AbstractMap<String,INamed> {
+
+        public boolean containsKey(Object Key) {
+            return Key instanceof String && ElementStore.this.contains((String) Key);
+        }
+
+        public boolean containsValue(Object Value) {
+            return Value instanceof INamed && ElementStore.this.names.containsKey(Value);
+        }
+
+        public Set<Map.Entry<String,INamed>> entrySet() {
+            return new AbstractSet<Map.Entry<String,INamed>>() {
+                public Iterator<Map.Entry<String,INamed>> iterator() {
+                    final Iterator<INamed> iter = ElementStore.this.elementsView.iterator();
+                    return new Iterator<Map.Entry<String,INamed>>() {
+                        public boolean hasNext() {
+                            return iter.hasNext();
+                        }
+                        public Map.Entry<String,INamed> next() {
+                            INamed named = iter.next();
+                            return new AbstractMap.SimpleImmutableEntry<String,INamed>(named.getName(), named);
+                        }
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+                public int size() {
+                    return ElementStore.this.elements.size();
+                }
+            };
+        }
+
+        public INamed get(Object Key) {
+            return Key instanceof String ? ElementStore.this.get((String) Key) : null;
+        }
+
+        public int size() {
+            return ElementStore.this.elements.size();
+        }
+
+        public Collection<INamed> values() {
+            return new AbstractCollection<INamed>() {
+                public Iterator<INamed> iterator() {
+                    return ElementStore.this.elementsView.iterator();
+                }
+                public int size() {
+                    return ElementStore.this.elements.size();
+                }
+            };
+        }
+
+    }
+
+}
@@ -15,13 +15,15 @@
  */
 package ca.sfu.federation.model;
 
+import ca.sfu.federation.utils.PathResolver;
 import com.developer.rose.BeanProxy;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 import org.apache.commons.lang.exception.ExceptionUtils;
 
 /**
@@ -29,74 +31,88 @@ import org.apache.commons.lang.exception.ExceptionUtils;
  * Reference expressions are resolved "in context".  This is to say that value 
  * or object references are limited to a particular Context, or subset of the 
  * total collection of NamedObjects in the application environment.
+ * Expression trees are built by ExpressionParser and are immutable once 
+ * constructed.  Expressions are equal if they are structurally identical and
+ * resolve their references in the same context.
  * @author Davis Marques
- * @version 0.0.2
+ * @version 0.0.3
  */
 public class Expression implements Serializable {
 
     private static final Logger logger = Logger.getLogger(Expression.class.getName());
 
-    private static final String[] OPERATORS = {"!","%","^","&&","||","*","/","+","-"};
-    private static final int NUMBER_LITERAL = 0;
-    private static final int STRING_LITERAL = 1;
-    private static final int COLLECTION = 2;
-    private static final int REFERENCE = 3;
-    private static final int FUNCTION = 4;
-    private static final int COMPOUND = 5; // literals, references, or function calls joined with an operator
-
-    private String term;             // expression term (ie. the operator or function name)
-    private Expression[] parameters; // expression parameters; n-ary operator model
-    private int type;                // expression type
-    private IContext context;        // the collection of NamedObjects available to the expression for performing computations
+    static final String[] OPERATORS = {"!","%","^","&&","||","*","/","+","-"};
+    static final int NUMBER_LITERAL = 0;
+    static final int STRING_LITERAL = 1;
+    static final int COLLECTION = 2;
+    static final int REFERENCE = 3;
+    static final int FUNCTION = 4;
+    static final int COMPOUND = 5; // literals, references, or function calls joined with an operator
+
+    private final String term;             // expression term (ie. the operator or function name)
+    private final Expression[] parameters; // expression parameters; n-ary operator model
+    private final int type;                // expression type
+    private final IContext context;        // the collection of NamedObjects available to the expression for performing computations
+    private transient int hash;            // cached hash code
     
     //--------------------------------------------------------------------------
     
     /**
      * Expression constructor.  Context object will only be required when the 
-     * expression is a reference, or when the expression is compound and we need 
-     * to parseCompoundExpression it further.
+     * expression is a reference, or when the expression is compound and 
+     * contains references.
      * @param MyExpression A user specified expression in the expression language.
      * @param Context The set of NamedObjects that are available for computation to this expression.
-     * @throws IllegalArgumentException The user specified expression can not be parsed, or the references can not be resolved in context.
+     * @throws IllegalArgumentException The user specified expression can not be parsed.
      */
     public Expression(String MyExpression, IContext Context) throws IllegalArgumentException {
-        // classify the expression, set the term/parameter/type values
-        if (isStringLiteral(MyExpression)) {
-            MyExpression = MyExpression.substring(1); // clip the first quote character
-            MyExpression = MyExpression.substring(0,MyExpression.length()-1); // clip the last quote character
-            this.term = MyExpression;
-            this.parameters = new Expression[0]; // no parameters required
-            this.type = Expression.STRING_LITERAL;
-        } else if (isNumberLiteral(MyExpression)) {
-            this.term = MyExpression;
-            this.parameters = new Expression[0]; // no parameters required
-            this.type = Expression.NUMBER_LITERAL;
-        } else if (isCollection(MyExpression)) {
-            // TODO: collection expression stub
-        } else if (isReference(MyExpression)) {
-            this.term = MyExpression;
-            this.parameters = new Expression[0]; // no parameters required
-            this.context = Context;
-            this.type = Expression.REFERENCE;
-        } else if (isFunction(MyExpression)) {
-            // TODO: function expression stub
-        } else if (isCompound(MyExpression)) {
-            this.type = Expression.COMPOUND;
-            // parseCompoundExpression the expression into components
-            ArrayList components = parseCompoundExpression(MyExpression,Context);
-            // assign expression components to term and parameter fields
-            this.term = (String) components.get(0);
-            ArrayList params = (ArrayList) components.get(1);
-            this.parameters = new Expression[params.size()];
-            params.toArray(this.parameters);
-        } else {
-            // the expression can not be classified, throw an error
-            throw new IllegalArgumentException("The expression type could not be determined.");
-        }
+        this(new ExpressionParser(MyExpression, Context).parse());
+    }
+
+    /**
+     * Expression constructor.  Copies the root node of a parsed tree.
+     * @param Root Root of the parsed expression tree.
+     */
+    private Expression(Expression Root) {
+        this(Root.type, Root.term, Root.parameters, Root.context);
+    }
+
+    /**
+     * Expression constructor.  Used by ExpressionParser to build tree nodes.
+     * @param Type Expression type.
+     * @param Term Expression term.
+     * @param Parameters Subexpressions.
+     * @param Context The set of NamedObjects that are available to the expression.
+     */
+    Expression(int Type, String Term, Expression[] Parameters, IContext Context) {
+        this.type = Type;
+        this.term = Term;
+        this.parameters = Parameters;
+        this.context = Context;
     }
 
     //--------------------------------------------------------------------------
 
+    /**
+     * Determine if this expression is structurally identical to another.
+     * @param Other Object.
+     * @return True if the expressions have the same type, term, context and subexpressions.
+     */
+    @Override
+    public boolean equals(Object Other) {
+        if (this == Other) {
+            return true;
+        }
+        if (!(Other instanceof Expression)) {
+            return false;
+        }
+        Expression e = (Expression) Other;
+        if (this.type != e.type || this.context != e.context || this.hashCode() != e.hashCode() || !this.term.equals(e.term)) {
+            return false;
+        }
+        return Arrays.equals(this.parameters, e.parameters);
+    }
+
     /**
      * Get dependancies for this expression.
      * @return Elements on which this Expression is dependant.
@@ -106,20 +122,47 @@ public class Expression implements Serializable {
         ArrayList dependancies = new ArrayList();
         // get dependancies for subexpressions first
         for (int i=0;i<this.parameters.length;i++) {
-            ArrayList v = (ArrayList) parameters[i].getDependancies();
-            dependancies.addAll(v);
+            dependancies.addAll(parameters[i].getDependancies());
         }
         // get dependancies for self
         if (this.type == Expression.REFERENCE) {
-            // get element reference
-            INamed named = (INamed) this.context.lookup(this.term);
-            if (named != null) {
+            // a reference depends on the element named by the first part of its path
+            int index = this.term.indexOf('.');
+            String objname = index < 0 ? this.term : this.term.substring(0,index);
+            Object named = this.context.lookup(objname);
+            if (named instanceof INamed) {
                 dependancies.add(named);
             }
         }
         // return result
         return (List) dependancies;
     }
+
+    /**
+     * Get the objects whose state determines the value of this expression.
+     * These are the objects along the path of each reference in the tree.
+     * @param Objects Set to which the referenced objects are added.
+     * @throws IllegalArgumentException A reference could not be resolved.
+     */
+    void getReferencedObjects(Set<INamed> Objects) throws IllegalArgumentException {
+        for (int i=0;i<this.parameters.length;i++) {
+            this.parameters[i].getReferencedObjects(Objects);
+        }
+        if (this.type == Expression.REFERENCE) {
+            // resolve each part of the path in the context named by the part
+            // before it, stopping at the first part that names a property
+            String[] path = PathResolver.parse(this.term);
+            INamed named = (INamed) this.context.lookup(path[0]);
+            Objects.add(named);
+            for (int i=1;i<path.length && named instanceof IContext;i++) {
+                named = ((IContext) named).getElementMap().get(path[i]);
+                if (named == null) {
+                    break;
+                }
+                Objects.add(named);
+            }
+        }
+    }
     
     /**
      * Resolve the value for a particular parameter.
@@ -130,7 +173,7 @@ public class Expression implements Serializable {
         // init
         Object result = null;
         // if the parameter is an expression
-        if (Parameter.getClass().isInstance(Expression.class)) {
+        if (Parameter instanceof Expression) {
             // get the expression value
             Expression exp = (Expression) Parameter;
             try {
@@ -160,6 +203,22 @@ public class Expression implements Serializable {
         // return result
         return result;
     }
+
+    /**
+     * Get the context in which references are resolved.
+     * @return Context.
+     */
+    IContext getContext() {
+        return this.context;
+    }
+
+    /**
+     * Get the subexpressions.
+     * @return Subexpressions.
+     */
+    Expression[] getParameters() {
+        return this.parameters;
+    }
     
     /**
      * Get the expression term.
@@ -168,124 +227,45 @@ public class Expression implements Serializable {
     public String getTerm() {
         return term;
     }
-    
-    /**
-     * Determines if the user statement is a collection.
-     * @param s User defined statement.
-     * @return True if the statement is a collection, false otherwise.
-     */
-    private static boolean isCollection(String s) {
-        // TODO: stub
-        return false;
-    }
 
     /**
-     * Determines if the statement has an operator and is therefore a compound
-     * statement.
-     * @param Statement 
-     * @return True if the statement contains an operator, false otherwise.
+     * Get the hash code.  The hash code is derived from the structure of the
+     * expression and is cached.
+     * @return Hash code.
      */
-    private static boolean isCompound(String Statement) {
-        // check statement for operators
-        boolean found = false;
-        int index = 0;
-        while (!found && index < Expression.OPERATORS.length) {
-            if (Statement.contains(Expression.OPERATORS[index])) {
-                found = true;
-            }
-            index++;
+    @Override
+    public int hashCode() {
+        int h = this.hash;
+        if (h == 0) {
+            h = 31 * (31 * this.type + this.term.hashCode()) + System.identityHashCode(this.context);
+            h = 31 * h + Arrays.hashCode(this.parameters);
+            this.hash = h;
         }
-        // return result
-        return found;
+        return h;
     }
 
     /**
-     * Determines if the user statement is a function call.
-     * @param s User defined statement.
-     * @return True if the statement is a function, false otherwise.
+     * Get the expression type.
+     * @return Expression type.
      */
-    private static boolean isFunction(String s) {
-        // TODO: stub
-        return false;
+    int getType() {
+        return this.type;
     }
 
     /**
      * Determines if this expression term is a string literal value.
-     * @return True if the user defined string can be resolved as a string or number value, false if not.
-     * TODO: may want to check if the string can be converted into an integer before double conversion
+     * @return True if the expression is a string literal, false otherwise.
      */
     public boolean isStringLiteral() {
-        return isStringLiteral(this.term);
-    }
-
-    /**
-     * Determines if the string represents a string literal value.
-     * @return True if a string literal value, false otherwise.
-     */
-    private static boolean isStringLiteral(String s) {
-        // initialize
-        boolean result = false;
-        // if bracketed by quotes
-        if (s.startsWith("\"") && s.endsWith("\"") || 
-            s.startsWith("'") && s.endsWith("'")) {
-            result = true;
-        }
-        // return result
-        return result;
+        return this.type == Expression.STRING_LITERAL;
     }
 
     /**
      * Determines if the expression term is a number value.
-     * @return True if the value can be converted to a number.
+     * @return True if the expression is a number literal, false otherwise.
      */
     private boolean isNumberLiteral() {
-        return isNumberLiteral(this.term);
-    }
-
-    /**
-     * Determines if a string value can be converted to a number.
-     * @return True if the value can be converted to a number.
-     */
-    private static boolean isNumberLiteral(char c) {
-        return isNumberLiteral(Character.toString(c));
-    }
-
-    /**
-     * Determines if the string can be converted to a number. This code is from 
-     * the Java Doc, and can be found at http://java.sun.com/j2se/1.5.0/docs/api/java/lang/Double.html#valueOf(java.lang.String)
-     * @param s User defined string.
-     * @return True if the value can be converted to a number.
-     */
-    private static boolean isNumberLiteral(String s) {
-        boolean result = false;
-        final String Digits     = "(\\p{Digit}+)";
-        final String HexDigits  = "(\\p{XDigit}+)";
-        // an exponent is 'e' or 'E' followed by an optionally signed decimal integer.
-        final String Exp        = "[eE][+-]?"+Digits;
-        final String fpRegex    = ("[\\x00-\\x20]*" +  // Optional leading "whitespace"
-                "[+-]?(" + // Optional sign character
-                "NaN|" +           // "NaN" string
-                "Infinity|" +      // "Infinity" string
-                // Digits ._opt Digits_opt ExponentPart_opt FloatTypeSuffix_opt
-                "((("+Digits+"(\\.)?("+Digits+"?)("+Exp+")?)|" +
-                // . Digits ExponentPart_opt FloatTypeSuffix_opt
-                "(\\.("+Digits+")("+Exp+")?)|" +
-                // Hexadecimal strings
-                "((" +
-                // 0[xX] HexDigits ._opt BinaryExponent FloatTypeSuffix_opt
-                "(0[xX]" + HexDigits + "(\\.)?)|" +
-                // 0[xX] HexDigits_opt . HexDigits BinaryExponent FloatTypeSuffix_opt
-                "(0[xX]" + HexDigits + "?(\\.)" + HexDigits + ")" +
-                ")[pP][+-]?" + Digits + "))" +
-                "[fFdD]?))" +
-                "[\\x00-\\x20]*");// Optional trailing "whitespace"
-        if (Pattern.matches(fpRegex, s))
-            result = true;
-        else {
-            result = false;
-        }
-        // return result
-        return result;
+        return this.type == Expression.NUMBER_LITERAL;
     }
 
     /**
@@ -293,27 +273,7 @@ public class Expression implements Serializable {
      * @return True if the expression term is an operator.
      */
     public boolean isOperator() {
-        return isOperator(this.term);
-    }
-
-    /**
-     * If the term is equal to any operator, then it is an operator.
-     * @param statement
-     * @return True if statement is an operator.
-     */
-    private static boolean isOperator(String statement) {
-        // initialize
-        boolean result = false;
-        // if the string matches an operator, stop at the first match
-        int i = 0;
-        while (!result && i < Expression.OPERATORS.length) {
-            if (statement.equals(Expression.OPERATORS[i])) {
-                result = true;
-            }
-            i++;
-        }
-        // return results
-        return result;
+        return this.type == Expression.COMPOUND;
     }
 
     /**
@@ -324,16 +284,12 @@ public class Expression implements Serializable {
      * @return True if this expression is a reference, false otherwise.
      */
     public boolean isReference() {
-        boolean result = true;
-        if (!isReference(this.term) || this.parameters.length > 0) {
-            result = false;
-        }
-        return result;
+        return this.type == Expression.REFERENCE;
     }
 
     /**
      * A statement has the form of a reference if it is comprised of only 
-     * alphanumeric, ('.','_','[',']') characters, and the first character is a 
+     * alphanumeric, ('.','_') characters, and the first character is a 
      * char or the @ symbol.  No guarantee is given that the reference can be 
      * resolved.
      * @param Statement User specified statement.
@@ -344,105 +300,15 @@ public class Expression implements Serializable {
         boolean result = true;
         // check if the statement is a proper reference
         char c = Statement.charAt(0);
-        if (!Character.isJavaIdentifierStart(c)) {
+        if (!Character.isJavaIdentifierStart(c) && c != '@') {
             result = false;
         }
-        if (Statement.substring(0,1).equals("@")) {
-            result = true;
-        }
-        // if the statement contains any operators, then it is not a reference
-        int i = 0;
-        while (result && i < Expression.OPERATORS.length) {
-            if (Statement.contains(Expression.OPERATORS[i])) {
+        // if the statement contains punctuation other than ('.','_'), then it is not a reference
+        for (int i=1;i<Statement.length();i++) {
+            char ch = Statement.charAt(i);
+            if (!Character.isJavaIdentifierPart(ch) && ch != '.') {
                 result = false;
             }
-            i++;
-        }
-        // if the statement contains punctuation other than ('@','.','_','[',']'), then it is not a reference
-        if (Statement.length()>1) {
-            for (i=1;i<Statement.length();i++) {
-                char ch = Statement.charAt(i);
-                if (!Character.isJavaIdentifierPart(ch)) {
-                    result = false;
-                }
-            }
-        }
-        // return result
-        return result;
-    }
-    
-    /**
-     * Splits the user specified expression into left hand and right hand sides 
-     * relative to the first operator found.  If there is a grouping within the 
-     * expression, it splits the expression at the highlest level grouping, at 
-     * the first operator found.  Returns a ArrayList with the operator as the 
-     * first element, and any parameters as the remaining elements of the 
-     * ArrayList ordered from left to right.
-     *
-     * TODO: should throw an exception if the statement structure is incorrect
-     * TODO: need to take into account operator precedence, grouping
-     *
-     * @param MyExpression User defined expression.
-     * @param Context The set of NamedObjects available to this expression for computation.
-     * @return ArrayList with term as first element, and parameters as additional elements.
-     */
-    private static ArrayList parseCompoundExpression(String MyExpression, IContext Context) {
-        // init
-        String s, o;
-        String lhs, rhs; // left, right hand side expressions
-        String term; // operator
-        int rhsStartIndex = 0;
-        ArrayList result = new ArrayList();
-        ArrayList params = new ArrayList();
-        // if there are groupings in this expression
-        if (MyExpression.contains("(")) {
-            // TODO: grouping
-        } else {
-            // find the first operator in the expression
-            boolean found = false;
-            int index = 0;
-            int opindex = 0;
-            // for each char in the expression string
-            while (!found && index < MyExpression.length()) {
-                s = String.valueOf(MyExpression.charAt(index));
-                opindex = 0;
-                // check if the char is an operator
-                while (!found && opindex<Expression.OPERATORS.length) {
-                    o = Expression.OPERATORS[opindex];
-                    // some operators are two chars long; just use the first char for the comparison
-                    if (o.length()>1) {
-                        o = String.valueOf(o.charAt(0));
-                    }
-                    // if the expression char equals the operator then we have found the first operator instance
-                    if (s.equals(o)) {
-                        found = true;
-                    }
-                    opindex++;
-                }
-                index++;
-            }
-            // TODO: in theory, we have already confirmed that this expression has an operator so we shouldn't have to have this here
-            if (!found) {
-                // throw an error
-            }
-            // need to decrement opindex to compensate for the trailing increment operation
-            opindex--;
-            index--;
-            // split expression into left and right hand sides
-            term = Expression.OPERATORS[opindex];
-            lhs = MyExpression.substring(0,index);
-            rhs = MyExpression.substring(index+term.length());
-            try {
-                Expression expLhs = new Expression(lhs,Context);
-                Expression expRhs = new Expression(rhs,Context);
-                params.add(expLhs);
-                params.add(expRhs);
-            } catch (Exception ex) {
-                String stack = ExceptionUtils.getFullStackTrace(ex);
-                logger.log(Level.WARNING,"Could not solve expression\n\n{0}",stack);
-            }
-            result.add(term);
-            result.add(params);
         }
         // return result
         return result;
@@ -452,8 +318,9 @@ public class Expression implements Serializable {
      * Executes a post-order traversal of the expression tree to solve the user
      * defined expression.
      * @return Result object.
+     * @throws IllegalArgumentException The operator can not be applied to the operand values.
      */
-    public Object solve() {
+    public Object solve() throws IllegalArgumentException {
         // intialize
         Object result = null;
         // resolution cases
@@ -466,34 +333,31 @@ public class Expression implements Serializable {
                 result = Double.valueOf(this.term);
                 break;
             case Expression.COLLECTION:
+                result = ExpressionCollections.make(this.term, this.getParameterValues());
                 break;
             case Expression.REFERENCE:
                 // resolve the reference value, return it
                 result = this.context.lookup(this.term);
                 break;
             case Expression.FUNCTION:
-                // TODO: call the function, return the result value
-                try {
-                    // lookup the user specified function and get a Method reference for it
-                    // Method function = Expression.class.getMethod(this.term, null);
-                    // TODO: invoke the function, get result value
-                    // function.invoke(this, null);
-                } catch (Exception ex) {
-                    String stack = ExceptionUtils.getFullStackTrace(ex);
-                    logger.log(Level.WARNING,"Could not invoke user specified function\n\n{0}",stack);
+                ExpressionFunction function = ExpressionFunction.get(this.term);
+                if (function == null) {
+                    throw new IllegalArgumentException("Unknown function '" + this.term + "'.");
                 }
+                result = function.apply(this.getParameterValues());
                 break;
             case Expression.COMPOUND:
-                if (this.term.equals("*")) {
-                    result = this.multiply(this.parameters);
-                } else if (this.term.equals("/")) {
-                    result = this.divide(this.parameters);
-                } else if (this.term.equals("+")) {
-                    result = this.add(this.parameters);
-                } else if (this.term.equals("-")) {
-                    result = this.subtract(this.parameters);
-                } 
-            } 
+                Object[] values = this.getParameterValues();
+                if (values.length == 1) {
+                    result = unary(this.term,values[0]);
+                } else if (values.length == 2) {
+                    result = binary(this.term,values[0],values[1]);
+                } else {
+                    // the number of parameters does not match the operator requirements
+                    throw new IllegalArgumentException("The number of parameters provided does not match the number required by the operator.");
+                }
+                break;
+        } 
         // return result
         return result;
     }
@@ -501,25 +365,96 @@ public class Expression implements Serializable {
     //..........................................................................
 
     /**
-     * Add.
-     * @return Result.
-     * @throws IllegalArgumentException The number of parameters provided does not match the operator requirements.
+     * Apply a binary operator to the operand values.
+     * @param Operator Operator.
+     * @param Lhs Left hand operand.
+     * @param Rhs Right hand operand.
+     * @return Result value.
+     * @throws IllegalArgumentException The operator can not be applied to the operand values.
+     */
+    static Object binary(String Operator, Object Lhs, Object Rhs) throws IllegalArgumentException {
+        if (Lhs instanceof double[] || Rhs instanceof double[]) {
+            return ExpressionCollections.binary(Operator, Lhs, Rhs);
+        } else if (Operator.equals("+")) {
+            return add(Lhs,Rhs);
+        } else if (Operator.equals("-")) {
+            return subtract(Lhs,Rhs);
+        } else if (Operator.equals("*")) {
+            return multiply(Lhs,Rhs);
+        } else if (Operator.equals("/")) {
+            return divide(Lhs,Rhs);
+        } else if (Operator.equals("%")) {
+            return modulo(Lhs,Rhs);
+        } else if (Operator.equals("^")) {
+            return power(Lhs,Rhs);
+        } else if (Operator.equals("&&")) {
+            return Boolean.valueOf(toBoolean(Lhs) && toBoolean(Rhs));
+        } else if (Operator.equals("||")) {
+            return Boolean.valueOf(toBoolean(Lhs) || toBoolean(Rhs));
+        }
+        throw new IllegalArgumentException("Operator '" + Operator + "' can not be used as a binary operator.");
+    }
+
+    /**
+     * Apply a unary operator to the operand value.
+     * @param Operator Operator.
+     * @param Operand Operand.
+     * @return Result value.
+     * @throws IllegalArgumentException The operator can not be applied to the operand value.
+     */
+    static Object unary(String Operator, Object Operand) throws IllegalArgumentException {
+        if (Operator.equals("-")) {
+            if (Operand instanceof double[]) {
+                return ExpressionCollections.negate((double[]) Operand);
+            } else if (Operand instanceof Integer) {
+                return Integer.valueOf(-((Integer) Operand).intValue());
+            }
+            return Double.valueOf(-toDouble(Operand));
+        } else if (Operator.equals("!")) {
+            return Boolean.valueOf(!toBoolean(Operand));
+        }
+        throw new IllegalArgumentException("Operator '" + Operator + "' can not be used as a unary operator.");
+    }
+
+    /**
+     * Determine if both operands are Integers.
+     * @param Lhs Left hand operand.
+     * @param Rhs Right hand operand.
+     * @return True if both operands are Integers, false otherwise.
      */
-    private Object add(Expression[] Parameter) throws IllegalArgumentException {
-        // init
-        Object result = null;
-        // add values
-        if (Parameter.length == 2) {
-            // add the rhs to the lhs
-            result = add(Parameter[0],Parameter[1]);
-        } else {
-            // the number of parameters does not match the operator requirements
-            throw new IllegalArgumentException("The number of parameters provided does not match the number required by the operator.");
+    private static boolean isInteger(Object Lhs, Object Rhs) {
+        return Lhs instanceof Integer && Rhs instanceof Integer;
+    }
+
+    /**
+     * Convert an operand to a boolean value.
+     * @param Operand Operand.
+     * @return Boolean value.
+     * @throws IllegalArgumentException The operand is not a Boolean.
+     */
+    static boolean toBoolean(Object Operand) throws IllegalArgumentException {
+        if (Operand instanceof Boolean) {
+            return ((Boolean) Operand).booleanValue();
         }
-        // return results
-        return result;
+        throw new IllegalArgumentException("The operand '" + Operand + "' is not a boolean value.");
     }
-    
+
+    /**
+     * Convert an operand to a double value.
+     * @param Operand Operand.
+     * @return Double value.
+     * @throws IllegalArgumentException The operand is not a Number.
+     */
+    static double toDouble(Object Operand) throws IllegalArgumentException {
+        if (Operand instanceof Number) {
+            return ((Number) Operand).doubleValue();
+        }
+        throw new IllegalArgumentException("The operand '" + Operand + "' is not a number.");
+    }
+
+    //..........................................................................
+    // ASSIGNMENT
+
     /**
      * Assign.
      * @throws IllegalArgumentException The number of parameters provided does not match the operator requirements.
@@ -543,121 +478,6 @@ public class Expression implements Serializable {
         }
     }
 
-    /**
-     * Divide.
-     * @return Result.
-     * @throws IllegalArgumentException The number of parameters provided does not match the operator requirements.
-     */
-    private Object divide(Expression[] Parameter) throws IllegalArgumentException {
-        // init
-        Object result = null;
-        // divide values
-        if (Parameter.length == 2) {
-            // divide the lhs by the rhs
-            result = divide(Parameter[0],Parameter[1]);
-        } else {
-            // the number of parameters does not match the operator requirements
-            throw new IllegalArgumentException("The number of parameters provided does not match the number required by the operator.");
-        }
-        // return result
-        return result;
-    }
-    
-    /**
-     * Multiply.
-     * @return Result.
-     * @throws IllegalArgumentException The number of parameters provided does not match the operator requirements.
-     */
-    private Object multiply(Expression[] Parameter) throws IllegalArgumentException {
-        // init
-        Object result = null;
-        // multiply values
-        if (Parameter.length == 2) {
-            // multiply the lhs by the rhs
-            result = multiply(Parameter[0],Parameter[1]);
-        } else {
-            // the number of parameters does not match the operator requirements
-            throw new IllegalArgumentException("The number of parameters provided does not match the number required by the operator.");
-        }
-        // return result
-        return result;
-    }
-
-    /**
-     * Subtract.
-     * @return Result.
-     * @throws IllegalArgumentException The number of parameters provided does not match the operator requirements.
-     */
-    private Object subtract(Expression[] Parameter) throws IllegalArgumentException {
-        // init
-        Object result = null;
-        // multiply values
-        if (Parameter.length == 2) {
-            // subtract the rhs from the lhs
-            result = subtract(Parameter[0],Parameter[1]);
-        } else {
-            // the number of parameters does not match the operator requirements
-            throw new IllegalArgumentException("The number of parameters provided does not match the number required by the operator.");
-        }
-        // return results
-        return result;
-    }
-    
-    //..........................................................................
-    // ARITHMETIC OPERATORS
-
-    /**
-     * Determines the type of the left and right hand side objects, converts
-     * them to an operable type, performs the add calculation then returns the
-     * result object.
-     * @param lhs Left hand operand.
-     * @param rhs Right hand operand.
-     * @return Sum of left and right hand operands.
-     * TODO: throw an exception if the add operation can not be performed
-     * TODO: need to consider when objects are of different types, then convert them to a common type
-     */
-    private static Object add(Object lhs, Object rhs) {
-        // initialize
-        Object result = null;
-        Double dblVal = new Double(0.0);
-        Integer intVal = new Integer(0);
-        // determine parameter type, do calculation based on object type
-        if (lhs.getClass().isInstance(dblVal) && rhs.getClass().isInstance(dblVal)) {
-            // convert values to double
-            Double _lhs = (Double) lhs;
-            Double _rhs = (Double) rhs;
-            result = add(_lhs.doubleValue(),_rhs.doubleValue());
-        } else if (lhs.getClass().isInstance(intVal) && rhs.getClass().isInstance(intVal)) {
-            // convert values to int
-            Integer _lhs = (Integer) lhs;
-            Integer _rhs = (Integer) rhs;
-            result = add(_lhs.intValue(),_rhs.intValue());
-        } 
-        // return result
-        return result;
-    }
-
-    /**
-     * Adds two double values and returns result as String.
-     * @param lhs Left hand operand.
-     * @param rhs Right hand operand.
-     * @return Sum of left and right hand operands.
-     */
-    private static Double add(double lhs, double rhs) {
-        return Double.valueOf(lhs + rhs);
-    }
-
-    /**
-     * Adds two int values and returns result as String.
-     * @param lhs Left hand operand.
-     * @param rhs Right hand operand.
-     * @return Sum of left and right hand operands.
-     */
-    private static Integer add(int lhs, int rhs) {
-        int value = lhs + rhs;
-        return Integer.valueOf(value);
-    }
-
     /**
      * Assigns the value of the right hand operand to the object or property 
      * referenced by the left hand operand. Performs type checking to ensure 
@@ -707,14 +527,61 @@ public class Expression implements Serializable {
         return "Ok.";
     }
 
+    //..........................................................................
+    // ARITHMETIC OPERATORS
+
+    /**
+     * Determines the type of the left and right hand side objects, converts
+     * them to an operable type, performs the add calculation then returns the
+     * result object.  If either operand is a String, the operands are 
+     * concatenated.
+     * @param lhs Left hand operand.
+     * @param rhs Right hand operand.
+     * @return Sum of left and right hand operands.
+     * @throws IllegalArgumentException The operands can not be added.
+     */
+    private static Object add(Object lhs, Object rhs) throws IllegalArgumentException {
+        if (lhs instanceof String || rhs instanceof String) {
+            return String.valueOf(lhs) + String.valueOf(rhs);
+        } else if (isInteger(lhs,rhs)) {
+            return add(((Integer) lhs).intValue(),((Integer) rhs).intValue());
+        }
+        return add(toDouble(lhs),toDouble(rhs));
+    }
+
+    /**
+     * Adds two double values.
+     * @param lhs Left hand operand.
+     * @param rhs Right hand operand.
+     * @return Sum of left and right hand operands.
+     */
+    private static Double add(double lhs, double rhs) {
+        return Double.valueOf(lhs + rhs);
+    }
+
+    /**
+     * Adds two int values.
+     * @param lhs Left hand operand.
+     * @param rhs Right hand operand.
+     * @return Sum of left and right hand operands.
+     */
+    private static Integer add(int lhs, int rhs) {
+        int value = lhs + rhs;
+        return Integer.valueOf(value);
+    }
+
     /**
      * Divide the left hand value by the right hand value.
      * @param lhs Left hand operand.
      * @param rhs Right hand operand.
      * @return Result value.
+     * @throws IllegalArgumentException The operands are not numbers.
      */
-    private static Object divide(Object lhs, Object rhs) {
-        return Double.valueOf(0.0);
+    private static Object divide(Object lhs, Object rhs) throws IllegalArgumentException {
+        if (isInteger(lhs,rhs)) {
+            return divide(((Integer) lhs).intValue(),((Integer) rhs).intValue());
+        }
+        return divide(toDouble(lhs),toDouble(rhs));
     }
 
     /**
@@ -724,7 +591,7 @@ public class Expression implements Serializable {
      * @return Result value.
      */
     private static Double divide(double lhs, double rhs) {
-        return Double.valueOf(0.0);
+        return Double.valueOf(lhs / rhs);
     }
 
     /**
@@ -732,9 +599,31 @@ public class Expression implements Serializable {
      * @param lhs Left hand operand.
      * @param rhs Right hand operand.
      * @return Result value.
+     * @throws IllegalArgumentException The right hand operand is zero.
+     */
+    private static Integer divide(int lhs, int rhs) throws IllegalArgumentException {
+        if (rhs == 0) {
+            throw new IllegalArgumentException("Division by zero.");
+        }
+        return Integer.valueOf(lhs / rhs);
+    }
+
+    /**
+     * Remainder of the left hand value divided by the right hand value.
+     * @param lhs Left hand operand.
+     * @param rhs Right hand operand.
+     * @return Result value.
+     * @throws IllegalArgumentException The operands are not numbers.
      */
-    private static Integer divide(int lhs, int rhs) {
-        return Integer.valueOf(0);
+    private static Object modulo(Object lhs, Object rhs) throws IllegalArgumentException {
+        if (isInteger(lhs,rhs)) {
+            int r = ((Integer) rhs).intValue();
+            if (r == 0) {
+                throw new IllegalArgumentException("Division by zero.");
+            }
+            return Integer.valueOf(((Integer) lhs).intValue() % r);
+        }
+        return Double.valueOf(toDouble(lhs) % toDouble(rhs));
     }
 
     /**
@@ -742,9 +631,13 @@ public class Expression implements Serializable {
      * @param lhs Left hand operand.
      * @param rhs Right hand operand.
      * @return Result value.
+     * @throws IllegalArgumentException The operands are not numbers.
      */
-    private static Object multiply(Object lhs, Object rhs) {
-        return Double.valueOf(0.0);
+    private static Object multiply(Object lhs, Object rhs) throws IllegalArgumentException {
+        if (isInteger(lhs,rhs)) {
+            return multiply(((Integer) lhs).intValue(),((Integer) rhs).intValue());
+        }
+        return multiply(toDouble(lhs),toDouble(rhs));
     }
 
     /**
@@ -754,7 +647,7 @@ public class Expression implements Serializable {
      * @return Result value.
      */
     private static Double multiply(double lhs, double rhs) {
-        return Double.valueOf(0.0);
+        return Double.valueOf(lhs * rhs);
     }
 
     /**
@@ -764,7 +657,18 @@ public class Expression implements Serializable {
      * @return Result value.
      */
     private static Integer multiply(int lhs, int rhs) {
-        return Integer.valueOf(0);
+        return Integer.valueOf(lhs * rhs);
+    }
+
+    /**
+     * Raise the left hand value to the power of the right hand value.
+     * @param lhs Left hand operand.
+     * @param rhs Right hand operand.
+     * @return Result value.
+     * @throws IllegalArgumentException The operands are not numbers.
+     */
+    private static Object power(Object lhs, Object rhs) throws IllegalArgumentException {
+        return Double.valueOf(Math.pow(toDouble(lhs),toDouble(rhs)));
     }
 
     /**
@@ -772,9 +676,13 @@ public class Expression implements Serializable {
      * @param lhs Left hand operand.
      * @param rhs Right hand operand.
      * @return Result value.
+     * @throws IllegalArgumentException The operands are not numbers.
      */
-    private static Object subtract(Object lhs, Object rhs) {
-        return Double.valueOf(0.0);
+    private static Object subtract(Object lhs, Object rhs) throws IllegalArgumentException {
+        if (isInteger(lhs,rhs)) {
+            return subtract(((Integer) lhs).intValue(),((Integer) rhs).intValue());
+        }
+        return subtract(toDouble(lhs),toDouble(rhs));
     }
 
     /**
@@ -784,7 +692,7 @@ public class Expression implements Serializable {
      * @return Result value.
      */
     private static Double subtract(double lhs, double rhs) {
-        return Double.valueOf(0.0);
+        return Double.valueOf(lhs - rhs);
     }
 
     /**
@@ -794,7 +702,7 @@ public class Expression implements Serializable {
      * @return Result value.
      */
     private static Integer subtract(int lhs, int rhs) {
-        return Integer.valueOf(0);
+        return Integer.valueOf(lhs - rhs);
     }
 
     //..........................................................................
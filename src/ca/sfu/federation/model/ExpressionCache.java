@@ -0,0 +1,215 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.utils.IContextUtils;
+import ca.sfu.federation.utils.PathResolver;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, model wide cache of parsed and compiled expressions.  Entries are
+ * keyed by the trimmed statement text and the identity of the context in which
+ * the statement is resolved, so that Inputs sharing the same statement in the
+ * same context share a single expression tree and evaluator chain.  The least
+ * recently used entry is discarded when the cache is full.  Each model keeps
+ * its own cache, so that the cached expressions and the contexts they refer
+ * to are released with the model; statements resolved in a context that is 
+ * not part of a model are not cached.  The result class
+ * of an entry is inferred again once an element has been added, removed or
+ * renamed, since a reference may then name an object of another class.
+ * @author Davis Marques
+ */
+public final class ExpressionCache {
+
+    private static final int CAPACITY = 4096;   // maximum number of cached expressions
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private final Map<Key,Entry> cache = new LinkedHashMap<Key,Entry>(256, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Key,Entry> Eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    /**
+     * ExpressionCache constructor.
+     */
+    ExpressionCache() {
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Discard all cached expressions and reset the hit and miss counters.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * Get the compiled expression for a statement from the cache of the model
+     * that contains the context.  The statement is parsed and compiled if it
+     * is not already cached, or if the context is not part of a model.
+     * @param Statement User specified statement.
+     * @param Context The collection of NamedObjects available to the expression.
+     * @return Compiled expression.
+     * @throws IllegalArgumentException The statement is malformed.
+     */
+    static Entry get(String Statement, IContext Context) throws IllegalArgumentException {
+        IContext root = IContextUtils.getRoot(Context);
+        if (root instanceof ParametricModel) {
+            return ((ParametricModel) root).getExpressionCache().lookup(Statement, Context);
+        }
+        return new Entry(new Expression(Statement.trim(), Context));
+    }
+
+    /**
+     * Get the compiled expression for a statement, parsing and compiling the
+     * statement if it is not already cached.
+     * @param Statement User specified statement.
+     * @param Context The collection of NamedObjects available to the expression.
+     * @return Compiled expression.
+     * @throws IllegalArgumentException The statement is malformed.
+     */
+    Entry lookup(String Statement, IContext Context) throws IllegalArgumentException {
+        // init
+        Key key = new Key(Statement.trim(), Context);
+        Entry entry = null;
+        // check the cache
+        synchronized (cache) {
+            entry = cache.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        // parse and compile outside of the lock
+        entry = new Entry(new Expression(key.statement, Context));
+        synchronized (cache) {
+            // another thread may have compiled the same statement in the meantime
+            Entry existing = cache.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            cache.put(key, entry);
+        }
+        // return result
+        return entry;
+    }
+
+    /**
+     * Get the number of requests that were served from the cache.
+     * @return Hit count.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of requests that required the statement to be parsed and
+     * compiled.
+     * @return Miss count.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of cached expressions.
+     * @return Cache size.
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * A parsed expression tree and its compiled forms.  Entries may be shared
+     * between threads.
+     */
+    static final class Entry {
+
+        final Expression expression;                // expression tree
+        final ExpressionEvaluator evaluator;        // compiled form of the expression tree
+        final DoubleExpression doubleEvaluator;     // primitive form of the expression tree, if it is purely numeric
+        private volatile Class resultClass;         // inferred result class, or null if unknown
+        private volatile long version;              // structure version at which the result class was inferred
+
+        Entry(Expression MyExpression) throws IllegalArgumentException {
+            this.expression = MyExpression;
+            this.version = PathResolver.getVersion();
+            this.resultClass = ExpressionTypes.infer(MyExpression);
+            this.evaluator = ExpressionCompiler.compile(MyExpression);
+            this.doubleEvaluator = ExpressionCompiler.compileDouble(MyExpression);
+        }
+
+        /**
+         * Get the inferred result class of the expression.  The class is
+         * inferred again if the structure version has moved since it was last
+         * inferred.
+         * @return Result class, or null if unknown.
+         * @throws IllegalArgumentException A reference can not be resolved, or an operator can not be applied to its operands.
+         */
+        Class getResultClass() throws IllegalArgumentException {
+            long current = PathResolver.getVersion();
+            if (this.version != current) {
+                this.resultClass = ExpressionTypes.infer(this.expression);
+                this.version = current;
+            }
+            return this.resultClass;
+        }
+
+    }
+
+    /**
+     * Cache key.  Contexts are compared by identity.
+     */
+    private static final class Key {
+
+        final String statement;     // normalized statement text
+        final IContext context;     // context in which the statement is resolved
+
+        Key(String Statement, IContext Context) {
+            this.statement = Statement;
+            this.context = Context;
+        }
+
+        public boolean equals(Object Other) {
+            if (!(Other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) Other;
+            return this.context == key.context && this.statement.equals(key.statement);
+        }
+
+        public int hashCode() {
+            return 31 * System.identityHashCode(this.context) + this.statement.hashCode();
+        }
+
+    }
+
+}
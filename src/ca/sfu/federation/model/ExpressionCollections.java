@@ -0,0 +1,167 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+/**
+ * Construction of and element-wise arithmetic on collection values.  A
+ * collection value is a double[].  Collections are written as lists,
+ * [a,b,c], or as ranges, [start..end] or [start..end step increment], where
+ * the end value is included if it falls on a step.  Arithmetic operators apply
+ * element by element to collections of the same length; a number combined
+ * with a collection is applied to every element.  Each operator is evaluated
+ * as a single loop over primitive arrays.
+ * @author Davis Marques
+ */
+final class ExpressionCollections {
+
+    static final String LIST = "[]";      // term of a list collection node
+    static final String RANGE = "..";     // term of a range collection node
+
+    private static final double EPSILON = 1e-9; // tolerance for the last step of a range
+
+    static final int MAX_RANGE = 1 << 20;       // maximum number of elements in a range
+
+    /**
+     * ExpressionCollections constructor.
+     */
+    private ExpressionCollections() {
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Apply an arithmetic operator element-wise.  At least one of the
+     * operands must be a collection.
+     * @param Operator Operator.
+     * @param Lhs Left hand operand; a collection or a number.
+     * @param Rhs Right hand operand; a collection or a number.
+     * @return Result collection.
+     * @throws IllegalArgumentException The operator is not arithmetic, the operands are not numeric, or the collections differ in length.
+     */
+    static double[] binary(String Operator, Object Lhs, Object Rhs) throws IllegalArgumentException {
+        // init
+        double[] a = Lhs instanceof double[] ? (double[]) Lhs : null;
+        double[] b = Rhs instanceof double[] ? (double[]) Rhs : null;
+        double as = a == null ? Expression.toDouble(Lhs) : 0;
+        double bs = b == null ? Expression.toDouble(Rhs) : 0;
+        int n = a != null ? a.length : b.length;
+        if (a != null && b != null && a.length != b.length) {
+            throw new IllegalArgumentException("Collections of length " + a.length + " and " + b.length + " can not be combined.");
+        }
+        double[] result = new double[n];
+        // apply
+        if (Operator.equals("+")) {
+            for (int i=0;i<n;i++) {
+                result[i] = (a == null ? as : a[i]) + (b == null ? bs : b[i]);
+            }
+        } else if (Operator.equals("-")) {
+            for (int i=0;i<n;i++) {
+                result[i] = (a == null ? as : a[i]) - (b == null ? bs : b[i]);
+            }
+        } else if (Operator.equals("*")) {
+            for (int i=0;i<n;i++) {
+                result[i] = (a == null ? as : a[i]) * (b == null ? bs : b[i]);
+            }
+        } else if (Operator.equals("/")) {
+            for (int i=0;i<n;i++) {
+                result[i] = (a == null ? as : a[i]) / (b == null ? bs : b[i]);
+            }
+        } else if (Operator.equals("%")) {
+            for (int i=0;i<n;i++) {
+                result[i] = (a == null ? as : a[i]) % (b == null ? bs : b[i]);
+            }
+        } else if (Operator.equals("^")) {
+            for (int i=0;i<n;i++) {
+                result[i] = Math.pow(a == null ? as : a[i], b == null ? bs : b[i]);
+            }
+        } else {
+            throw new IllegalArgumentException("Operator '" + Operator + "' can not be applied to a collection.");
+        }
+        // return result
+        return result;
+    }
+
+    /**
+     * Build a list collection.
+     * @param Values Element values.
+     * @return Collection.
+     * @throws IllegalArgumentException An element is not a number.
+     */
+    static double[] list(Object[] Values) throws IllegalArgumentException {
+        double[] result = new double[Values.length];
+        for (int i=0;i<Values.length;i++) {
+            result[i] = Expression.toDouble(Values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Build a collection from a list or range node's operand values.
+     * @param Term Collection node term; LIST or RANGE.
+     * @param Values Operand values.
+     * @return Collection.
+     * @throws IllegalArgumentException The operand values are not numbers, or the range is malformed.
+     */
+    static double[] make(String Term, Object[] Values) throws IllegalArgumentException {
+        if (Term.equals(RANGE)) {
+            double step = Values.length > 2 ? Expression.toDouble(Values[2]) : 1.0;
+            return range(Expression.toDouble(Values[0]), Expression.toDouble(Values[1]), step);
+        }
+        return list(Values);
+    }
+
+    /**
+     * Negate each element of a collection.
+     * @param Operand Collection.
+     * @return Result collection.
+     */
+    static double[] negate(double[] Operand) {
+        double[] result = new double[Operand.length];
+        for (int i=0;i<Operand.length;i++) {
+            result[i] = -Operand[i];
+        }
+        return result;
+    }
+
+    /**
+     * Build a range collection.  Elements are computed as Start + i * Step, so
+     * that rounding error does not accumulate over long ranges.
+     * @param Start First value.
+     * @param End Last value, included if it falls on a step.
+     * @param Step Increment; negative if End is less than Start.
+     * @return Collection.
+     * @throws IllegalArgumentException The step is zero or not a finite number, or the range has more than MAX_RANGE elements.
+     */
+    static double[] range(double Start, double End, double Step) throws IllegalArgumentException {
+        if (Step == 0 || Double.isNaN(Step) || Double.isInfinite(Step)) {
+            throw new IllegalArgumentException("Range step must be a non-zero number.");
+        }
+        double span = (End - Start) / Step;
+        if (span < 0 || Double.isNaN(span)) {
+            return new double[0];
+        }
+        if (span >= MAX_RANGE) {
+            throw new IllegalArgumentException("Range has more than " + MAX_RANGE + " elements.");
+        }
+        int n = (int) Math.floor(span + EPSILON) + 1;
+        double[] result = new double[n];
+        for (int i=0;i<n;i++) {
+            result[i] = Start + i * Step;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,594 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Compiles an Expression tree into a chain of ExpressionEvaluators.  Literal
+ * values are converted once, at compile time.  Operator nodes are bound to an
+ * evaluator specialized for that operator, so no operator string comparison
+ * is made while solving.  Arithmetic evaluators take a direct path when both
+ * operands are Doubles, which is the common case, and otherwise fall back to
+ * the general operator implementation in Expression.  Subtrees that contain 
+ * only number literals, numeric references and arithmetic operators are 
+ * compiled to a DoubleExpression and evaluated without intermediate allocation.  References
+ * are resolved through a ReferenceSlot that is bound once and rebound only 
+ * after a structural change to the model.  Nodes
+ * that are shared between several trees may be compiled once to a memoizing 
+ * evaluator, which is reused by every tree that contains the node.  Calls to
+ * pure functions remember the last arguments and result at each call site.
+ * @author Davis Marques
+ */
+final class ExpressionCompiler {
+
+    /**
+     * ExpressionCompiler constructor.
+     */
+    private ExpressionCompiler() {
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Compile an expression tree.
+     * @param Node Root of the expression tree.
+     * @return Evaluator for the tree.
+     * @throws IllegalArgumentException The tree contains a node that can not be compiled.
+     */
+    static ExpressionEvaluator compile(Expression Node) throws IllegalArgumentException {
+        return compile(Node, null);
+    }
+
+    /**
+     * Compile an expression tree, sharing the evaluators of common nodes.  
+     * Each node that is a key in the shared evaluator map is compiled once to 
+     * a memoizing evaluator, which is then stored in the map and reused 
+     * wherever the same node occurs.
+     * @param Node Root of the expression tree.
+     * @param Shared Map of shared nodes to their evaluators, keyed by node identity, or null.
+     * @return Evaluator for the tree.
+     * @throws IllegalArgumentException The tree contains a node that can not be compiled.
+     */
+    static ExpressionEvaluator compile(Expression Node, Map<Expression,ExpressionEvaluator> Shared) throws IllegalArgumentException {
+        if (Shared != null && Shared.containsKey(Node)) {
+            ExpressionEvaluator evaluator = Shared.get(Node);
+            if (evaluator == null) {
+                evaluator = new MemoizedEvaluator(Node, compileNode(Node, Shared));
+                Shared.put(Node, evaluator);
+            }
+            return evaluator;
+        }
+        return compileNode(Node, Shared);
+    }
+
+    /**
+     * Compile a single node of an expression tree.
+     * @param Node Node.
+     * @param Shared Map of shared nodes to their evaluators, or null.
+     * @return Evaluator for the node.
+     * @throws IllegalArgumentException The node can not be compiled.
+     */
+    private static ExpressionEvaluator compileNode(Expression Node, Map<Expression,ExpressionEvaluator> Shared) throws IllegalArgumentException {
+        switch (Node.getType()) {
+            case Expression.STRING_LITERAL:
+                return constant(Node.getTerm());
+            case Expression.NUMBER_LITERAL:
+                return constant(Double.valueOf(Node.getTerm()));
+            case Expression.REFERENCE:
+                return reference(Node.getContext(), Node.getTerm());
+            case Expression.COMPOUND:
+                // pure numeric subtrees are evaluated as primitives and boxed once
+                final DoubleExpression numeric = compileDouble(Node);
+                if (numeric != null) {
+                    return new ExpressionEvaluator() {
+                        public Object evaluate() {
+                            return Double.valueOf(numeric.evaluate());
+                        }
+                    };
+                }
+                Expression[] parameters = Node.getParameters();
+                if (parameters.length == 1) {
+                    return unary(Node.getTerm(), compile(parameters[0], Shared));
+                } else if (parameters.length == 2) {
+                    return binary(Node.getTerm(), compile(parameters[0], Shared), compile(parameters[1], Shared));
+                }
+                throw new IllegalArgumentException("The number of parameters provided does not match the number required by the operator.");
+            case Expression.FUNCTION:
+                ExpressionFunction function = ExpressionFunction.get(Node.getTerm());
+                if (function == null) {
+                    throw new IllegalArgumentException("Unknown function '" + Node.getTerm() + "'.");
+                }
+                Expression[] arguments = Node.getParameters();
+                ExpressionEvaluator[] evaluators = new ExpressionEvaluator[arguments.length];
+                for (int i=0;i<arguments.length;i++) {
+                    evaluators[i] = compile(arguments[i], Shared);
+                }
+                return new FunctionEvaluator(function, evaluators);
+            case Expression.COLLECTION:
+                return collection(Node, Shared);
+            default:
+                // defer to the interpreter
+                final Expression node = Node;
+                return new ExpressionEvaluator() {
+                    public Object evaluate() {
+                        return node.solve();
+                    }
+                };
+        }
+    }
+
+    /**
+     * Create an evaluator for a list or range collection.  If the elements, or
+     * the range bounds and step, are purely numeric, they are evaluated as 
+     * primitives and written directly into the result array.  A collection of 
+     * literals is built once, and a copy is returned on each evaluation.
+     * @param Node Collection node.
+     * @param Shared Map of shared nodes to their evaluators, or null.
+     * @return Evaluator.
+     * @throws IllegalArgumentException The collection can not be compiled.
+     */
+    private static ExpressionEvaluator collection(final Expression Node, Map<Expression,ExpressionEvaluator> Shared) throws IllegalArgumentException {
+        final Expression[] parameters = Node.getParameters();
+        final DoubleExpression[] numeric = new DoubleExpression[parameters.length];
+        boolean constant = true;
+        for (int i=0;i<parameters.length;i++) {
+            numeric[i] = compileDouble(parameters[i]);
+            if (numeric[i] == null) {
+                // general case
+                final ExpressionEvaluator[] evaluators = new ExpressionEvaluator[parameters.length];
+                for (int j=0;j<parameters.length;j++) {
+                    evaluators[j] = compile(parameters[j], Shared);
+                }
+                return new ExpressionEvaluator() {
+                    public Object evaluate() {
+                        Object[] values = new Object[evaluators.length];
+                        for (int j=0;j<evaluators.length;j++) {
+                            values[j] = evaluators[j].evaluate();
+                        }
+                        return ExpressionCollections.make(Node.getTerm(), values);
+                    }
+                };
+            }
+            constant = constant && parameters[i].getType() == Expression.NUMBER_LITERAL;
+        }
+        if (constant) {
+            final double[] value = (double[]) Node.solve();
+            return new ExpressionEvaluator() {
+                public Object evaluate() {
+                    return value.clone();
+                }
+            };
+        }
+        if (Node.getTerm().equals(ExpressionCollections.RANGE)) {
+            return new ExpressionEvaluator() {
+                public Object evaluate() {
+                    double step = numeric.length > 2 ? numeric[2].evaluate() : 1.0;
+                    return ExpressionCollections.range(numeric[0].evaluate(), numeric[1].evaluate(), step);
+                }
+            };
+        }
+        return new ExpressionEvaluator() {
+            public Object evaluate() {
+                double[] result = new double[numeric.length];
+                for (int i=0;i<numeric.length;i++) {
+                    result[i] = numeric[i].evaluate();
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Create an evaluator for a binary operator.
+     * @param Operator Operator.
+     * @param Lhs Left hand operand evaluator.
+     * @param Rhs Right hand operand evaluator.
+     * @return Evaluator.
+     * @throws IllegalArgumentException The operator can not be used as a binary operator.
+     */
+    private static ExpressionEvaluator binary(final String Operator, final ExpressionEvaluator Lhs, final ExpressionEvaluator Rhs) throws IllegalArgumentException {
+        if (Operator.equals("+")) {
+            return new ArithmeticEvaluator(Operator, Lhs, Rhs) {
+                double apply(double lhs, double rhs) {
+                    return lhs + rhs;
+                }
+            };
+        } else if (Operator.equals("-")) {
+            return new ArithmeticEvaluator(Operator, Lhs, Rhs) {
+                double apply(double lhs, double rhs) {
+                    return lhs - rhs;
+                }
+            };
+        } else if (Operator.equals("*")) {
+            return new ArithmeticEvaluator(Operator, Lhs, Rhs) {
+                double apply(double lhs, double rhs) {
+                    return lhs * rhs;
+                }
+            };
+        } else if (Operator.equals("/")) {
+            return new ArithmeticEvaluator(Operator, Lhs, Rhs) {
+                double apply(double lhs, double rhs) {
+                    return lhs / rhs;
+                }
+            };
+        } else if (Operator.equals("%")) {
+            return new ArithmeticEvaluator(Operator, Lhs, Rhs) {
+                double apply(double lhs, double rhs) {
+                    return lhs % rhs;
+                }
+            };
+        } else if (Operator.equals("^")) {
+            return new ArithmeticEvaluator(Operator, Lhs, Rhs) {
+                double apply(double lhs, double rhs) {
+                    return Math.pow(lhs, rhs);
+                }
+            };
+        } else if (Operator.equals("&&")) {
+            return new ExpressionEvaluator() {
+                public Object evaluate() {
+                    // short circuit
+                    if (!Expression.toBoolean(Lhs.evaluate())) {
+                        return Boolean.FALSE;
+                    }
+                    return Boolean.valueOf(Expression.toBoolean(Rhs.evaluate()));
+                }
+            };
+        } else if (Operator.equals("||")) {
+            return new ExpressionEvaluator() {
+                public Object evaluate() {
+                    // short circuit
+                    if (Expression.toBoolean(Lhs.evaluate())) {
+                        return Boolean.TRUE;
+                    }
+                    return Boolean.valueOf(Expression.toBoolean(Rhs.evaluate()));
+                }
+            };
+        }
+        throw new IllegalArgumentException("Operator '" + Operator + "' can not be used as a binary operator.");
+    }
+
+    /**
+     * Compile a purely numeric expression tree to a primitive evaluator.
+     * @param Node Root of the expression tree.
+     * @return Evaluator, or null if the tree contains anything other than number literals, numeric references and arithmetic operators.
+     */
+    static DoubleExpression compileDouble(Expression Node) {
+        switch (Node.getType()) {
+            case Expression.NUMBER_LITERAL:
+                final double value = Double.parseDouble(Node.getTerm());
+                return new DoubleExpression() {
+                    public double evaluate() {
+                        return value;
+                    }
+                };
+            case Expression.REFERENCE:
+                // references that are statically known to be numbers are read as primitives
+                Class clazz = null;
+                try {
+                    clazz = ExpressionTypes.infer(Node);
+                } catch (IllegalArgumentException ex) {
+                    return null;
+                }
+                if (clazz == null || !ExpressionTypes.isNumber(clazz)) {
+                    return null;
+                }
+                final ReferenceSlot slot = new ReferenceSlot(Node.getContext(), Node.getTerm());
+                return new DoubleExpression() {
+                    public double evaluate() {
+                        return Expression.toDouble(slot.resolve());
+                    }
+                };
+            case Expression.COMPOUND:
+                Expression[] parameters = Node.getParameters();
+                String operator = Node.getTerm();
+                if (parameters.length == 1 && operator.equals("-")) {
+                    final DoubleExpression operand = compileDouble(parameters[0]);
+                    if (operand == null) {
+                        return null;
+                    }
+                    return new DoubleExpression() {
+                        public double evaluate() {
+                            return -operand.evaluate();
+                        }
+                    };
+                } else if (parameters.length == 2) {
+                    DoubleExpression lhs = compileDouble(parameters[0]);
+                    DoubleExpression rhs = lhs == null ? null : compileDouble(parameters[1]);
+                    if (rhs == null) {
+                        return null;
+                    }
+                    return binaryDouble(operator, lhs, rhs);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Create a primitive evaluator for an arithmetic operator.
+     * @param Operator Operator.
+     * @param Lhs Left hand operand evaluator.
+     * @param Rhs Right hand operand evaluator.
+     * @return Evaluator, or null if the operator is not arithmetic.
+     */
+    private static DoubleExpression binaryDouble(String Operator, final DoubleExpression Lhs, final DoubleExpression Rhs) {
+        if (Operator.equals("+")) {
+            return new DoubleExpression() {
+                public double evaluate() {
+                    return Lhs.evaluate() + Rhs.evaluate();
+                }
+            };
+        } else if (Operator.equals("-")) {
+            return new DoubleExpression() {
+                public double evaluate() {
+                    return Lhs.evaluate() - Rhs.evaluate();
+                }
+            };
+        } else if (Operator.equals("*")) {
+            return new DoubleExpression() {
+                public double evaluate() {
+                    return Lhs.evaluate() * Rhs.evaluate();
+                }
+            };
+        } else if (Operator.equals("/")) {
+            return new DoubleExpression() {
+                public double evaluate() {
+                    return Lhs.evaluate() / Rhs.evaluate();
+                }
+            };
+        } else if (Operator.equals("%")) {
+            return new DoubleExpression() {
+                public double evaluate() {
+                    return Lhs.evaluate() % Rhs.evaluate();
+                }
+            };
+        } else if (Operator.equals("^")) {
+            return new DoubleExpression() {
+                public double evaluate() {
+                    return Math.pow(Lhs.evaluate(), Rhs.evaluate());
+                }
+            };
+        }
+        return null;
+    }
+
+    /**
+     * Create an evaluator that returns a constant value.
+     * @param Value Value.
+     * @return Evaluator.
+     */
+    private static ExpressionEvaluator constant(final Object Value) {
+        return new ExpressionEvaluator() {
+            public Object evaluate() {
+                return Value;
+            }
+        };
+    }
+
+    /**
+     * Create an evaluator that resolves a reference in context.  The reference
+     * is bound to a ReferenceSlot, so that the context is searched only when 
+     * the structure of the context has changed since the last evaluation.
+     * @param Context Context.
+     * @param Query Reference.
+     * @return Evaluator.
+     */
+    private static ExpressionEvaluator reference(IContext Context, String Query) {
+        final ReferenceSlot slot = new ReferenceSlot(Context, Query);
+        return new ExpressionEvaluator() {
+            public Object evaluate() {
+                return slot.resolve();
+            }
+        };
+    }
+
+    /**
+     * Create an evaluator for a unary operator.
+     * @param Operator Operator.
+     * @param Operand Operand evaluator.
+     * @return Evaluator.
+     * @throws IllegalArgumentException The operator can not be used as a unary operator.
+     */
+    private static ExpressionEvaluator unary(final String Operator, final ExpressionEvaluator Operand) throws IllegalArgumentException {
+        if (Operator.equals("-")) {
+            return new ExpressionEvaluator() {
+                public Object evaluate() {
+                    Object value = Operand.evaluate();
+                    if (value instanceof Double) {
+                        return Double.valueOf(-((Double) value).doubleValue());
+                    }
+                    return Expression.unary(Operator, value);
+                }
+            };
+        } else if (Operator.equals("!")) {
+            return new ExpressionEvaluator() {
+                public Object evaluate() {
+                    return Boolean.valueOf(!Expression.toBoolean(Operand.evaluate()));
+                }
+            };
+        }
+        throw new IllegalArgumentException("Operator '" + Operator + "' can not be used as a unary operator.");
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Evaluator for an arithmetic operator.  Operates directly on double
+     * values when both operands are Doubles.
+     */
+    private static abstract class ArithmeticEvaluator implements ExpressionEvaluator {
+
+        private final String operator;          // operator, for the general case
+        private final ExpressionEvaluator lhs;  // left hand operand
+        private final ExpressionEvaluator rhs;  // right hand operand
+
+        ArithmeticEvaluator(String Operator, ExpressionEvaluator Lhs, ExpressionEvaluator Rhs) {
+            this.operator = Operator;
+            this.lhs = Lhs;
+            this.rhs = Rhs;
+        }
+
+        /**
+         * Apply the operator to double operands.
+         * @param lhs Left hand operand.
+         * @param rhs Right hand operand.
+         * @return Result value.
+         */
+        abstract double apply(double lhs, double rhs);
+
+        public Object evaluate() {
+            Object l = this.lhs.evaluate();
+            Object r = this.rhs.evaluate();
+            if (l instanceof Double && r instanceof Double) {
+                return Double.valueOf(apply(((Double) l).doubleValue(), ((Double) r).doubleValue()));
+            }
+            return Expression.binary(this.operator, l, r);
+        }
+
+    }
+
+    /**
+     * Evaluator for a function call.  If the function is pure, the last 
+     * argument values and result are kept, and the function is not applied 
+     * again while the arguments are unchanged.  Numbers, strings and booleans
+     * are compared by value.  Named objects are compared by identity and 
+     * modification stamp.  Calls with any other kind of argument are not 
+     * memoized.
+     */
+    private static final class FunctionEvaluator implements ExpressionEvaluator {
+
+        private final ExpressionFunction function;      // function
+        private final ExpressionEvaluator[] arguments;  // argument evaluators
+        private Object[] values;                        // argument values of the last call
+        private long[] stamps;                          // modification stamps of named argument values of the last call
+        private Object result;                          // result of the last call
+
+        FunctionEvaluator(ExpressionFunction Function, ExpressionEvaluator[] Arguments) {
+            this.function = Function;
+            this.arguments = Arguments;
+        }
+
+        public Object evaluate() {
+            // evaluate the arguments
+            Object[] current = new Object[this.arguments.length];
+            for (int i=0;i<current.length;i++) {
+                current[i] = this.arguments[i].evaluate();
+            }
+            if (!this.function.isPure()) {
+                return this.function.apply(current);
+            }
+            // get the modification stamps of named arguments
+            long[] recorded = new long[current.length];
+            boolean memoizable = true;
+            for (int i=0;i<current.length;i++) {
+                Object value = current[i];
+                if (value instanceof INamed) {
+                    recorded[i] = ((INamed) value).getModificationStamp();
+                } else if (!(value instanceof Number || value instanceof String || value instanceof Boolean)) {
+                    memoizable = false;
+                }
+            }
+            if (!memoizable) {
+                return this.function.apply(current);
+            }
+            // reuse the last result if the arguments are unchanged
+            synchronized (this) {
+                if (this.values != null && isUnchanged(current, recorded)) {
+                    return this.result;
+                }
+            }
+            Object value = this.function.apply(current);
+            synchronized (this) {
+                this.values = current;
+                this.stamps = recorded;
+                this.result = value;
+            }
+            return value;
+        }
+
+        /**
+         * Determine if the arguments are the same as in the last call.
+         * @param Current Argument values.
+         * @param Recorded Modification stamps of named argument values.
+         * @return True if the arguments are unchanged, false otherwise.
+         */
+        private boolean isUnchanged(Object[] Current, long[] Recorded) {
+            for (int i=0;i<Current.length;i++) {
+                if (Current[i] instanceof INamed) {
+                    if (Current[i] != this.values[i] || Recorded[i] != this.stamps[i]) {
+                        return false;
+                    }
+                } else if (!Current[i].equals(this.values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * Evaluator for a node that is shared between several expression trees.
+     * The value is computed once and reused until a reference in the node has
+     * been rebound, or an object along one of the reference paths has changed.
+     */
+    private static final class MemoizedEvaluator implements ExpressionEvaluator {
+
+        private final Expression node;              // shared node
+        private final ExpressionEvaluator evaluator; // evaluator for the node
+        private INamed[] sources;                   // objects along the path of each reference in the node
+        private long[] stamps;                      // modification stamps of the sources when the value was computed
+        private long version;                       // reference binding version when the value was computed
+        private Object value;                       // cached value
+
+        MemoizedEvaluator(Expression Node, ExpressionEvaluator Evaluator) {
+            this.node = Node;
+            this.evaluator = Evaluator;
+        }
+
+        public synchronized Object evaluate() {
+            long current = ReferenceSlot.getBindingVersion();
+            if (this.stamps != null && this.version == current) {
+                boolean valid = true;
+                for (int i=0;i<this.sources.length && valid;i++) {
+                    valid = this.sources[i].getModificationStamp() == this.stamps[i];
+                }
+                if (valid) {
+                    return this.value;
+                }
+            }
+            if (this.sources == null || this.version != current) {
+                HashSet<INamed> referenced = new HashSet<INamed>();
+                this.node.getReferencedObjects(referenced);
+                this.sources = referenced.toArray(new INamed[referenced.size()]);
+            }
+            long[] recorded = new long[this.sources.length];
+            for (int i=0;i<this.sources.length;i++) {
+                recorded[i] = this.sources[i].getModificationStamp();
+            }
+            this.stamps = null;
+            this.value = this.evaluator.evaluate();
+            this.stamps = recorded;
+            this.version = current;
+            return this.value;
+        }
+
+    }
+
+}
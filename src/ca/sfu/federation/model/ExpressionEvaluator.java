@@ -0,0 +1,33 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+/**
+ * A compiled form of an Expression tree.  Evaluators are produced by
+ * ExpressionCompiler and are composed into a chain that mirrors the structure
+ * of the tree, so that solving an expression costs one virtual call per node.
+ * @author Davis Marques
+ */
+interface ExpressionEvaluator {
+
+    /**
+     * Evaluate the expression.
+     * @return Result value.
+     * @throws IllegalArgumentException The expression could not be evaluated.
+     */
+    public Object evaluate() throws IllegalArgumentException;
+
+}
@@ -0,0 +1,342 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.model.geometry.IPoint;
+import ca.sfu.federation.model.geometry.lightweight.LwPoint;
+import java.util.HashMap;
+
+/**
+ * A function that may be called from an expression, as in name(arg1,arg2).
+ * Functions are registered by name in a global function table.  A pure
+ * function has no side effects and its result depends only on its arguments,
+ * so calls with unchanged arguments may be memoized and calls with literal
+ * arguments may be evaluated at parse time.
+ * <p>
+ * Built in functions are:
+ * <pre>
+ *   sin(a), cos(a), sqrt(a), pow(a,b), min(a,...), max(a,...), clamp(a,lo,hi)
+ *   distance(p,q), midpoint(p,q), dot(p,q)
+ * </pre>
+ * where p and q are IPoints.  The math functions also accept collections, and
+ * are then applied element by element.
+ * @author Davis Marques
+ */
+public abstract class ExpressionFunction {
+
+    private static final HashMap<String,ExpressionFunction> functions = new HashMap<String,ExpressionFunction>();
+
+    private final String name;          // function name
+    private final int minArguments;     // minimum number of arguments
+    private final int maxArguments;     // maximum number of arguments, or -1 if there is no maximum
+    private final boolean pure;         // true if the result depends only on the arguments
+
+    static {
+        // math
+        register(new Numeric("sin",1,1) {
+            public double apply(double[] Arguments) {
+                return Math.sin(Arguments[0]);
+            }
+        });
+        register(new Numeric("cos",1,1) {
+            public double apply(double[] Arguments) {
+                return Math.cos(Arguments[0]);
+            }
+        });
+        register(new Numeric("sqrt",1,1) {
+            public double apply(double[] Arguments) {
+                return Math.sqrt(Arguments[0]);
+            }
+        });
+        register(new Numeric("pow",2,2) {
+            public double apply(double[] Arguments) {
+                return Math.pow(Arguments[0], Arguments[1]);
+            }
+        });
+        register(new Numeric("min",1,-1) {
+            public double apply(double[] Arguments) {
+                double result = Arguments[0];
+                for (int i=1;i<Arguments.length;i++) {
+                    result = Math.min(result, Arguments[i]);
+                }
+                return result;
+            }
+        });
+        register(new Numeric("max",1,-1) {
+            public double apply(double[] Arguments) {
+                double result = Arguments[0];
+                for (int i=1;i<Arguments.length;i++) {
+                    result = Math.max(result, Arguments[i]);
+                }
+                return result;
+            }
+        });
+        register(new Numeric("clamp",3,3) {
+            public double apply(double[] Arguments) {
+                return Math.max(Arguments[1], Math.min(Arguments[2], Arguments[0]));
+            }
+        });
+        // geometry
+        register(new ExpressionFunction("distance",2,2,true) {
+            public Class getResultClass(Class[] Arguments) {
+                checkPoints(Arguments);
+                return Double.class;
+            }
+            public Object apply(Object[] Arguments) {
+                IPoint p = toPoint(Arguments[0]);
+                IPoint q = toPoint(Arguments[1]);
+                double dx = q.getX().doubleValue() - p.getX().doubleValue();
+                double dy = q.getY().doubleValue() - p.getY().doubleValue();
+                double dz = q.getZ().doubleValue() - p.getZ().doubleValue();
+                return Double.valueOf(Math.sqrt(dx * dx + dy * dy + dz * dz));
+            }
+        });
+        register(new ExpressionFunction("midpoint",2,2,true) {
+            public Class getResultClass(Class[] Arguments) {
+                checkPoints(Arguments);
+                return LwPoint.class;
+            }
+            public Object apply(Object[] Arguments) {
+                IPoint p = toPoint(Arguments[0]);
+                IPoint q = toPoint(Arguments[1]);
+                return new LwPoint((p.getX().doubleValue() + q.getX().doubleValue()) / 2,
+                                   (p.getY().doubleValue() + q.getY().doubleValue()) / 2,
+                                   (p.getZ().doubleValue() + q.getZ().doubleValue()) / 2);
+            }
+        });
+        register(new ExpressionFunction("dot",2,2,true) {
+            public Class getResultClass(Class[] Arguments) {
+                checkPoints(Arguments);
+                return Double.class;
+            }
+            public Object apply(Object[] Arguments) {
+                IPoint p = toPoint(Arguments[0]);
+                IPoint q = toPoint(Arguments[1]);
+                return Double.valueOf(p.getX().doubleValue() * q.getX().doubleValue()
+                                    + p.getY().doubleValue() * q.getY().doubleValue()
+                                    + p.getZ().doubleValue() * q.getZ().doubleValue());
+            }
+        });
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * ExpressionFunction constructor.
+     * @param Name Function name.
+     * @param MinArguments Minimum number of arguments.
+     * @param MaxArguments Maximum number of arguments, or -1 if there is no maximum.
+     * @param Pure True if the function has no side effects and its result depends only on its arguments.
+     */
+    protected ExpressionFunction(String Name, int MinArguments, int MaxArguments, boolean Pure) {
+        this.name = Name;
+        this.minArguments = MinArguments;
+        this.maxArguments = MaxArguments;
+        this.pure = Pure;
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Apply the function.
+     * @param Arguments Argument values.
+     * @return Result value.
+     * @throws IllegalArgumentException The function can not be applied to the argument values.
+     */
+    public abstract Object apply(Object[] Arguments) throws IllegalArgumentException;
+
+    /**
+     * Check the number of arguments in a call to the function.
+     * @param Count Number of arguments.
+     * @throws IllegalArgumentException The function can not be called with that number of arguments.
+     */
+    void checkArguments(int Count) throws IllegalArgumentException {
+        if (Count < this.minArguments || (this.maxArguments >= 0 && Count > this.maxArguments)) {
+            String expected = String.valueOf(this.minArguments);
+            if (this.maxArguments < 0) {
+                expected = "at least " + this.minArguments;
+            } else if (this.maxArguments != this.minArguments) {
+                expected = this.minArguments + " to " + this.maxArguments;
+            }
+            throw new IllegalArgumentException("Function '" + this.name + "' requires " + expected + " argument(s), but " + Count + " were provided.");
+        }
+    }
+
+    /**
+     * Get a registered function.
+     * @param Name Function name.
+     * @return Function, or null if no function is registered under that name.
+     */
+    public static ExpressionFunction get(String Name) {
+        synchronized (functions) {
+            return functions.get(Name);
+        }
+    }
+
+    /**
+     * Get the class of the value returned for arguments of the given classes.
+     * Used for static type checking of expressions.
+     * @param Arguments Argument classes; an element is null if the class of that argument is unknown.
+     * @return Result class, or null if the class can not be determined.
+     * @throws IllegalArgumentException The function can not be applied to arguments of the given classes.
+     */
+    public Class getResultClass(Class[] Arguments) throws IllegalArgumentException {
+        return null;
+    }
+
+    /**
+     * Get the function name.
+     * @return Function name.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Determine if the function is pure.
+     * @return True if the function has no side effects and its result depends only on its arguments.
+     */
+    public boolean isPure() {
+        return this.pure;
+    }
+
+    /**
+     * Register a function, replacing any function registered under the same
+     * name.  Expressions that have already been parsed are not affected.
+     * @param Function Function.
+     */
+    public static void register(ExpressionFunction Function) {
+        synchronized (functions) {
+            functions.put(Function.getName(), Function);
+        }
+    }
+
+    /**
+     * Check that the arguments of known class are points.
+     * @param Arguments Argument classes; an element is null if the class of that argument is unknown.
+     * @throws IllegalArgumentException An argument is not a point.
+     */
+    protected void checkPoints(Class[] Arguments) throws IllegalArgumentException {
+        for (int i=0;i<Arguments.length;i++) {
+            if (Arguments[i] != null && !IPoint.class.isAssignableFrom(Arguments[i])) {
+                throw new IllegalArgumentException("Function '" + this.name + "' requires points, but argument " + (i + 1) + " is of type '" + Arguments[i].getSimpleName() + "'.");
+            }
+        }
+    }
+
+    /**
+     * Convert an argument value to a point.
+     * @param Value Argument value.
+     * @return Point.
+     * @throws IllegalArgumentException The value is not a point.
+     */
+    protected static IPoint toPoint(Object Value) throws IllegalArgumentException {
+        if (Value instanceof IPoint) {
+            return (IPoint) Value;
+        }
+        throw new IllegalArgumentException("Value " + Value + " is not a point.");
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * A pure function of numeric arguments that produces a numeric result.
+     */
+    public abstract static class Numeric extends ExpressionFunction {
+
+        /**
+         * Numeric constructor.
+         * @param Name Function name.
+         * @param MinArguments Minimum number of arguments.
+         * @param MaxArguments Maximum number of arguments, or -1 if there is no maximum.
+         */
+        protected Numeric(String Name, int MinArguments, int MaxArguments) {
+            super(Name, MinArguments, MaxArguments, true);
+        }
+
+        /**
+         * Apply the function to primitive argument values.
+         * @param Arguments Argument values.
+         * @return Result value.
+         */
+        public abstract double apply(double[] Arguments);
+
+        /**
+         * Get the result class.  The result is a collection if any argument 
+         * is a collection, and a number otherwise.
+         * @param Arguments Argument classes; an element is null if the class of that argument is unknown.
+         * @return Result class.
+         * @throws IllegalArgumentException An argument is neither a number nor a collection.
+         */
+        public Class getResultClass(Class[] Arguments) throws IllegalArgumentException {
+            Class result = Double.class;
+            for (int i=0;i<Arguments.length;i++) {
+                if (Arguments[i] == double[].class) {
+                    result = double[].class;
+                } else if (Arguments[i] != null && !ExpressionTypes.isNumber(Arguments[i])) {
+                    throw new IllegalArgumentException("Function '" + getName() + "' requires numbers, but argument " + (i + 1) + " is of type '" + Arguments[i].getSimpleName() + "'.");
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Apply the function.  If any argument is a collection, the function 
+         * is applied element by element, and the result is a collection.
+         * @param Arguments Argument values.
+         * @return Result value.
+         * @throws IllegalArgumentException An argument is not numeric, or the collections differ in length.
+         */
+        public Object apply(Object[] Arguments) throws IllegalArgumentException {
+            // find the collection length
+            int n = -1;
+            for (int i=0;i<Arguments.length;i++) {
+                if (Arguments[i] instanceof double[]) {
+                    int length = ((double[]) Arguments[i]).length;
+                    if (n >= 0 && n != length) {
+                        throw new IllegalArgumentException("Collections of length " + n + " and " + length + " can not be combined.");
+                    }
+                    n = length;
+                }
+            }
+            double[] values = new double[Arguments.length];
+            if (n < 0) {
+                for (int i=0;i<Arguments.length;i++) {
+                    values[i] = Expression.toDouble(Arguments[i]);
+                }
+                return Double.valueOf(apply(values));
+            }
+            // apply element-wise
+            for (int i=0;i<Arguments.length;i++) {
+                if (!(Arguments[i] instanceof double[])) {
+                    values[i] = Expression.toDouble(Arguments[i]);
+                }
+            }
+            double[] result = new double[n];
+            for (int j=0;j<n;j++) {
+                for (int i=0;i<Arguments.length;i++) {
+                    if (Arguments[i] instanceof double[]) {
+                        values[i] = ((double[]) Arguments[i])[j];
+                    }
+                }
+                result[j] = apply(values);
+            }
+            return result;
+        }
+
+    }
+
+}
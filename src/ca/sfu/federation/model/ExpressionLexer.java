@@ -0,0 +1,227 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a user specified statement into a sequence of tokens for the
+ * ExpressionParser.  The statement is scanned once, left to right, and
+ * whitespace outside of string literals is discarded.
+ * @author Davis Marques
+ */
+class ExpressionLexer {
+
+    static final int NUMBER = 0;      // number literal
+    static final int STRING = 1;      // quoted string literal
+    static final int IDENTIFIER = 2;  // object or property reference
+    static final int OPERATOR = 3;    // one of Expression.OPERATORS
+    static final int LPAREN = 4;      // (
+    static final int RPAREN = 5;      // )
+    static final int COMMA = 6;       // , argument and element separator
+    static final int LBRACKET = 7;    // [
+    static final int RBRACKET = 8;    // ]
+    static final int RANGE = 9;       // .. range separator
+    static final int END = 10;        // end of statement
+
+    private String statement;         // the statement being scanned
+    private int position;             // index of the next character to scan
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * ExpressionLexer constructor.
+     * @param Statement User specified statement.
+     */
+    ExpressionLexer(String Statement) {
+        this.statement = Statement;
+        this.position = 0;
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Determine if the character at the specified index is a decimal digit.
+     * @param Index Character index.
+     * @return True if the index is in range and the character is a digit.
+     */
+    private boolean isDigitAt(int Index) {
+        return Index < this.statement.length() && Character.isDigit(this.statement.charAt(Index));
+    }
+
+    /**
+     * Scan the next token from the statement.
+     * @return Next token.
+     * @throws IllegalArgumentException The statement contains a character that is not part of the expression language.
+     */
+    private Token next() throws IllegalArgumentException {
+        // skip whitespace
+        while (this.position < this.statement.length() && Character.isWhitespace(this.statement.charAt(this.position))) {
+            this.position++;
+        }
+        if (this.position >= this.statement.length()) {
+            return new Token(END,"",this.position);
+        }
+        int start = this.position;
+        char c = this.statement.charAt(start);
+        // range separator
+        if (this.statement.startsWith("..", start)) {
+            this.position += 2;
+            return new Token(RANGE,"..",start);
+        }
+        // number literal
+        if (Character.isDigit(c) || (c == '.' && isDigitAt(start + 1))) {
+            return scanNumber(start);
+        }
+        // string literal
+        if (c == '"' || c == '\'') {
+            int end = this.statement.indexOf(c, start + 1);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unterminated string literal at position " + start + ".");
+            }
+            this.position = end + 1;
+            return new Token(STRING,this.statement.substring(start + 1, end),start);
+        }
+        // object or property reference
+        if (Character.isJavaIdentifierStart(c) || c == '@') {
+            this.position++;
+            while (this.position < this.statement.length()) {
+                char ch = this.statement.charAt(this.position);
+                if (Character.isJavaIdentifierPart(ch)) {
+                    this.position++;
+                } else if (ch == '.' && this.position + 1 < this.statement.length()
+                        && Character.isJavaIdentifierStart(this.statement.charAt(this.position + 1))) {
+                    // path separator, as in objectname.propertyname
+                    this.position++;
+                } else {
+                    break;
+                }
+            }
+            return new Token(IDENTIFIER,this.statement.substring(start, this.position),start);
+        }
+        // grouping
+        if (c == '(') {
+            this.position++;
+            return new Token(LPAREN,"(",start);
+        }
+        if (c == ')') {
+            this.position++;
+            return new Token(RPAREN,")",start);
+        }
+        if (c == ',') {
+            this.position++;
+            return new Token(COMMA,",",start);
+        }
+        // collections
+        if (c == '[') {
+            this.position++;
+            return new Token(LBRACKET,"[",start);
+        }
+        if (c == ']') {
+            this.position++;
+            return new Token(RBRACKET,"]",start);
+        }
+        // operators; longest match first so that && and || are not split
+        String operator = null;
+        for (int i=0;i<Expression.OPERATORS.length;i++) {
+            String o = Expression.OPERATORS[i];
+            if (this.statement.startsWith(o, start) && (operator == null || o.length() > operator.length())) {
+                operator = o;
+            }
+        }
+        if (operator != null) {
+            this.position += operator.length();
+            return new Token(OPERATOR,operator,start);
+        }
+        throw new IllegalArgumentException("Unexpected character '" + c + "' at position " + start + ".");
+    }
+
+    /**
+     * Scan a number literal of the form digits[.digits][(e|E)[+|-]digits].
+     * A '.' that is immediately followed by a second '.' is not consumed.
+     * @param Start Index of the first character of the literal.
+     * @return Number token.
+     */
+    private Token scanNumber(int Start) {
+        int i = Start;
+        while (isDigitAt(i)) {
+            i++;
+        }
+        if (i < this.statement.length() && this.statement.charAt(i) == '.'
+                && !(i + 1 < this.statement.length() && this.statement.charAt(i + 1) == '.')) {
+            i++;
+            while (isDigitAt(i)) {
+                i++;
+            }
+        }
+        if (i < this.statement.length() && (this.statement.charAt(i) == 'e' || this.statement.charAt(i) == 'E')) {
+            int j = i + 1;
+            if (j < this.statement.length() && (this.statement.charAt(j) == '+' || this.statement.charAt(j) == '-')) {
+                j++;
+            }
+            if (isDigitAt(j)) {
+                i = j;
+                while (isDigitAt(i)) {
+                    i++;
+                }
+            }
+        }
+        this.position = i;
+        return new Token(NUMBER,this.statement.substring(Start, i),Start);
+    }
+
+    /**
+     * Scan the complete statement.
+     * @return List of tokens, terminated by an END token.
+     * @throws IllegalArgumentException The statement could not be tokenized.
+     */
+    List<Token> tokenize() throws IllegalArgumentException {
+        ArrayList<Token> tokens = new ArrayList<Token>();
+        Token token = next();
+        while (token.type != END) {
+            tokens.add(token);
+            token = next();
+        }
+        tokens.add(token);
+        return tokens;
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * A lexical token.
+     */
+    static final class Token {
+
+        final int type;               // token type
+        final String text;            // token text
+        final int position;           // index of the token in the statement
+
+        Token(int Type, String Text, int Position) {
+            this.type = Type;
+            this.text = Text;
+            this.position = Position;
+        }
+
+        @Override
+        public String toString() {
+            return this.text;
+        }
+
+    }
+
+}
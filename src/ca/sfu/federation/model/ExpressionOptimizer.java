@@ -0,0 +1,179 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optimization pass over the expression trees of all Inputs in a model.
+ * Structurally identical subtrees are replaced by a single canonical node, so
+ * that the trees of the model form a directed acyclic graph.  Canonical nodes
+ * that occur more than once, and that contain references, are compiled to a
+ * shared memoizing evaluator, so that each is evaluated once per propagation
+ * rather than once per occurrence.  Literal subtrees are folded by
+ * ExpressionParser and are not shared.
+ * @author Davis Marques
+ */
+class ExpressionOptimizer {
+
+    private HashMap<Expression,Expression> nodes = new HashMap<Expression,Expression>();   // canonical node for each distinct subtree
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Collect the expression solvers of all Inputs in a context and its
+     * subcontexts.
+     * @param Context Context.
+     * @param Solvers List to which the solvers are added.
+     * @param Visited Contexts that have already been visited.
+     */
+    private static void collect(IContext Context, List<ExpressionSolver> Solvers, Map<Object,Object> Visited) {
+        if (Visited.containsKey(Context)) {
+            return;
+        }
+        Visited.put(Context, Context);
+        Iterator<INamed> iter = Context.getElementMap().values().iterator();
+        while (iter.hasNext()) {
+            INamed named = iter.next();
+            if (named instanceof Component) {
+                InputTable table = ((Component) named).getInputTable();
+                if (table != null) {
+                    Input[] inputs = table.getInputs();
+                    for (int i=0;i<inputs.length;i++) {
+                        ExpressionSolver solver = inputs[i].getSolver();
+                        if (solver != null && solver.getExpression() != null && !Visited.containsKey(solver)) {
+                            Visited.put(solver, solver);
+                            Solvers.add(solver);
+                        }
+                    }
+                }
+            }
+            if (named instanceof IContext) {
+                collect((IContext) named, Solvers, Visited);
+            }
+        }
+    }
+
+    /**
+     * Get the canonical node for a subtree, registering the subtree as
+     * canonical if an identical subtree has not been seen before.
+     * @param Node Root of the subtree.
+     * @param Uses Number of occurrences of each canonical node.
+     * @return Canonical node.
+     */
+    private Expression intern(Expression Node, Map<Expression,Integer> Uses) {
+        // intern subtrees first, so that canonical nodes only refer to canonical nodes
+        Expression[] parameters = Node.getParameters();
+        Expression[] canonical = null;
+        for (int i=0;i<parameters.length;i++) {
+            Expression p = intern(parameters[i], Uses);
+            if (p != parameters[i]) {
+                if (canonical == null) {
+                    canonical = parameters.clone();
+                }
+                canonical[i] = p;
+            }
+        }
+        Expression node = Node;
+        if (canonical != null) {
+            node = new Expression(Node.getType(), Node.getTerm(), canonical, Node.getContext());
+        }
+        // find the canonical node
+        Expression result = this.nodes.get(node);
+        if (result == null) {
+            this.nodes.put(node, node);
+            result = node;
+        }
+        // count occurrences
+        Integer count = Uses.get(result);
+        Uses.put(result, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+        // return result
+        return result;
+    }
+
+    /**
+     * Determine if a node contains a reference or a call to an impure 
+     * function.
+     * @param Node Node.
+     * @return True if the value of the node may change between evaluations.
+     */
+    private static boolean isVariable(Expression Node) {
+        if (Node.getType() == Expression.REFERENCE) {
+            return true;
+        }
+        if (Node.getType() == Expression.FUNCTION) {
+            ExpressionFunction function = ExpressionFunction.get(Node.getTerm());
+            if (function == null || !function.isPure()) {
+                return true;
+            }
+        }
+        Expression[] parameters = Node.getParameters();
+        for (int i=0;i<parameters.length;i++) {
+            if (isVariable(parameters[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Optimize the expression trees of all Inputs in a context and its
+     * subcontexts.  Canonical nodes are retained between passes, so repeated
+     * passes over an unchanged model produce the same trees.
+     * @param Context Context.
+     * @return Number of shared nodes.
+     */
+    int optimize(IContext Context) {
+        // init
+        ArrayList<ExpressionSolver> solvers = new ArrayList<ExpressionSolver>();
+        IdentityHashMap<Expression,Integer> uses = new IdentityHashMap<Expression,Integer>();
+        IdentityHashMap<Expression,ExpressionEvaluator> shared = new IdentityHashMap<Expression,ExpressionEvaluator>();
+        collect(Context, solvers, new IdentityHashMap<Object,Object>());
+        // replace each tree by its canonical form
+        Expression[] trees = new Expression[solvers.size()];
+        for (int i=0;i<trees.length;i++) {
+            trees[i] = intern(solvers.get(i).getExpression(), uses);
+        }
+        // nodes that occur more than once and that have to be computed are shared
+        Iterator<Map.Entry<Expression,Integer>> iter = uses.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Expression,Integer> entry = iter.next();
+            if (entry.getValue().intValue() > 1 && isVariable(entry.getKey())) {
+                shared.put(entry.getKey(), null);
+            }
+        }
+        // compile the canonical trees
+        for (int i=0;i<trees.length;i++) {
+            solvers.get(i).setExpression(trees[i], ExpressionCompiler.compile(trees[i], shared));
+        }
+        // discard canonical nodes that are no longer in use
+        HashMap<Expression,Expression> retained = new HashMap<Expression,Expression>();
+        Iterator<Expression> it = uses.keySet().iterator();
+        while (it.hasNext()) {
+            Expression node = it.next();
+            retained.put(node, node);
+        }
+        this.nodes = retained;
+        // return result
+        return shared.size();
+    }
+
+}
@@ -0,0 +1,312 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.model.ExpressionLexer.Token;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Precedence climbing (Pratt) parser for the expression language.  Builds an
+ * immutable Expression tree from the token stream produced by ExpressionLexer.
+ * Operator binding, from loosest to tightest, is:
+ * <pre>
+ *   ||
+ *   &amp;&amp;
+ *   + -
+ *   * / %
+ *   unary - !
+ *   ^        (right associative)
+ * </pre>
+ * Parentheses may be used to override the default binding.  A reference 
+ * followed by a parenthesized, comma separated argument list is a call to a 
+ * registered ExpressionFunction.  Collections are written in brackets, either
+ * as a comma separated list of elements, [a,b,c], or as a range, 
+ * [start..end] or [start..end step increment].  Operators, and pure functions, whose 
+ * operands are all literals are evaluated at parse time, and replaced by a 
+ * literal holding the result.
+ * @author Davis Marques
+ */
+class ExpressionParser {
+
+    private static final int PREFIX_BINDING_POWER = 50;  // binding power of unary - and !
+
+    private List<Token> tokens;       // token stream
+    private int index;                // index of the current token
+    private IContext context;         // the collection of NamedObjects available to reference expressions
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * ExpressionParser constructor.
+     * @param Statement User specified statement.
+     * @param Context The collection of NamedObjects available to the expression.
+     * @throws IllegalArgumentException The statement could not be tokenized.
+     */
+    ExpressionParser(String Statement, IContext Context) throws IllegalArgumentException {
+        this.tokens = new ExpressionLexer(Statement).tokenize();
+        this.index = 0;
+        this.context = Context;
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Get the binding power of a binary operator.
+     * @param Operator Operator.
+     * @return Binding power, or 0 if the operator can not be used in infix position.
+     */
+    private static int getInfixBindingPower(String Operator) {
+        if (Operator.equals("||")) {
+            return 10;
+        } else if (Operator.equals("&&")) {
+            return 20;
+        } else if (Operator.equals("+") || Operator.equals("-")) {
+            return 30;
+        } else if (Operator.equals("*") || Operator.equals("/") || Operator.equals("%")) {
+            return 40;
+        } else if (Operator.equals("^")) {
+            return 60;
+        }
+        return 0;
+    }
+
+    /**
+     * Determine if a binary operator is right associative.
+     * @param Operator Operator.
+     * @return True if right associative, false otherwise.
+     */
+    private static boolean isRightAssociative(String Operator) {
+        return Operator.equals("^");
+    }
+
+    /**
+     * Consume the current token and advance to the next.
+     * @return The consumed token.
+     */
+    private Token advance() {
+        Token token = this.tokens.get(this.index);
+        if (token.type != ExpressionLexer.END) {
+            this.index++;
+        }
+        return token;
+    }
+
+    /**
+     * Create an operator node.  If all operands are literals, the operator is
+     * applied at parse time and a literal node holding the result is returned
+     * instead.  Operators that fail on their operands, or that yield a value 
+     * which can not be written as a literal, are left for the solver.
+     * @param Operator Operator.
+     * @param Operands Operands.
+     * @return Expression.
+     */
+    private static Expression compound(String Operator, Expression[] Operands) {
+        return fold(new Expression(Expression.COMPOUND, Operator, Operands, null));
+    }
+
+    /**
+     * Evaluate an operator or pure function node at parse time if all of its
+     * operands are literals.
+     * @param Node Operator or function node.
+     * @return A literal node holding the result, or the original node if it can not be folded.
+     */
+    private static Expression fold(Expression Node) {
+        Expression[] operands = Node.getParameters();
+        for (int i=0;i<operands.length;i++) {
+            if (operands[i].getType() != Expression.NUMBER_LITERAL && operands[i].getType() != Expression.STRING_LITERAL) {
+                return Node;
+            }
+        }
+        Object result = null;
+        try {
+            result = Node.solve();
+        } catch (IllegalArgumentException ex) {
+            // report the error when the expression is solved
+        }
+        if (result instanceof Double) {
+            return new Expression(Expression.NUMBER_LITERAL, result.toString(), new Expression[0], null);
+        } else if (result instanceof String) {
+            return new Expression(Expression.STRING_LITERAL, (String) result, new Expression[0], null);
+        }
+        return Node;
+    }
+
+    /**
+     * Parse a list or range collection.  The opening bracket has already been
+     * consumed.
+     * @return Collection expression.
+     * @throws IllegalArgumentException The collection is malformed.
+     */
+    private Expression parseCollection() throws IllegalArgumentException {
+        ArrayList<Expression> elements = new ArrayList<Expression>();
+        if (peek().type == ExpressionLexer.RBRACKET) {
+            advance();
+            return new Expression(Expression.COLLECTION, ExpressionCollections.LIST, new Expression[0], null);
+        }
+        elements.add(parseExpression(0));
+        if (peek().type == ExpressionLexer.RANGE) {
+            // [start..end step increment]
+            advance();
+            elements.add(parseExpression(0));
+            Token token = peek();
+            if (token.type == ExpressionLexer.IDENTIFIER && token.text.equals("step")) {
+                advance();
+                elements.add(parseExpression(0));
+            }
+            expect(ExpressionLexer.RBRACKET, "]");
+            return new Expression(Expression.COLLECTION, ExpressionCollections.RANGE, elements.toArray(new Expression[elements.size()]), null);
+        }
+        // [a,b,c]
+        while (peek().type == ExpressionLexer.COMMA) {
+            advance();
+            elements.add(parseExpression(0));
+        }
+        expect(ExpressionLexer.RBRACKET, "]");
+        return new Expression(Expression.COLLECTION, ExpressionCollections.LIST, elements.toArray(new Expression[elements.size()]), null);
+    }
+
+    /**
+     * Parse the argument list of a function call.  The opening parenthesis 
+     * has already been consumed.
+     * @param Name Function name token.
+     * @return Function call expression.
+     * @throws IllegalArgumentException The function is not registered, or the argument list is malformed.
+     */
+    private Expression parseFunction(Token Name) throws IllegalArgumentException {
+        ExpressionFunction function = ExpressionFunction.get(Name.text);
+        if (function == null) {
+            throw new IllegalArgumentException("Unknown function '" + Name.text + "' at position " + Name.position + ".");
+        }
+        ArrayList<Expression> arguments = new ArrayList<Expression>();
+        if (peek().type != ExpressionLexer.RPAREN) {
+            arguments.add(parseExpression(0));
+            while (peek().type == ExpressionLexer.COMMA) {
+                advance();
+                arguments.add(parseExpression(0));
+            }
+        }
+        expect(ExpressionLexer.RPAREN, ")");
+        function.checkArguments(arguments.size());
+        Expression node = new Expression(Expression.FUNCTION, Name.text, arguments.toArray(new Expression[arguments.size()]), null);
+        if (function.isPure()) {
+            return fold(node);
+        }
+        return node;
+    }
+
+    /**
+     * Consume the current token, which must be of the specified type.
+     * @param Type Expected token type.
+     * @param Text Expected token text, for error reporting.
+     * @throws IllegalArgumentException The current token is not of the expected type.
+     */
+    private void expect(int Type, String Text) throws IllegalArgumentException {
+        Token token = peek();
+        if (token.type != Type) {
+            throw new IllegalArgumentException("Expected '" + Text + "' at position " + token.position + ".");
+        }
+        advance();
+    }
+
+    /**
+     * Parse the complete statement.
+     * @return Root of the expression tree.
+     * @throws IllegalArgumentException The statement is malformed.
+     */
+    Expression parse() throws IllegalArgumentException {
+        if (peek().type == ExpressionLexer.END) {
+            throw new IllegalArgumentException("The expression is empty.");
+        }
+        Expression result = parseExpression(0);
+        Token token = peek();
+        if (token.type != ExpressionLexer.END) {
+            throw new IllegalArgumentException("Unexpected '" + token.text + "' at position " + token.position + ".");
+        }
+        return result;
+    }
+
+    /**
+     * Parse an expression whose operators bind more tightly than the given
+     * binding power.
+     * @param MinBindingPower Minimum binding power.
+     * @return Expression.
+     * @throws IllegalArgumentException The statement is malformed.
+     */
+    private Expression parseExpression(int MinBindingPower) throws IllegalArgumentException {
+        Expression lhs = parsePrefix();
+        while (true) {
+            Token token = peek();
+            if (token.type != ExpressionLexer.OPERATOR) {
+                break;
+            }
+            int bp = getInfixBindingPower(token.text);
+            if (bp == 0 || bp <= MinBindingPower) {
+                break;
+            }
+            advance();
+            Expression rhs = parseExpression(isRightAssociative(token.text) ? bp - 1 : bp);
+            lhs = compound(token.text, new Expression[]{lhs, rhs});
+        }
+        return lhs;
+    }
+
+    /**
+     * Parse a literal, reference, grouping or unary operator expression.
+     * @return Expression.
+     * @throws IllegalArgumentException The statement is malformed.
+     */
+    private Expression parsePrefix() throws IllegalArgumentException {
+        Token token = advance();
+        switch (token.type) {
+            case ExpressionLexer.NUMBER:
+                return new Expression(Expression.NUMBER_LITERAL, token.text, new Expression[0], null);
+            case ExpressionLexer.STRING:
+                return new Expression(Expression.STRING_LITERAL, token.text, new Expression[0], null);
+            case ExpressionLexer.IDENTIFIER:
+                if (peek().type == ExpressionLexer.LPAREN) {
+                    advance();
+                    return parseFunction(token);
+                }
+                return new Expression(Expression.REFERENCE, token.text, new Expression[0], this.context);
+            case ExpressionLexer.LPAREN:
+                Expression group = parseExpression(0);
+                expect(ExpressionLexer.RPAREN, ")");
+                return group;
+            case ExpressionLexer.LBRACKET:
+                return parseCollection();
+            case ExpressionLexer.OPERATOR:
+                if (token.text.equals("-") || token.text.equals("!")) {
+                    Expression operand = parseExpression(PREFIX_BINDING_POWER);
+                    return compound(token.text, new Expression[]{operand});
+                }
+                throw new IllegalArgumentException("Operator '" + token.text + "' at position " + token.position + " is missing its left hand operand.");
+            case ExpressionLexer.END:
+                throw new IllegalArgumentException("The expression ended unexpectedly.");
+            default:
+                throw new IllegalArgumentException("Unexpected '" + token.text + "' at position " + token.position + ".");
+        }
+    }
+
+    /**
+     * Get the current token without consuming it.
+     * @return Current token.
+     */
+    private Token peek() {
+        return this.tokens.get(this.index);
+    }
+
+}
@@ -24,7 +24,11 @@ import java.util.logging.Logger;
 /**
  * Takes a user defined expression string, builds an expression tree to 
  * represent the expression, then attempts to resolve the expression value.
- * Determines dependencies for the expression tree.
+ * Determines dependencies for the expression tree.  Expression trees and 
+ * their compiled forms are obtained from the ExpressionCache, and are shared 
+ * by all solvers with the same statement and context.  The result is cached
+ * along with the modification stamps of the objects it was computed from, and
+ * the expression is solved again only when one of those stamps has advanced.
  * @author Davis Marques
  */
 public class ExpressionSolver implements Serializable {
@@ -32,10 +36,15 @@ public class ExpressionSolver implements Serializable {
     private static final Logger logger = Logger.getLogger(ExpressionSolver.class.getName());
 
     private Expression expressionTree; // expressionTree tree
+    private transient ExpressionEvaluator evaluator; // compiled form of the expression tree
+    private transient DoubleExpression doubleEvaluator; // primitive form of the expression tree, if it is purely numeric
     private IContext context;          // the collection of NamedObjects accessible by this solver
     private Class  resultClass;        // the class of the expressionTree result object
     private Object resultObj;          // the expressionTree result
     private HashSet dependancies;     // SystolicArrayElements that the expressionTree is dependant upon
+    private transient INamed[] sources; // objects along the path of each reference in the expression
+    private transient long[] stamps;    // modification stamps of the sources when the result was computed
+    private transient long bindingVersion; // reference binding version when the result was computed
     
     //--------------------------------------------------------------------------
 
@@ -57,10 +66,14 @@ public class ExpressionSolver implements Serializable {
      * @param Context The collection of NamedObjects that are accessible to this solver.
      */
     public ExpressionSolver(String MyExpression, IContext Context) {
-        // remove all whitespace from the expression
-        MyExpression = MyExpression.replace(" ","");
-        // build the expression tree
-        expressionTree = buildExpressionTree(MyExpression, Context);
+        // get the expression tree and its compiled forms from the shared cache
+        if (MyExpression.trim().length() > 0 && Context != null) {
+            ExpressionCache.Entry entry = ExpressionCache.get(MyExpression, Context);
+            this.expressionTree = entry.expression;
+            this.evaluator = entry.evaluator;
+            this.doubleEvaluator = entry.doubleEvaluator;
+            this.resultClass = entry.getResultClass();
+        }
         // build the list of unique dependancies for the expression tree
         this.dependancies = new HashSet();
         Iterator iter = this.expressionTree.getDependancies().iterator();
@@ -72,20 +85,25 @@ public class ExpressionSolver implements Serializable {
     //--------------------------------------------------------------------------
 
     /**
-     * Build an expression tree from the user specified statement.
-     * @param Statement A user specifed statement.
-     * @param Context The NamedObjects that are accessible to this solver.
-     * @return An expression tree.
+     * Compile the expression tree into a chain of evaluators.  Solving a 
+     * compiled expression does not reinterpret the tree.  Compilation happens 
+     * on the first solve if it has not been done explicitly, and again after 
+     * deserialization since the compiled form is not persisted.
+     * @throws IllegalArgumentException The expression tree could not be compiled.
      */
-    private Expression buildExpressionTree(String Statement, IContext Context) {
-        // init
-        Expression result = null;
-        // build expression tree
-        if (Statement.length() > 0 && Context != null) {
-            result = new Expression(Statement, Context);
+    public void compile() throws IllegalArgumentException {
+        if (this.expressionTree != null) {
+            this.evaluator = ExpressionCompiler.compile(this.expressionTree);
+            this.doubleEvaluator = ExpressionCompiler.compileDouble(this.expressionTree);
         }
-        // return result
-        return result;
+    }
+
+    /**
+     * Get the expression tree.
+     * @return Expression tree, or null if the solver has not been initialized.
+     */
+    Expression getExpression() {
+        return this.expressionTree;
     }
 
     /**
@@ -102,10 +120,8 @@ public class ExpressionSolver implements Serializable {
      * @return The expressionTree result object.
      */
     public Object getResult() {
-        // init
-        Object result = null;
-        // if the result has not been set
-        if (this.resultObj == null) {
+        // if the result has not been set, or is out of date
+        if (this.resultObj == null || !this.isCurrent()) {
             this.solve();
         }
         // return result
@@ -113,19 +129,99 @@ public class ExpressionSolver implements Serializable {
     }
     
     /**
-     * Return the class corresponding with the expressionTree result type.
-     * @return The class corresponding with the expressionTree result type.
+     * Return the class corresponding with the expressionTree result type.  
+     * The class is inferred from the expression tree when the solver is 
+     * created, without solving the expression.
+     * @return The class corresponding with the expressionTree result type, or null if it can not be determined statically.
      */
     public Class getResultClass() {
        return this.resultClass; 
     }
 
     /**
-     * Executes a post-order traversal of the expression tree to solve the 
-     * expression and set the result object.
+     * Determine if the cached result is current.  The result is current if no
+     * reference in the expression has been rebound, and none of the objects 
+     * along the reference paths has changed, since the result was computed.
+     * @return True if the cached result is current, false otherwise.
+     */
+    public boolean isCurrent() {
+        if (this.stamps == null || this.bindingVersion != ReferenceSlot.getBindingVersion()) {
+            return false;
+        }
+        for (int i=0;i<this.sources.length;i++) {
+            if (this.sources[i].getModificationStamp() != this.stamps[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determine if the expression is purely numeric, and can therefore be 
+     * solved as a primitive double value without allocation.
+     * @return True if the expression is purely numeric, false otherwise.
+     */
+    public boolean isNumeric() {
+        if (this.evaluator == null) {
+            this.compile();
+        }
+        return this.doubleEvaluator != null;
+    }
+
+    /**
+     * Evaluates the compiled expression and sets the result object.  The 
+     * modification stamps of the referenced objects are recorded before 
+     * evaluation, so that a change made during evaluation marks the result 
+     * as out of date.
      */
     public void solve() {
-        this.resultObj = this.expressionTree.solve();
+        if (this.evaluator == null) {
+            this.compile();
+        }
+        if (this.evaluator != null) {
+            // the referenced objects change only if a reference has been rebound
+            long version = ReferenceSlot.getBindingVersion();
+            if (this.sources == null || this.bindingVersion != version) {
+                HashSet<INamed> referenced = new HashSet<INamed>();
+                this.expressionTree.getReferencedObjects(referenced);
+                this.sources = referenced.toArray(new INamed[referenced.size()]);
+            }
+            long[] current = new long[this.sources.length];
+            for (int i=0;i<this.sources.length;i++) {
+                current[i] = this.sources[i].getModificationStamp();
+            }
+            this.stamps = null;
+            this.resultObj = this.evaluator.evaluate();
+            this.stamps = current;
+            this.bindingVersion = version;
+        }
+    }
+
+    /**
+     * Replace the expression tree with a structurally identical tree and its
+     * compiled form.  Used by ExpressionOptimizer to substitute a tree whose 
+     * nodes are shared with other solvers.  The primitive form is rebuilt 
+     * from the new tree, so that both forms evaluate the same tree.
+     * @param Tree Expression tree.
+     * @param Evaluator Compiled form of the expression tree.
+     */
+    void setExpression(Expression Tree, ExpressionEvaluator Evaluator) {
+        this.expressionTree = Tree;
+        this.evaluator = Evaluator;
+        this.doubleEvaluator = ExpressionCompiler.compileDouble(Tree);
+    }
+
+    /**
+     * Solve a purely numeric expression as a primitive double value.  The 
+     * result object is not updated.
+     * @return Result value.
+     * @throws IllegalStateException The expression is not purely numeric.
+     */
+    public double solveDouble() throws IllegalStateException {
+        if (!this.isNumeric()) {
+            throw new IllegalStateException("The expression is not purely numeric.");
+        }
+        return this.doubleEvaluator.evaluate();
     }
 
 } 
@@ -0,0 +1,254 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.utils.PathResolver;
+import java.lang.reflect.Method;
+
+/**
+ * Static result type inference for expression trees.  The result class of a
+ * tree is determined without evaluating it: literals have a fixed class,
+ * references take the class of the named object or the declared type of the
+ * named bean property, and operators and functions derive their class from
+ * their operands.  Where the class can not be determined, inference yields
+ * null and the check is left until the expression is solved.  Operators that
+ * can never be applied to their operand classes are rejected.
+ * @author Davis Marques
+ */
+final class ExpressionTypes {
+
+    /**
+     * ExpressionTypes constructor.
+     */
+    private ExpressionTypes() {
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Infer the result class of an expression tree.
+     * @param Node Root of the expression tree.
+     * @return Result class, or null if the class can not be determined statically.
+     * @throws IllegalArgumentException A reference can not be resolved, or an operator can not be applied to its operands.
+     */
+    static Class infer(Expression Node) throws IllegalArgumentException {
+        Expression[] parameters = Node.getParameters();
+        switch (Node.getType()) {
+            case Expression.NUMBER_LITERAL:
+                return Double.class;
+            case Expression.STRING_LITERAL:
+                return String.class;
+            case Expression.COLLECTION:
+                for (int i=0;i<parameters.length;i++) {
+                    Class element = infer(parameters[i]);
+                    if (element != null && !isNumber(element)) {
+                        throw new IllegalArgumentException("Collection elements must be numbers, but '" + element.getSimpleName() + "' was found.");
+                    }
+                }
+                return double[].class;
+            case Expression.REFERENCE:
+                return inferReference(Node.getContext(), Node.getTerm());
+            case Expression.FUNCTION:
+                ExpressionFunction function = ExpressionFunction.get(Node.getTerm());
+                if (function == null) {
+                    throw new IllegalArgumentException("Unknown function '" + Node.getTerm() + "'.");
+                }
+                Class[] arguments = new Class[parameters.length];
+                for (int i=0;i<parameters.length;i++) {
+                    arguments[i] = infer(parameters[i]);
+                }
+                return function.getResultClass(arguments);
+            case Expression.COMPOUND:
+                if (parameters.length == 1) {
+                    return inferUnary(Node.getTerm(), infer(parameters[0]));
+                }
+                return inferBinary(Node.getTerm(), infer(parameters[0]), infer(parameters[1]));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Infer the result class of a binary operator.
+     * @param Operator Operator.
+     * @param Lhs Left hand operand class, or null if unknown.
+     * @param Rhs Right hand operand class, or null if unknown.
+     * @return Result class, or null if unknown.
+     * @throws IllegalArgumentException The operator can not be applied to the operand classes.
+     */
+    private static Class inferBinary(String Operator, Class Lhs, Class Rhs) throws IllegalArgumentException {
+        if (Operator.equals("&&") || Operator.equals("||")) {
+            check(Operator, Lhs, Boolean.class);
+            check(Operator, Rhs, Boolean.class);
+            return Boolean.class;
+        }
+        if (Lhs == double[].class || Rhs == double[].class) {
+            check(Operator, Lhs, double[].class);
+            check(Operator, Rhs, double[].class);
+            return double[].class;
+        }
+        if (Operator.equals("+") && (Lhs == String.class || Rhs == String.class)) {
+            return String.class;
+        }
+        if (Lhs == null || Rhs == null) {
+            return null;
+        }
+        check(Operator, Lhs, Number.class);
+        check(Operator, Rhs, Number.class);
+        if (!isNumber(Lhs) || !isNumber(Rhs)) {
+            // an operand is declared as a supertype of Number
+            return null;
+        }
+        if (Lhs == Integer.class && Rhs == Integer.class && !Operator.equals("^")) {
+            return Integer.class;
+        }
+        return Double.class;
+    }
+
+    /**
+     * Infer the class of a reference of the form objectname[.objectname...][.propertyname].
+     * Named objects are looked up in context; property classes are taken from
+     * the return type of the bean property read method.  The reference is
+     * parsed, and the read method found, through the caches of PathResolver.
+     * @param Context Context in which the reference is resolved.
+     * @param Query Reference.
+     * @return Result class.
+     * @throws IllegalArgumentException The reference can not be resolved.
+     */
+    private static Class inferReference(IContext Context, String Query) throws IllegalArgumentException {
+        String[] path = PathResolver.parse(Query);
+        IContext current = Context;
+        for (int i=0;i<path.length;i++) {
+            Object object = current.lookup(path[i]);
+            if (i == path.length - 1) {
+                return object.getClass();
+            }
+            if (i == path.length - 2) {
+                Method getter = PathResolver.getReadMethod(object.getClass(), path[i + 1]);
+                if (getter == null) {
+                    throw new IllegalArgumentException("Named property could not be resolved.");
+                }
+                return wrap(getter.getReturnType());
+            }
+            if (!(object instanceof IContext)) {
+                throw new IllegalArgumentException("Object " + path[i] + " does not support IContext.  Subparts of this object can not be resolved.");
+            }
+            current = (IContext) object;
+        }
+        return null;
+    }
+
+    /**
+     * Infer the result class of a unary operator.
+     * @param Operator Operator.
+     * @param Operand Operand class, or null if unknown.
+     * @return Result class, or null if unknown.
+     * @throws IllegalArgumentException The operator can not be applied to the operand class.
+     */
+    private static Class inferUnary(String Operator, Class Operand) throws IllegalArgumentException {
+        if (Operator.equals("!")) {
+            check(Operator, Operand, Boolean.class);
+            return Boolean.class;
+        }
+        if (Operand == null) {
+            return null;
+        }
+        if (Operand == double[].class || Operand == Integer.class) {
+            return Operand;
+        }
+        check(Operator, Operand, Number.class);
+        return isNumber(Operand) ? Double.class : null;
+    }
+
+    /**
+     * Check that an operand class is acceptable to an operator.
+     * @param Operator Operator.
+     * @param Operand Operand class, or null if unknown.
+     * @param Required Required class.  Numbers are also accepted where a collection is required.
+     * @throws IllegalArgumentException The operand class is not acceptable.
+     */
+    private static void check(String Operator, Class Operand, Class Required) throws IllegalArgumentException {
+        // an operand declared as a supertype of the required class may hold an acceptable value
+        if (Operand == null || Required.isAssignableFrom(Operand) || Operand.isAssignableFrom(Required)) {
+            return;
+        }
+        if (Required == double[].class && isNumber(Operand)) {
+            return;
+        }
+        throw new IllegalArgumentException("Operator '" + Operator + "' can not be applied to a value of type '" + Operand.getSimpleName() + "'.");
+    }
+
+    /**
+     * Determine if a value of one class may be assigned to a parameter of
+     * another.  Primitive classes are treated as their wrappers.  Any number
+     * may be assigned to a numeric parameter, since numeric inputs are
+     * converted to the parameter type.  An unknown result class, or a result
+     * class that is a supertype of the parameter class, is assumed to be 
+     * assignable.
+     * @param Result Result class, or null if unknown.
+     * @param Target Parameter class.
+     * @return True if the result may be assigned to the parameter, false otherwise.
+     */
+    static boolean isAssignable(Class Result, Class Target) {
+        if (Result == null || Target == null) {
+            return true;
+        }
+        Class target = wrap(Target);
+        Class result = wrap(Result);
+        if (target.isAssignableFrom(result) || result.isAssignableFrom(target)) {
+            return true;
+        }
+        return isNumber(result) && isNumber(target);
+    }
+
+    /**
+     * Determine if a class is numeric.
+     * @param Clazz Class.
+     * @return True if the class, or its wrapper, is a Number.
+     */
+    static boolean isNumber(Class Clazz) {
+        return Number.class.isAssignableFrom(wrap(Clazz));
+    }
+
+    /**
+     * Get the wrapper class for a primitive class.
+     * @param Clazz Class.
+     * @return Wrapper class, or the class itself if it is not primitive.
+     */
+    static Class wrap(Class Clazz) {
+        if (!Clazz.isPrimitive()) {
+            return Clazz;
+        } else if (Clazz == Double.TYPE) {
+            return Double.class;
+        } else if (Clazz == Integer.TYPE) {
+            return Integer.class;
+        } else if (Clazz == Boolean.TYPE) {
+            return Boolean.class;
+        } else if (Clazz == Long.TYPE) {
+            return Long.class;
+        } else if (Clazz == Float.TYPE) {
+            return Float.class;
+        } else if (Clazz == Short.TYPE) {
+            return Short.class;
+        } else if (Clazz == Byte.TYPE) {
+            return Byte.class;
+        } else if (Clazz == Character.TYPE) {
+            return Character.class;
+        }
+        return Void.class;
+    }
+
+}
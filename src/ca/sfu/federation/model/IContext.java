@@ -16,6 +16,7 @@
 
 package ca.sfu.federation.model;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -37,13 +38,13 @@ public interface IContext extends INamed {
 
     /**
      * Get a list of elements in the context.
-     * @return 
+     * @return Elements.  The list may be a read-only view of the context.
      */
     public List<INamed> getElements();
     
     /**
      * Get a map of elements in the context.
-     * @return Name, object element map.
+     * @return Name, object element map.  The map may be a read-only view of the context.
      */
     public Map<String,INamed> getElementMap();
 
@@ -80,6 +81,26 @@ public interface IContext extends INamed {
      */
     public Object lookup(String Query) throws IllegalArgumentException;
 
+    /**
+     * Update a changed element and the elements in the Context that depend on
+     * it, in topological order.  Elements that are not affected by the change
+     * are not updated.
+     *
+     * @param Changed The changed element.
+     * @return True if the affected elements updated successfully, false otherwise.
+     */
+    public boolean propagate(INamed Changed);
+
+    /**
+     * Update a set of changed elements and the elements in the Context that 
+     * depend on them, in topological order.  Each affected element is updated
+     * once.
+     *
+     * @param Changed The changed elements.
+     * @return True if the affected elements updated successfully, false otherwise.
+     */
+    public boolean propagate(Collection<INamed> Changed);
+
     /**
      * Remove a NamedObject from the Context.
      *
@@ -48,6 +48,23 @@ public interface INamed {
      * @return Image.
      */
     public abstract ImageIcon getIcon();
+
+    /**
+     * Get the element id.  Ids are positive integers, unique among the objects
+     * of a session, and are assigned when the object is registered in a 
+     * context.  Unlike the name, the id does not change when the object is
+     * renamed.  Ids are not serialized.
+     * @return Element id.
+     */
+    public int getId();
+
+    /**
+     * Get the modification stamp.  The stamp is drawn from a model wide 
+     * monotonically increasing sequence, and is advanced each time the state 
+     * of the object changes.
+     * @return Modification stamp.
+     */
+    public long getModificationStamp();
     
     /*
      * Get the name
@@ -18,6 +18,7 @@ package ca.sfu.federation.model;
 
 import ca.sfu.federation.model.exception.ReturnTypeMismatchException;
 import java.io.Serializable;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -36,7 +37,7 @@ public class Input implements Serializable {
     private IContext context;        // the collection of objects available to this Input
     
     private String userInput;        // user input value
-    private ExpressionSolver solver; // expression solver
+    private volatile ExpressionSolver solver; // expression solver, replaced while a background update may be solving it
 
     //--------------------------------------------------------------------------
 
@@ -92,15 +93,31 @@ public class Input implements Serializable {
        return this.name; 
     }
 
+    /**
+     * Get the result of a purely numeric input as a primitive double value.
+     * @return The result value.
+     * @throws IllegalStateException The input expression is not purely numeric.
+     */
+    public double getDoubleResult() throws IllegalStateException {
+        return this.solver.solveDouble();
+    }
+
     /**
      * Get the result object.
      * @return The result object.
      */
     public Object getResult() {
-        this.solver.solve();
         return this.solver.getResult();
     }
     
+    /**
+     * Get the expression solver.
+     * @return Expression solver.
+     */
+    ExpressionSolver getSolver() {
+        return this.solver;
+    }
+
     /**
      * Get the user defined input value.
      * @return The user defined input value.
@@ -109,6 +126,14 @@ public class Input implements Serializable {
         return this.userInput;
     }
 
+    /**
+     * Determine if the input expression is purely numeric.
+     * @return True if the input expression is purely numeric, false otherwise.
+     */
+    public boolean isNumeric() {
+        return this.solver.isNumeric();
+    }
+
     /**
      * If the Input has been provided with the required User Input value, then it is
      * primed and ready for use.
@@ -122,22 +147,98 @@ public class Input implements Serializable {
     }
     
     /**
-     * Set the user defined input value.
+     * Set the user defined input value.  The result class of the expression 
+     * is checked against the input class without solving the expression.  The
+     * input is left unchanged if the expression is rejected.
      * @param UserInput The user defined input value.
-     * @throws ReturnTypeMismatchException The user input string resolves to a value inputClass that does not correspond with the required value inputClass.
+     * @throws IllegalArgumentException The user input is malformed, or resolves to a class that does not correspond with the required input class.
      */
     public void setUserInput(String UserInput) throws IllegalArgumentException {
-        // set the user input value
-        this.userInput = UserInput;
-        // create an expression solver for the user input, solve the expression
+        this.setUserInput(UserInput, null);
+    }
+
+    /**
+     * Set the user input value for an Input of an element.  The value is 
+     * rejected if the element would then depend on itself.
+     * @param UserInput The user defined input value.
+     * @param Owner The element to which the Input belongs, or null.
+     * @throws IllegalArgumentException The user input is malformed, resolves to a class that does not correspond with the required input class, or forms a dependency cycle.
+     */
+    void setUserInput(String UserInput, INamed Owner) throws IllegalArgumentException {
+        // create an expression solver for the user input
         ExpressionSolver es = new ExpressionSolver(UserInput, this.context);
-        es.solve();
-        // if the expression result inputClass corresponds with the required result 
-        // inputClass, then assign the solver to this property, otherwise throw an error
-        if (es.getResultClass() != this.inputClass) {
-            this.solver = es;
-        } else {
-            throw new IllegalArgumentException("The expression does not resolve to the class required by the Update method.");
+        // if the expression result class corresponds with the required input 
+        // class, then assign the solver to this property, otherwise throw an error
+        checkResultClass(es.getResultClass());
+        DependencyGraph graph = Owner == null ? null : DependencyGraph.getGraph(Owner);
+        if (graph != null) {
+            checkCycle(graph, Owner, es.getExpression());
+        }
+        this.userInput = UserInput;
+        this.solver = es;
+        // the dependancies of the element have changed
+        if (graph != null) {
+            graph.update(Owner);
+        }
+    }
+
+    /**
+     * Check that a statement is well formed and that its result class 
+     * corresponds with the input class.  The statement is parsed but is not
+     * compiled, cached or solved, so the check is cheap enough to be made as
+     * the user types.
+     * @param UserInput The user defined input value.
+     * @throws IllegalArgumentException The user input is malformed, or resolves to a class that does not correspond with the required input class.
+     */
+    public void validate(String UserInput) throws IllegalArgumentException {
+        this.validate(UserInput, null);
+    }
+
+    /**
+     * Check that a statement is well formed, that its result class 
+     * corresponds with the input class, and that it would not make an 
+     * element depend on itself.
+     * @param UserInput The user defined input value.
+     * @param Owner The element to which the Input belongs, or null.
+     * @throws IllegalArgumentException The user input is malformed, resolves to a class that does not correspond with the required input class, or forms a dependency cycle.
+     */
+    void validate(String UserInput, INamed Owner) throws IllegalArgumentException {
+        Expression expression = new Expression(UserInput, this.context);
+        checkResultClass(ExpressionTypes.infer(expression));
+        DependencyGraph graph = Owner == null ? null : DependencyGraph.getGraph(Owner);
+        if (graph != null) {
+            checkCycle(graph, Owner, expression);
+        }
+    }
+
+    /**
+     * Check that an expression would not make an element depend on itself.
+     * @param Graph Dependency graph of the element.
+     * @param Owner Element.
+     * @param Expr Expression.
+     * @throws IllegalArgumentException The expression forms a dependency cycle.
+     */
+    private static void checkCycle(DependencyGraph Graph, INamed Owner, Expression Expr) throws IllegalArgumentException {
+        List<INamed> cycle = Graph.getCycle(Owner, Expr);
+        if (cycle != null) {
+            StringBuilder sb = new StringBuilder();
+            for (int i=0;i<cycle.size();i++) {
+                sb.append(cycle.get(i).getName());
+                sb.append(" -> ");
+            }
+            sb.append(Owner.getName());
+            throw new IllegalArgumentException("The expression forms a dependency cycle: " + sb.toString() + ".");
+        }
+    }
+
+    /**
+     * Check that an expression result class corresponds with the input class.
+     * @param ResultClass Expression result class, or null if unknown.
+     * @throws IllegalArgumentException The result class does not correspond with the input class.
+     */
+    private void checkResultClass(Class ResultClass) throws IllegalArgumentException {
+        if (!ExpressionTypes.isAssignable(ResultClass, this.inputClass)) {
+            throw new IllegalArgumentException("The expression resolves to " + ResultClass.getSimpleName() + ", but the Update method requires " + this.inputClass.getSimpleName() + ".");
         }
     }
 
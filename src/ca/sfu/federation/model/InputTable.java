@@ -84,17 +84,26 @@ public class InputTable extends Observable implements Serializable {
     /**
      * Generate inputs for the UpdateMethod.
      * TODO: need to add a description field in the update annotation to describe each method parameter
-     * @param UpdateMethod The update method.
+     * @param MyMethod The update method.
      * @throws ParameterCountMismatchException The number of parameters in the Update annotation does not correspond with the number of parameters in the Update method signature.
      */
-    public void generateInputs(Method UpdateMethod) throws ParameterCountMismatchException {
+    public void generateInputs(Method MyMethod) throws ParameterCountMismatchException {
         // clear the current inputs
         this.inputs.clear();
-        // get method properties
-        Update updateAnnotation = UpdateMethod.getAnnotation(Update.class);
-        this.description = updateAnnotation.description();
-        String[] param = updateAnnotation.parameter();
-        Class[] type = UpdateMethod.getParameterTypes();
+        // get method properties, from the registry if the method is registered
+        String[] param;
+        Class[] type;
+        UpdateMethod method = UpdateMethodRegistry.getUpdateMethod(MyMethod.getDeclaringClass(), MyMethod.getName());
+        if (method != null && method.getMethod().equals(MyMethod)) {
+            this.description = method.getDescription();
+            param = method.getParameterNames();
+            type = method.getParameterTypes();
+        } else {
+            Update updateAnnotation = MyMethod.getAnnotation(Update.class);
+            this.description = updateAnnotation.description();
+            param = updateAnnotation.parameter();
+            type = MyMethod.getParameterTypes();
+        }
         // if the number of parameters in the method signature matches the number of parameters in the annotation
         if (param.length == type.length) {
             // for each parameter, add an input to the table
@@ -234,26 +243,6 @@ public class InputTable extends Observable implements Serializable {
         return null;
     }
     
-    /**
-     * Get Input values in order, cast to their proper types.
-     * @return Array of property values.
-     */
-    public Object[] getInputValues() {
-        // init
-        ArrayList values = new ArrayList();
-        // put Input result values in vector
-        Iterator e = this.inputs.iterator();
-        while (e.hasNext()) {
-            Input myInput = (Input) e.next();
-            values.add(myInput.getResult());
-        }
-        // copy result values into an array
-        Object[] result = new Object[values.size()];
-        values.addAll(Arrays.asList(result));
-        // return result
-        return result;
-    }
-    
     /**
      * Get Input classes.
      * @return Array of Input classes.
@@ -316,6 +305,14 @@ public class InputTable extends Observable implements Serializable {
         return inputIsPrimed;
     }
 
+    /**
+     * Get the object to which the Inputs belong.
+     * @return Parent object.
+     */
+    public INamed getParent() {
+        return this.parent;
+    }
+
     public void setContext(INamed Named) {
         this.parent = Named;
     }
@@ -324,19 +321,28 @@ public class InputTable extends Observable implements Serializable {
      * Set the Input user value.
      * @param InputName The Input name.
      * @param UserInputValue The user specified input value.
+     * @throws IllegalArgumentException The value is malformed, or does not resolve to the class required by the Input.
      */
-    public void setInput(String InputName, String UserInputValue) {
+    public void setInput(String InputName, String UserInputValue) throws IllegalArgumentException {
         LinkedHashMap index = this.getInputIndex();
         Input myInput = (Input) index.get(InputName);
-        try {
-            myInput.setUserInput(UserInputValue);
-        } catch (Exception ex) {
-            String stack = ExceptionUtils.getFullStackTrace(ex);
-            logger.log(Level.WARNING,"{0}",stack);
-        }
+        // the input is unchanged if the value is rejected
+        myInput.setUserInput(UserInputValue, this.parent);
         // notify parent object of change
         this.setChanged();
         this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_INPUT_CHANGE));
     }
     
+    /**
+     * Check a user specified input value without assigning it.
+     * @param InputName The Input name.
+     * @param UserInputValue The user specified input value.
+     * @throws IllegalArgumentException The value is malformed, or does not resolve to the class required by the Input.
+     */
+    public void validateInput(String InputName, String UserInputValue) throws IllegalArgumentException {
+        LinkedHashMap index = this.getInputIndex();
+        Input myInput = (Input) index.get(InputName);
+        myInput.validate(UserInputValue, this.parent);
+    }
+    
 } 
\ No newline at end of file
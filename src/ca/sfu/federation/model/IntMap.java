@@ -0,0 +1,180 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import java.util.Arrays;
+
+/**
+ * A map from positive int keys to non-negative int values, held in a single
+ * open addressed table with linear probing.  Keys and values are stored as
+ * primitives, so the map allocates no entry or boxed objects, and removal 
+ * shifts later entries back rather than leaving markers, so lookups stay
+ * short as elements come and go.  Used to find the graph node of an element
+ * from its element id.
+ * @author Davis Marques
+ */
+final class IntMap {
+
+    private static final int FREE = 0;     // key of an empty slot
+
+    private int[] keys;                     // key in each slot, or FREE
+    private int[] values;                   // value in each slot
+    private int size;                       // number of entries
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * IntMap constructor.
+     */
+    IntMap() {
+        this.keys = new int[16];
+        this.values = new int[16];
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Remove all entries.
+     */
+    void clear() {
+        Arrays.fill(this.keys, FREE);
+        this.size = 0;
+    }
+
+    /**
+     * Determine if the map has an entry for a key.
+     * @param Key Key.
+     * @return True if the map has an entry for the key, false otherwise.
+     */
+    boolean containsKey(int Key) {
+        return this.get(Key) >= 0;
+    }
+
+    /**
+     * Get the value for a key.
+     * @param Key Key.
+     * @return Value, or -1 if the map has no entry for the key.
+     */
+    int get(int Key) {
+        int mask = this.keys.length - 1;
+        int i = hash(Key) & mask;
+        while (this.keys[i] != FREE) {
+            if (this.keys[i] == Key) {
+                return this.values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Spread the bits of a key, since element ids are sequential.
+     */
+    private static int hash(int Key) {
+        int h = Key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Set the value for a key.
+     * @param Key Key.  Must be positive.
+     * @param Value Value.  Must not be negative.
+     * @throws IllegalArgumentException The key is not positive, or the value is negative.
+     */
+    void put(int Key, int Value) throws IllegalArgumentException {
+        if (Key <= FREE || Value < 0) {
+            throw new IllegalArgumentException("Key must be positive and value must not be negative.");
+        }
+        if ((this.size + 1) * 2 > this.keys.length) {
+            this.resize(this.keys.length * 2);
+        }
+        int mask = this.keys.length - 1;
+        int i = hash(Key) & mask;
+        while (this.keys[i] != FREE) {
+            if (this.keys[i] == Key) {
+                this.values[i] = Value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        this.keys[i] = Key;
+        this.values[i] = Value;
+        this.size++;
+    }
+
+    /**
+     * Remove the entry for a key.
+     * @param Key Key.
+     * @return Value of the removed entry, or -1 if the map had no entry for the key.
+     */
+    int remove(int Key) {
+        int mask = this.keys.length - 1;
+        int i = hash(Key) & mask;
+        while (this.keys[i] != Key) {
+            if (this.keys[i] == FREE) {
+                return -1;
+            }
+            i = (i + 1) & mask;
+        }
+        int result = this.values[i];
+        // move back any later entries of the probe run that belong before the gap
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (this.keys[j] != FREE) {
+            int home = hash(this.keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                this.keys[gap] = this.keys[j];
+                this.values[gap] = this.values[j];
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+        this.keys[gap] = FREE;
+        this.size--;
+        return result;
+    }
+
+    /**
+     * Rehash the entries into a table of the given capacity.
+     * @param Capacity Capacity.  Must be a power of two.
+     */
+    private void resize(int Capacity) {
+        int[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        this.keys = new int[Capacity];
+        this.values = new int[Capacity];
+        int mask = Capacity - 1;
+        for (int k=0;k<oldKeys.length;k++) {
+            if (oldKeys[k] != FREE) {
+                int i = hash(oldKeys[k]) & mask;
+                while (this.keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                this.keys[i] = oldKeys[k];
+                this.values[i] = oldValues[k];
+            }
+        }
+    }
+
+    /**
+     * Get the number of entries.
+     * @return Number of entries.
+     */
+    int size() {
+        return this.size;
+    }
+
+}
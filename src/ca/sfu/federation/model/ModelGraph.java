@@ -0,0 +1,193 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.utils.INamedUtils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A dependency graph spanning every context of a model.  The nodes of the
+ * graph are the elements of all nested Scenarios and Assemblies that are not
+ * themselves contexts, so that elements in different contexts are ordered
+ * and scheduled together rather than a context being treated as a single
+ * opaque unit.  A contextual element of a Scenario is the same node as the
+ * element in its own context.  Edges are resolved to the element named by
+ * each reference: a reference through a context, as in assembly.point.x,
+ * depends on the named point only, and a reference to a context as a whole
+ * depends on every element in that context.  Elements are also indexed by
+ * canonical name.
+ * @author Davis Marques
+ */
+public class ModelGraph extends DependencyGraph {
+
+    private ArrayList<INamed> elements = new ArrayList<INamed>();       // elements of the model
+    private HashMap<String,INamed> names = new HashMap<String,INamed>(); // element for each canonical name
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * ModelGraph constructor.
+     * @param Root Root context of the model.
+     */
+    public ModelGraph(IContext Root) {
+        collect(Root, this.elements, new IdentityHashMap<Object,Object>());
+        this.index();
+        this.addAll(this.elements);
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Collect the elements of a context and its subcontexts that are not
+     * themselves contexts.
+     * @param Context Context.
+     * @param Elements List to which the elements are added.
+     * @param Visited Contexts and elements that have already been visited.
+     */
+    static void collect(IContext Context, List<INamed> Elements, Map<Object,Object> Visited) {
+        Iterator<INamed> iter = Context.getElements().iterator();
+        while (iter.hasNext()) {
+            INamed named = iter.next();
+            if (Visited.containsKey(named)) {
+                continue;
+            }
+            Visited.put(named, named);
+            if (named instanceof IContext) {
+                collect((IContext) named, Elements, Visited);
+            } else if (named instanceof IGraphable) {
+                Elements.add(named);
+            }
+        }
+    }
+
+    /**
+     * Get the element with the given canonical name.
+     * @param CanonicalName Canonical name.
+     * @return Element, or null if the model has no element of that name.
+     */
+    public synchronized INamed get(String CanonicalName) {
+        INamed named = this.names.get(CanonicalName);
+        if (named != null && CanonicalName.equals(INamedUtils.getCanonicalName(named))) {
+            return named;
+        }
+        // an element has been renamed since the index was built
+        this.index();
+        return this.names.get(CanonicalName);
+    }
+
+    /**
+     * Get the elements on which an element depends.  References are resolved
+     * to the element they name, rather than to the first named object along
+     * the reference path.
+     * @param Named Element.
+     * @return Elements on which the element depends.
+     */
+    protected Collection getDependancies(INamed Named) {
+        if (!(Named instanceof Component) || ((Component) Named).getInputTable() == null) {
+            return super.getDependancies(Named);
+        }
+        // find the objects named along each reference path
+        HashSet<INamed> referenced = new HashSet<INamed>();
+        Input[] inputs = ((Component) Named).getInputTable().getInputs();
+        for (int i=0;i<inputs.length;i++) {
+            ExpressionSolver solver = inputs[i].getSolver();
+            if (solver != null && solver.getExpression() != null) {
+                try {
+                    solver.getExpression().getReferencedObjects(referenced);
+                } catch (IllegalArgumentException ex) {
+                    // unresolved references are reported when the input is solved
+                }
+            }
+        }
+        return resolve(referenced);
+    }
+
+    /**
+     * Get the elements on which an expression depends.  References are 
+     * resolved in the same way as the references of element inputs.
+     * @param Expr Expression.
+     * @return Elements on which the expression depends.
+     * @throws IllegalArgumentException A reference in the expression can not be resolved.
+     */
+    protected Collection getDependancies(Expression Expr) throws IllegalArgumentException {
+        HashSet<INamed> referenced = new HashSet<INamed>();
+        Expr.getReferencedObjects(referenced);
+        return resolve(referenced);
+    }
+
+    /**
+     * Resolve the objects named along reference paths to the elements of the
+     * graph on which they depend.  A context is a dependancy only if no 
+     * element within it is named, in which case all of its elements are.
+     * @param Referenced Objects named along reference paths.
+     * @return Elements.
+     */
+    private static List<INamed> resolve(Set<INamed> Referenced) {
+        ArrayList<INamed> result = new ArrayList<INamed>();
+        Iterator<INamed> iter = Referenced.iterator();
+        while (iter.hasNext()) {
+            INamed named = iter.next();
+            if (!(named instanceof IContext)) {
+                result.add(named);
+            } else if (!isParentOfAny((IContext) named, Referenced)) {
+                collect((IContext) named, result, new IdentityHashMap<Object,Object>());
+            }
+        }
+        // return result
+        return result;
+    }
+
+    /**
+     * Index the elements by canonical name.
+     */
+    private void index() {
+        this.names.clear();
+        Iterator<INamed> iter = this.elements.iterator();
+        while (iter.hasNext()) {
+            INamed named = iter.next();
+            this.names.put(INamedUtils.getCanonicalName(named), named);
+        }
+    }
+
+    /**
+     * Determine if a context is a parent of any of a set of objects.
+     * @param Context Context.
+     * @param Objects Objects.
+     * @return True if the context contains one of the objects, directly or indirectly.
+     */
+    private static boolean isParentOfAny(IContext Context, Set<INamed> Objects) {
+        Iterator<INamed> iter = Objects.iterator();
+        while (iter.hasNext()) {
+            IContext parent = iter.next().getContext();
+            while (parent != null) {
+                if (parent == Context) {
+                    return true;
+                }
+                parent = parent.getContext();
+            }
+        }
+        return false;
+    }
+
+}
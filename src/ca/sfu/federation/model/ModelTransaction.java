@@ -0,0 +1,180 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.utils.IContextUtils;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of edits to a model.  While a transaction is open on a model,
+ * input edits are validated as they are made, but the edited elements are
+ * not updated and their contexts do not fire change events.  Elements may be
+ * added and removed as usual.  When the transaction is committed, the edited
+ * elements and the elements that depend on them are updated once, in
+ * topological order, and the model fires a single change event.
+ * <p>
+ * A transaction applies to the outermost context of the context on which it
+ * is opened, so edits made anywhere in the model join the same transaction.
+ * Transactions may be nested; the edits are propagated when the outermost
+ * transaction is committed.
+ * <pre>
+ * ModelTransaction tx = ModelTransaction.begin(model);
+ * try {
+ *     ...
+ * } finally {
+ *     tx.commit();
+ * }
+ * </pre>
+ * @author Davis Marques
+ */
+public final class ModelTransaction {
+
+    private static final Map<IContext,ModelTransaction> open = new IdentityHashMap<IContext,ModelTransaction>(); // open transaction for each root context
+
+    private final IContext root;                                    // root context of the model
+    private final BitSet edited = new BitSet();                     // ids of the elements edited in the transaction
+    private final ArrayList<INamed> changed = new ArrayList<INamed>(); // edited elements, in the order of their first edit
+    private int depth;                                              // number of times the transaction has been opened
+
+    /**
+     * ModelTransaction constructor.
+     * @param Root Root context of the model.
+     */
+    private ModelTransaction(IContext Root) {
+        this.root = Root;
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Open a transaction on the model that contains a context.  If a
+     * transaction is already open on the model, it is opened again and must be
+     * committed once more before the edits are propagated.
+     * @param Context Context.
+     * @return Transaction.
+     */
+    public static ModelTransaction begin(IContext Context) {
+        IContext root = IContextUtils.getRoot(Context);
+        synchronized (open) {
+            ModelTransaction tx = open.get(root);
+            if (tx == null) {
+                tx = new ModelTransaction(root);
+                open.put(root, tx);
+            }
+            tx.depth++;
+            return tx;
+        }
+    }
+
+    /**
+     * Commit the transaction.  When the outermost transaction is committed,
+     * the elements edited during the transaction and the elements that depend
+     * on them are updated.
+     * @return True if the affected elements updated successfully, or the transaction is still open, false otherwise.
+     * @throws IllegalStateException The transaction has already been committed.
+     */
+    public boolean commit() throws IllegalStateException {
+        List<INamed> elements = this.end();
+        if (elements == null || elements.isEmpty()) {
+            return true;
+        }
+        // keep background updates off the model while it is updated here
+        UpdateService.hold(this.root);
+        try {
+            return this.root.propagate(elements);
+        } finally {
+            UpdateService.release(this.root);
+        }
+    }
+
+    /**
+     * Close the transaction without propagating the edits.  The caller is
+     * responsible for updating the edited elements.
+     * @return Edited elements, or null if an enclosing transaction is still open.
+     * @throws IllegalStateException The transaction has already been committed.
+     */
+    List<INamed> end() throws IllegalStateException {
+        synchronized (open) {
+            if (this.depth == 0) {
+                throw new IllegalStateException("The transaction has already been committed.");
+            }
+            this.depth--;
+            if (this.depth > 0) {
+                return null;
+            }
+            open.remove(this.root);
+            return new ArrayList<INamed>(this.changed);
+        }
+    }
+
+    /**
+     * Get the root context of the model to which the transaction applies.
+     * @return Root context.
+     */
+    public IContext getRoot() {
+        return this.root;
+    }
+
+    /**
+     * Get the elements that have been edited in the transaction.
+     * @return Edited elements, in the order in which they were first edited.
+     */
+    public List<INamed> getChangedElements() {
+        synchronized (open) {
+            return new ArrayList<INamed>(this.changed);
+        }
+    }
+
+    /**
+     * Determine if a transaction is open on the model that contains a context.
+     * @param Context Context.
+     * @return True if a transaction is open, false otherwise.
+     */
+    public static boolean isOpen(IContext Context) {
+        synchronized (open) {
+            return !open.isEmpty() && open.containsKey(IContextUtils.getRoot(Context));
+        }
+    }
+
+    /**
+     * Record an edited element in the transaction open on the model that
+     * contains a context.
+     * @param Context Context of the element.
+     * @param Changed Edited element.
+     * @return True if a transaction is open and the edit was recorded, false if the edit should be propagated immediately.
+     */
+    static boolean record(IContext Context, INamed Changed) {
+        synchronized (open) {
+            if (open.isEmpty()) {
+                return false;
+            }
+            ModelTransaction tx = open.get(IContextUtils.getRoot(Context));
+            if (tx == null) {
+                return false;
+            }
+            if (!tx.edited.get(Changed.getId())) {
+                tx.edited.set(Changed.getId());
+                tx.changed.add(Changed);
+            }
+            return true;
+        }
+    }
+
+}
@@ -18,6 +18,8 @@ package ca.sfu.federation.model;
 import ca.sfu.federation.ApplicationContext;
 import ca.sfu.federation.model.exception.GraphCycleException;
 import ca.sfu.federation.utils.IContextUtils;
+import ca.sfu.federation.utils.INamedUtils;
+import ca.sfu.federation.utils.PathResolver;
 import ca.sfu.federation.utils.ImageIconUtils;
 import java.io.Serializable;
 import java.util.*;
@@ -42,7 +44,13 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
     private ImageIcon icon;             // icon representation of object
     private HashMap<String,Object> params = new HashMap<String,Object>();   // model parameters
     private ArrayList<INamed> elements = new ArrayList<INamed>();         // a collection of parts for this object
-    private ArrayList<INamed> updateOrder;      // the order by which systolic array elements are updated
+    private transient long stamp = INamedUtils.nextModificationStamp(); // modification stamp
+    private transient int id;           // element id, or 0 if not yet assigned
+    private transient ExpressionOptimizer optimizer;    // shares common subexpressions between inputs
+    private transient volatile boolean optimized;       // true if the input expressions have been optimized since the last structural change
+    private transient ModelGraph graph;                 // dependency graph of the elements of all contexts in the model
+    private transient ElementStore store;               // elements indexed by name
+    private transient ExpressionCache expressions;      // parsed and compiled expressions of the model
 
     //--------------------------------------------------------------------------
     
@@ -61,21 +69,18 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
      * @throws IllegalArgumentException An object identified by the same name already exists in the Context.
      */
     public void add(INamed Named) throws IllegalArgumentException {
-        Map elementsByName = getElementMap();
-        if (!elementsByName.containsKey(Named.getName())) {
-            // add object
-            elements.add(Named);
-            // observe element for changes
-            if (Named instanceof Observable) {
-                Observable o = (Observable) Named;
-                o.addObserver(this);
-            }
-            // notify observers of change
-            this.setChanged();
-            this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_ELEMENT_ADD));
-        } else {
-            throw new IllegalArgumentException("An object identified by the same name already exists in the Context.");
+        // add object
+        this.getStore().add(Named);
+        this.graph = null;
+        this.optimized = false;
+        // observe element for changes
+        if (Named instanceof Observable) {
+            Observable o = (Observable) Named;
+            o.addObserver(this);
         }
+        // notify observers of change
+        this.setChanged();
+        this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_ELEMENT_ADD));
     }
 
     /**
@@ -92,8 +97,8 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
             }
         }
         // clear collections
-        this.elements.clear();
-        this.updateOrder.clear();
+        this.getStore().clear();
+        this.graph = null;
         // notify observers
         this.setChanged();
         this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_ELEMENT_DELETE_REQUEST));
@@ -124,27 +129,72 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
 
     /**
      * Get a list of elements in the context.
-     * @return 
+     * @return Read-only list of elements in this context.
      */
     public List<INamed> getElements() {
-        return elements;
+        return this.getStore().getElements();
     }
 
     /**
      * Get a map of the elements in the context.
-     * @return Name, object map of elements in this context
+     * @return Read-only name, object map of elements in this context
      */
     public Map<String,INamed> getElementMap() {
-        return IContextUtils.getElementMap(elements);
+        return this.getStore().getElementMap();
     }
 
     /**
-     * Get elements in topological order.
+     * Get the elements of all contexts in the model in topological order.
      * @return Elements in order.
      */
     private ArrayList<INamed> getElementsInTopologicalOrder() throws GraphCycleException {
-        Map<String,INamed> map = getElementMap();
-        return IContextUtils.getElementsInTopologicalOrder(map);
+        return this.getGraph().getElementsInTopologicalOrder();
+    }
+
+    /**
+     * Get the model wide dependency graph.  The graph is not serialized, and
+     * is rebuilt when first required after an element has been added to or
+     * removed from any context in the model.
+     * @return Dependency graph.
+     */
+    ModelGraph getGraph() {
+        if (this.graph == null) {
+            this.graph = new ModelGraph(this);
+        }
+        return this.graph;
+    }
+
+    /**
+     * Get the cache of parsed and compiled expressions.  The cache is not
+     * serialized, and is rebuilt when first required.
+     * @return Expression cache.
+     */
+    ExpressionCache getExpressionCache() {
+        if (this.expressions == null) {
+            this.expressions = new ExpressionCache();
+        }
+        return this.expressions;
+    }
+
+    /**
+     * Get the element store.  The store is not serialized, and is rebuilt 
+     * when first required.
+     * @return Element store.
+     */
+    private ElementStore getStore() {
+        if (this.store == null) {
+            this.store = new ElementStore(this.elements);
+        }
+        return this.store;
+    }
+
+    /**
+     * Get the model wide dependency graph, if it has been built since the 
+     * last element was added or removed.
+     * @return Dependency graph, or null if the graph must be rebuilt.
+     */
+    ModelGraph getCurrentGraph() {
+        return this.graph;
     }
 
     /**
@@ -163,6 +213,29 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
         return IContextUtils.getIndependantElements(elements);
     }
 
+    /**
+     * Get the element id.  The id is assigned when the object is first
+     * registered in a context, or when it is first requested, and does not
+     * change when the object is renamed.
+     * @return Element id.
+     */
+    @Override
+    public synchronized int getId() {
+        if (this.id == 0) {
+            this.id = INamedUtils.nextId();
+        }
+        return this.id;
+    }
+
+    /**
+     * Get the modification stamp.
+     * @return Modification stamp.
+     */
+    @Override
+    public long getModificationStamp() {
+        return this.stamp;
+    }
+
     /**
      * Get the name of this object.
      * @return The name of this Object.
@@ -197,11 +270,7 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
      * @return True if object is in the local collection, false otherwise.
      */
     public boolean hasObject(String Name) {
-        Map map = getElementMap();
-        if (map.containsKey(Name)) {
-            return true;
-        }
-        return false;
+        return this.getStore().contains(Name);
     }
 
     /**
@@ -211,7 +280,7 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
      */
     private void init(String Name) {
         this.elements = new ArrayList();
-        this.updateOrder = new ArrayList();
+        this.store = null;
         // load configuration settings
         ResourceBundle config = ResourceBundle.getBundle(ApplicationContext.APPLICATION_PROPERTIES);
         // set properties
@@ -227,7 +296,110 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
      * located, or the resultant value is null.
      */
     public Object lookup(String Query) throws IllegalArgumentException {
-        return IContextUtils.lookup(getElementMap(), Query);
+        return PathResolver.lookup(this, Query);
+    }
+
+    /**
+     * Notify the contexts of updated elements that their elements have 
+     * changed, then notify the observers of the model if the update was
+     * successful.  Each context is notified once.
+     * @param Elements Updated elements.
+     * @param Success True if the elements updated successfully.
+     */
+    void notifyUpdated(List<INamed> Elements, boolean Success) {
+        IdentityHashMap<IContext,IContext> notified = new IdentityHashMap<IContext,IContext>();
+        Iterator<INamed> iter = Elements.iterator();
+        while (iter.hasNext()) {
+            IContext context = iter.next().getContext();
+            if (context == null || context == this || notified.containsKey(context)) {
+                continue;
+            }
+            notified.put(context, context);
+            if (context instanceof Assembly) {
+                Assembly assembly = (Assembly) context;
+                assembly.setChanged();
+                assembly.notifyObservers();
+            } else if (context instanceof Scenario) {
+                Scenario scenario = (Scenario) context;
+                scenario.setChanged();
+                scenario.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_CHANGE));
+            }
+        }
+        // if update was successful, notify all observers
+        if (Success) {
+            this.setChanged();
+            this.notifyObservers();
+        }
+    }
+
+    /**
+     * Update a changed element and the elements that depend on it, in 
+     * topological order, in any context of the model.  Elements that are not
+     * downstream of the change are not updated, so a change in one Scenario
+     * updates only those elements of other Scenarios that reference it.  If
+     * the changed element is a context, all of its elements are treated as 
+     * changed.
+     * @param Changed The changed element.
+     * @return True if the affected elements updated successfully, false otherwise.
+     */
+    public boolean propagate(INamed Changed) {
+        return this.propagate(Collections.singletonList(Changed));
+    }
+
+    /**
+     * Update a set of changed elements and the elements that depend on them,
+     * in topological order, in any context of the model.  Each affected
+     * element is updated once, and the model fires a single change event.
+     * @param Changed The changed elements.
+     * @return True if the affected elements updated successfully, false otherwise.
+     */
+    public boolean propagate(Collection<INamed> Changed) {
+        this.optimizeIfRequired();
+        List<INamed> affected;
+        try {
+            affected = this.getAffectedElements(Changed);
+        } catch (GraphCycleException ex) {
+            String stack = ExceptionUtils.getFullStackTrace(ex);
+            logger.log(Level.WARNING,"Could not get elements in topological order\n\n{0}",stack);
+            return false;
+        }
+        // print out the update order for debugging
+        IContextUtils.logUpdateOrder(this,affected);
+        // update the affected nodes, independent nodes in parallel
+        boolean updateSuccessful = UpdateScheduler.update(this.getGraph().getLevels(affected), null);
+        this.notifyUpdated(affected, updateSuccessful);
+        // return result
+        return updateSuccessful;
+    }
+
+    /**
+     * Get a set of changed elements and the elements that depend on them, in
+     * topological order, in any context of the model.  If a changed element 
+     * is a context, all of its elements are treated as changed.
+     * @param Changed The changed elements.
+     * @return Affected elements in topological order.
+     * @throws GraphCycleException The affected elements contain a cycle.
+     */
+    List<INamed> getAffectedElements(Collection<INamed> Changed) throws GraphCycleException {
+        // the inputs, and so the dependancies, of the changed elements may have changed
+        ModelGraph g = this.getGraph();
+        List<INamed> changed = new ArrayList<INamed>();
+        Iterator<INamed> iter = Changed.iterator();
+        while (iter.hasNext()) {
+            INamed named = iter.next();
+            if (named instanceof IContext) {
+                ModelGraph.collect((IContext) named, changed, new IdentityHashMap<Object,Object>());
+            } else {
+                if (!g.contains(named)) {
+                    // the element was added to a nested context since the graph was built
+                    this.graph = null;
+                    g = this.getGraph();
+                }
+                g.update(named);
+                changed.add(named);
+            }
+        }
+        return g.getDownstreamElementsInTopologicalOrder(changed);
     }
 
     /**
@@ -248,15 +420,15 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
      */
     public void remove(INamed Named) throws IllegalArgumentException {
         String itemName = Named.getName();
-        LinkedHashMap elementsByName = (LinkedHashMap) this.getElementMap();
-        if (elementsByName.containsKey(itemName)) {
+        // remove the NamedObject from the collection
+        if (this.getStore().remove(Named)) {
             // stop listening on the NamedObject
             if (Named instanceof Observable) {
                 Observable o = (Observable) Named;
                 o.deleteObserver(this);
             }
-            // remove the NamedObject from the collection
-            this.elements.remove(Named);
+            this.graph = null;
+            this.optimized = false;
             // notify observers
             this.setChanged();
             this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_ELEMENT_DELETED));
@@ -265,6 +437,38 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
         }
     }
 
+    /**
+     * Share common subexpressions between the inputs of all elements in the 
+     * model.  The model is optimized automatically before an update if an 
+     * element has been added or removed since the last pass.  An Input that
+     * is edited keeps its own expression tree until the model is next 
+     * optimized, so an edit does not cause the whole model to be optimized 
+     * again.  Optimization replaces the expression tree of every Input, and
+     * must not run while another thread is solving them.
+     * @return Number of shared subexpressions.
+     */
+    public synchronized int optimize() {
+        if (this.optimizer == null) {
+            this.optimizer = new ExpressionOptimizer();
+        }
+        // a structural change made during the pass calls for another pass
+        this.optimized = true;
+        int shared = this.optimizer.optimize(this);
+        logger.log(Level.FINE, "Optimized model {0}: {1} shared subexpressions", new Object[]{this.name, Integer.valueOf(shared)});
+        return shared;
+    }
+
+    /**
+     * Optimize the model if an element has been added or removed since it
+     * was last optimized.  Called on the thread that is about to update the
+     * model.
+     */
+    void optimizeIfRequired() {
+        if (!this.optimized) {
+            this.optimize();
+        }
+    }
+
     /**
      * Restore transient and non-serializable values.
      */
@@ -272,6 +476,15 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
         IContextUtils.restore(this);
     }
 
+    /**
+     * Mark the object as having changed, and advance its modification stamp.
+     */
+    @Override
+    protected synchronized void setChanged() {
+        super.setChanged();
+        this.stamp = INamedUtils.nextModificationStamp();
+    }
+
     /**
      * Set the current Context.
      *
@@ -308,8 +521,11 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
      * @return True if updated successfully, false otherwise.
      */
     public boolean update() {
+        this.optimizeIfRequired();
         ArrayList<INamed> elementsInOrder = null; 
         try {
+            // inputs of elements in nested contexts may have changed since the last update
+            this.getGraph().refresh();
             elementsInOrder = getElementsInTopologicalOrder();
         } catch (GraphCycleException ex) {
             String stack = ExceptionUtils.getFullStackTrace(ex);
@@ -320,19 +536,8 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
         // update nodes
         boolean success = false;
         if (elementsInOrder != null) {
-            Iterator e = elementsInOrder.iterator();
-            while (e.hasNext() && success) {
-                Object object = e.next();
-                if (object instanceof IUpdateable) {
-                    IUpdateable updateable = (IUpdateable) object;
-                    success = updateable.update();
-                }
-            }
-        }
-        // if update was successful, notify all observers
-        if (success) {
-            this.setChanged();
-            this.notifyObservers();
+            success = UpdateScheduler.update(this.getGraph().getLevels(elementsInOrder), null);
+            this.notifyUpdated(elementsInOrder, success);
         }
         // return result
         return success;
@@ -348,6 +553,21 @@ public class ParametricModel extends Observable implements IContext, INamed, IUp
         if (arg instanceof Integer) {
             Integer eventId = (Integer) arg;
             switch (eventId) {
+                case ApplicationContext.EVENT_ELEMENT_CHANGE:
+                    // the element dependancies may have changed
+                    if (this.graph != null && !(o instanceof IContext)) {
+                        this.graph.update((INamed) o);
+                    }
+                    break;
+                case ApplicationContext.EVENT_ELEMENT_ADD:
+                case ApplicationContext.EVENT_ELEMENT_DELETED:
+                    // the elements of a context have changed
+                    this.graph = null;
+                    this.optimized = false;
+                    break;
+                case ApplicationContext.EVENT_NAME_CHANGE:
+                    this.getStore().rename((INamed) o);
+                    break;
                 case ApplicationContext.EVENT_ELEMENT_DELETE_REQUEST:
                     logger.log(Level.INFO, "ParametricModel fired element delete");
                     INamed named = (INamed) o;
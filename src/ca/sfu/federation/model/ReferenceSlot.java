@@ -0,0 +1,165 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.utils.PathResolver;
+import java.lang.reflect.Method;
+
+/**
+ * A reference of the form objectname[.objectname...][.propertyname] that has
+ * been resolved to its target object and, where the reference names a
+ * property, to the property read method.  The slot is bound on first use and
+ * remains bound until an element is added, removed or renamed anywhere in the
+ * model, which PathResolver records by advancing its structure version.  Once
+ * the version has moved on, the slot is resolved again on next use.  The slot
+ * does not observe the objects along the reference path, so a slot that is no
+ * longer used holds no references from the model and is simply collected.
+ * @author Davis Marques
+ */
+class ReferenceSlot {
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private final IContext context;         // the context in which the reference is resolved
+    private final String query;             // the reference
+    private final String[] path;            // the reference split into path segments
+
+    private INamed target;                  // the referenced object
+    private Method getter;                  // property read method, or null if the reference is to the object itself
+    private long version = -1;              // structure version at which the slot was bound, or -1 if unbound
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * ReferenceSlot constructor.
+     * @param Context The context in which the reference is resolved.
+     * @param Query The reference.
+     * @throws IllegalArgumentException The reference is empty.
+     */
+    ReferenceSlot(IContext Context, String Query) throws IllegalArgumentException {
+        if (Query.length() < 1) {
+            throw new IllegalArgumentException("An empty or null object reference was provided.");
+        }
+        this.context = Context;
+        this.query = Query;
+        this.path = PathResolver.parse(Query);
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Resolve the reference to its target object and property read method.
+     * @param Version Structure version at which the slot is bound.
+     * @throws IllegalArgumentException The reference could not be resolved.
+     */
+    private void bind(long Version) throws IllegalArgumentException {
+        this.version = -1;
+        this.target = null;
+        this.getter = null;
+        IContext current = this.context;
+        int i = 0;
+        while (true) {
+            Object object = current.lookup(this.path[i]);
+            if (!(object instanceof INamed)) {
+                throw new IllegalArgumentException("The referenced object could not be found in the current Context.");
+            }
+            INamed named = (INamed) object;
+            int remaining = this.path.length - i - 1;
+            if (remaining == 0) {
+                // objectname
+                this.target = named;
+                break;
+            } else if (remaining == 1) {
+                // objectname.propertyname
+                this.getter = getReadMethod(named.getClass(), this.path[i + 1]);
+                this.target = named;
+                break;
+            } else if (named instanceof IContext) {
+                // contextname.subquery
+                current = (IContext) named;
+                i++;
+            } else {
+                throw new IllegalArgumentException("Object " + named.getName() + " does not support IContext.  Subparts of this object can not be resolved.");
+            }
+        }
+        this.version = Version;
+    }
+
+    /**
+     * Get the property read method for a bean class.
+     * @param Clazz Bean class.
+     * @param Property Property name.
+     * @return Read method.
+     * @throws IllegalArgumentException The class does not have a readable property of that name.
+     */
+    private static Method getReadMethod(Class Clazz, String Property) throws IllegalArgumentException {
+        Method getter = PathResolver.getReadMethod(Clazz, Property);
+        if (getter != null) {
+            return getter;
+        }
+        throw new IllegalArgumentException("Named property could not be resolved.");
+    }
+
+    /**
+     * Get the binding version.  The version is advanced each time the 
+     * structure of the model changes, and with it the objects to which 
+     * references may be bound.
+     * @return Binding version.
+     */
+    static long getBindingVersion() {
+        return PathResolver.getVersion();
+    }
+
+    /**
+     * Get the reference.
+     * @return Reference.
+     */
+    String getQuery() {
+        return this.query;
+    }
+
+    /**
+     * Resolve the reference value.
+     * @return The referenced object or property value.
+     * @throws IllegalArgumentException The reference could not be resolved, or the property value is null.
+     */
+    Object resolve() throws IllegalArgumentException {
+        INamed named;
+        Method method;
+        synchronized (this) {
+            long current = PathResolver.getVersion();
+            if (this.version != current) {
+                bind(current);
+            }
+            named = this.target;
+            method = this.getter;
+        }
+        if (method == null) {
+            return named;
+        }
+        Object result;
+        try {
+            result = method.invoke(named, NO_ARGUMENTS);
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Named property could not be resolved.");
+        }
+        if (result == null) {
+            throw new IllegalArgumentException("Property value is null.");
+        }
+        return result;
+    }
+
+}
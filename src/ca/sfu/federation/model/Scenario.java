@@ -21,11 +21,13 @@ import ca.sfu.federation.ApplicationContext;
 import ca.sfu.federation.model.exception.GraphCycleException;
 import ca.sfu.federation.utils.IContextUtils;
 import ca.sfu.federation.utils.INamedUtils;
+import ca.sfu.federation.utils.PathResolver;
 import ca.sfu.federation.utils.ImageIconUtils;
 import java.awt.Graphics;
 import java.awt.Image;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.ImageIcon;
@@ -51,6 +53,9 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
     private Image thumbnail;                // generated thumbnail
     private IContext context;               // the parent context
     private boolean isVisible;              // visibility state
+    private transient long stamp = INamedUtils.nextModificationStamp(); // modification stamp
+    private transient int id;           // element id, or 0 if not yet assigned
+    private transient DependencyGraph graph;    // dependency graph of the elements
 
     // collection of objects from external contexts
     private LinkedHashMap<String,INamed> contextual = new LinkedHashMap<String,INamed>();
@@ -58,6 +63,9 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
     // collection of objects in the local context
     private LinkedHashMap<String,INamed> transactional = new LinkedHashMap<String,INamed>();
 
+    private transient Map<String,INamed> namespace;     // transactional elements layered over contextual elements
+    private transient List<INamed> elements;            // contextual and transactional elements, or null if changed
+
     private static final Logger logger = Logger.getLogger(Scenario.class.getName());
 
     //--------------------------------------------------------------------------
@@ -81,8 +89,11 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
      */
     public void add(INamed Named) throws IllegalArgumentException {
         if (!this.transactional.containsKey(Named.getName())) {
-            // put the object in the local store
+            // put the object in the local store, masking any contextual object of the same name
             this.transactional.put(Named.getName(),Named);
+            this.elements = null;
+            PathResolver.invalidate();
+            this.updateGraph(Named.getName());
             // set the object context to this scenario
             Named.setContext(this);
             // listen for changes on the object
@@ -108,6 +119,9 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
         if (!this.contextual.containsKey(Named.getName())) {
             // add to list of contextual elements
             this.contextual.put(Named.getName(),Named);
+            this.elements = null;
+            PathResolver.invalidate();
+            this.updateGraph(Named.getName());
             // listen for changes on the object
             // TODO: we should listen for changes on the object's parent context instead!
             // in this situation, we will receive an update from the object before it has been updated _in context_
@@ -157,10 +171,10 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
 
     /**
      * Get the collection of Contextual elements in this Scenario.
-     * @return Collection of Contextual elements in this Scenario.
+     * @return Read-only collection of Contextual elements in this Scenario.
      */
-    public LinkedHashMap getContextualElements() {
-        return this.contextual;
+    public Map<String,INamed> getContextualElements() {
+        return Collections.unmodifiableMap(this.contextual);
     }
 
     /**
@@ -171,22 +185,36 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
         return IContextUtils.getDependancies(this.contextual);
     }
 
+    /**
+     * Get the Contextual and Transactional elements, including Contextual
+     * elements that are masked by Transactional elements of the same name.
+     * The list is built once after each change to the Scenario.
+     * @return Read-only list of elements.
+     */
     public List<INamed> getElements() {
-        ArrayList<INamed> elements = new ArrayList<INamed>();
-        elements.addAll(this.contextual.values());
-        elements.addAll(this.transactional.values());
-        return elements;
+        List<INamed> result = this.elements;
+        if (result == null) {
+            ArrayList<INamed> list = new ArrayList<INamed>(this.contextual.size() + this.transactional.size());
+            list.addAll(this.contextual.values());
+            list.addAll(this.transactional.values());
+            result = Collections.unmodifiableList(list);
+            this.elements = result;
+        }
+        return result;
     }
     
    /**
-    * Get the local Element collection.
+    * Get the local Element collection.  Transactional elements mask 
+    * Contextual elements of the same name.  The map is a read-only view of 
+    * the Scenario; names are resolved against the Transactional and then the
+    * Contextual elements, without copying either.
     * @return Collection of NamedObjects in this context.
     */
     public Map<String,INamed> getElementMap() {
-        LinkedHashMap<String,INamed> results = new LinkedHashMap<String,INamed>();
-        results.putAll(this.contextual);
-        results.putAll(this.transactional);
-        return results;
+        if (this.namespace == null) {
+            this.namespace = new Namespace();
+        }
+        return this.namespace;
     }
 
     /**
@@ -194,8 +222,19 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
      * @return Elements in order
      */
     private List<INamed> getElementsInTopologicalOrder() throws GraphCycleException {
-        Map map = getElementMap();
-        return IContextUtils.getElementsInTopologicalOrder(map);
+        return this.getGraph().getElementsInTopologicalOrder();
+    }
+
+    /**
+     * Get the dependency graph of the visible elements.  The graph is not 
+     * serialized, and is rebuilt when first required.
+     * @return Dependency graph.
+     */
+    DependencyGraph getGraph() {
+        if (this.graph == null) {
+            this.graph = new DependencyGraph(this.getElementMap().values());
+        }
+        return this.graph;
     }
 
     /**
@@ -206,6 +245,29 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
         return this.icon;
     }
 
+    /**
+     * Get the element id.  The id is assigned when the object is first
+     * registered in a context, or when it is first requested, and does not
+     * change when the object is renamed.
+     * @return Element id.
+     */
+    @Override
+    public synchronized int getId() {
+        if (this.id == 0) {
+            this.id = INamedUtils.nextId();
+        }
+        return this.id;
+    }
+
+    /**
+     * Get the modification stamp.
+     * @return Modification stamp.
+     */
+    @Override
+    public long getModificationStamp() {
+        return this.stamp;
+    }
+
     /**
      * Get the object Name.
      * @return The object name.
@@ -294,13 +356,62 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
     }
 
     /**
-     * Retrieves a single object, or object property value in the local context.
+     * Retrieves a single object, or object property value.  The first part of
+     * the reference is resolved against the Transactional elements, then the
+     * Contextual elements, then the parent contexts in turn.
      * @param Query NamedObject reference of the form objectname.propertyname
      * @throws IllegalArgumentException The referenced object could not be located, or the resultant value is null.
      */
     public Object lookup(String Query) throws IllegalArgumentException {
-        Map map = getElementMap();
-        return IContextUtils.lookup(map, Query);
+        String name = PathResolver.parse(Query)[0];
+        if (!this.hasObject(name) && this.context != null) {
+            return this.context.lookup(Query);
+        }
+        return PathResolver.lookup(this, Query);
+    }
+
+    /**
+     * Update a changed element and the elements that depend on it, in 
+     * topological order.  Elements that are not downstream of the change are
+     * not updated.  If the context is part of a model, the change is 
+     * propagated through the whole model.
+     * @param Changed The changed element.
+     * @return True if the affected elements updated successfully, false otherwise.
+     */
+    public boolean propagate(INamed Changed) {
+        return this.propagate(Collections.singletonList(Changed));
+    }
+
+    /**
+     * Update a set of changed elements and the elements that depend on them,
+     * in topological order.  If the context is part of a model, the changes
+     * are propagated through the whole model.
+     * @param Changed The changed elements.
+     * @return True if the affected elements updated successfully, false otherwise.
+     */
+    public boolean propagate(Collection<INamed> Changed) {
+        // the elements of a model are ordered by the model wide dependency graph
+        IContext root = IContextUtils.getRoot(this);
+        if (root != this && root instanceof ParametricModel) {
+            return root.propagate(Changed);
+        }
+        List<INamed> affected;
+        try {
+            affected = this.getGraph().getDownstreamElementsInTopologicalOrder(Changed);
+        } catch (GraphCycleException ex) {
+            String stack = ExceptionUtils.getFullStackTrace(ex);
+            logger.log(Level.WARNING,"Could not get elements in topological order\n\n{0}",stack);
+            return false;
+        }
+        // print out the update order for debugging
+        IContextUtils.logUpdateOrder(this,affected);
+        // update the affected nodes, independent nodes in parallel
+        boolean updateSuccessful = UpdateScheduler.update(this.getGraph().getLevels(affected), null);
+        // generate change event
+        this.setChanged();
+        this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_CHANGE));
+        // return result
+        return updateSuccessful;
     }
 
     public void registerInContext(IContext Context) throws Exception {
@@ -323,6 +434,10 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
             }
             // remove the object from the collection
             this.transactional.remove(Named.getName());
+            this.elements = null;
+            PathResolver.invalidate();
+            this.getGraph().remove(Named);
+            this.updateGraph(Named.getName());
         } else if (this.contextual.containsKey(Named.getName())) {
             found = true;
             // stop observing the object
@@ -332,6 +447,9 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
             }
             // remove the object from the collection
             this.contextual.remove(Named.getName());
+            this.elements = null;
+            PathResolver.invalidate();
+            this.getGraph().remove(Named);
         }
         // notify observers
         if (found) {
@@ -347,12 +465,22 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
         IContextUtils.restore(this);
     }
 
+    /**
+     * Mark the object as having changed, and advance its modification stamp.
+     */
+    @Override
+    protected synchronized void setChanged() {
+        super.setChanged();
+        this.stamp = INamedUtils.nextModificationStamp();
+    }
+
     /**
      * Set the parent Context.
      * @param MyContext The parent Context.
      */
     public void setContext(IContext MyContext) {
         this.context = MyContext;
+        PathResolver.invalidate();
         // generate change event
         this.setChanged();
         this.notifyObservers();
@@ -384,6 +512,19 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
      * @return True if updated successfully, false otherwise.
      */
     public boolean update() {
+        boolean updateSuccessful = this.updateElements(null, null);
+        this.notifyUpdated(updateSuccessful);
+        // return result
+        return updateSuccessful;
+    }
+
+    /**
+     * Update the elements of the scenario without notifying its observers.
+     * @param Cancelled Flag that is set when the update is cancelled, or null.
+     * @param Updated Map to which updated nested contexts are added instead of notifying their observers, or null.
+     * @return True if updated successfully, false otherwise.
+     */
+    boolean updateElements(AtomicBoolean Cancelled, Map<IContext,Boolean> Updated) {
         List<INamed> elements;
         try {
             elements = getElementsInTopologicalOrder();
@@ -392,20 +533,17 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
             logger.log(Level.WARNING,"{0}",stack);
             return false;
         }
-        boolean updateSuccessful = true;
-        Iterator e = elements.iterator();
-        while (e.hasNext() && updateSuccessful) {
-            Object object = e.next();
-            if (object instanceof IUpdateable) {
-                IUpdateable updateable = (IUpdateable) object;
-                updateSuccessful = updateable.update();
-            }
-        }
+        return UpdateScheduler.update(this.getGraph().getLevels(elements), null, Cancelled, Updated);
+    }
+
+    /**
+     * Notify observers that the scenario has been updated.
+     * @param Success True if the elements updated successfully.
+     */
+    void notifyUpdated(boolean Success) {
         // generate change event
         this.setChanged();
         this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_CHANGE));
-        // return result
-        return updateSuccessful;
     }
 
     /**
@@ -424,12 +562,22 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
                 case ApplicationContext.EVENT_DESCRIPTION_CHANGE:
                     break;
                 case ApplicationContext.EVENT_ELEMENT_ADD:
+                case ApplicationContext.EVENT_ELEMENT_DELETED:
+                    // pass on changes to the elements of nested contexts
+                    if (o instanceof IContext && this.transactional.containsValue(o)) {
+                        this.setChanged();
+                        this.notifyObservers(eventId);
+                    }
                     break;
                 case ApplicationContext.EVENT_ELEMENT_CHANGE:
-                    this.update();
-                    this.setChanged();
-                    this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_ELEMENT_CHANGE));
-                    logger.log(Level.INFO,"Scenario fired local update");
+                    // the element dependancies may have changed; an element
+                    // propagates the change to its own inputs itself
+                    this.getGraph().update((INamed) o);
+                    if (!ModelTransaction.isOpen(this)) {
+                        this.setChanged();
+                        this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_ELEMENT_CHANGE));
+                        logger.log(Level.INFO,"Scenario fired local update");
+                    }
                     break;
                 case ApplicationContext.EVENT_ELEMENT_DELETE_REQUEST:
                     logger.log(Level.INFO,"Scenario fired element delete");
@@ -460,11 +608,33 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
         }
     }
 
+    /**
+     * Bring the dependency graph in line with the element visible under a 
+     * name.  A transactional element masks a contextual element of the same
+     * name.
+     * @param Name Element name.
+     */
+    private void updateGraph(String Name) {
+        DependencyGraph g = this.getGraph();
+        INamed masked = this.contextual.get(Name);
+        INamed visible = this.transactional.get(Name);
+        if (visible == null) {
+            visible = masked;
+        } else if (masked != null) {
+            g.remove(masked);
+        }
+        if (visible != null) {
+            g.add(visible);
+        }
+    }
+
     /**
      * Update a named object in our context.
      * @param Named INamed
      */
     private void updateElementName(INamed Named) {
+        this.elements = null;
+        PathResolver.invalidate();
         // find the old key, remove the entry, then add a new entry for the updated object
         if (this.contextual.containsValue(Named)) {
             Set keys = this.contextual.keySet();
@@ -497,4 +667,100 @@ public class Scenario extends Observable implements IContext, IViewable, IGrapha
         }
     }
 
+    //--------------------------------------------------------------------------
+
+    /**
+     * Read-only view of the Transactional elements layered over the 
+     * Contextual elements.  Iteration follows the Contextual elements, with
+     * masked elements replaced by their Transactional counterparts, and then
+     * the remaining Transactional elements.
+     */
+    private class Namespace extends AbstractMap<String,INamed> {
+
+        public boolean containsKey(Object Key) {
+            return transactional.containsKey(Key) || contextual.containsKey(Key);
+        }
+
+        public Set<Map.Entry<String,INamed>> entrySet() {
+            return new AbstractSet<Map.Entry<String,INamed>>() {
+                public Iterator<Map.Entry<String,INamed>> iterator() {
+                    return new NamespaceIterator();
+                }
+                public int size() {
+                    return Namespace.this.size();
+                }
+            };
+        }
+
+        public INamed get(Object Key) {
+            INamed named = transactional.get(Key);
+            return named != null ? named : contextual.get(Key);
+        }
+
+        public int size() {
+            int masked = 0;
+            Iterator<String> iter = contextual.keySet().iterator();
+            while (iter.hasNext()) {
+                if (transactional.containsKey(iter.next())) {
+                    masked++;
+                }
+            }
+            return contextual.size() + transactional.size() - masked;
+        }
+
+    }
+
+    /**
+     * Iterator over the entries of the Namespace view.
+     */
+    private class NamespaceIterator implements Iterator<Map.Entry<String,INamed>> {
+
+        private Iterator<Map.Entry<String,INamed>> iter = contextual.entrySet().iterator();
+        private boolean local = false;          // true once the contextual elements have been visited
+        private Map.Entry<String,INamed> next;  // next entry, or null
+
+        NamespaceIterator() {
+            this.advance();
+        }
+
+        private void advance() {
+            this.next = null;
+            while (this.next == null) {
+                if (!this.iter.hasNext()) {
+                    if (this.local) {
+                        return;
+                    }
+                    this.local = true;
+                    this.iter = transactional.entrySet().iterator();
+                    continue;
+                }
+                Map.Entry<String,INamed> entry = this.iter.next();
+                if (!this.local) {
+                    INamed named = transactional.get(entry.getKey());
+                    this.next = new AbstractMap.SimpleImmutableEntry<String,INamed>(entry.getKey(), named != null ? named : entry.getValue());
+                } else if (!contextual.containsKey(entry.getKey())) {
+                    this.next = new AbstractMap.SimpleImmutableEntry<String,INamed>(entry);
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        public Map.Entry<String,INamed> next() {
+            if (this.next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String,INamed> result = this.next;
+            this.advance();
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
 }
\ No newline at end of file
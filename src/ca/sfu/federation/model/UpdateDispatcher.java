@@ -0,0 +1,168 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+/**
+ * Dispatches calls to the Update methods of an element class without
+ * reflection.  A subclass is generated at build time for each class that
+ * declares Update methods, by the Update annotation processor, and holds a
+ * descriptor of the Update, Default and Reference annotations of the class.
+ * The generated class is named for the element class with an UpdateDispatcher
+ * suffix, and is found by UpdateMethodRegistry when the element class is first
+ * looked up.  Classes compiled without the processor are dispatched through
+ * method handles instead.
+ * @author Davis Marques
+ */
+public abstract class UpdateDispatcher {
+
+    /**
+     * Suffix appended to the binary name of an element class to name its
+     * dispatcher.
+     */
+    public static final String SUFFIX = "UpdateDispatcher";
+
+    private final String[] names;               // update method names, in declaration order
+    private final String[] descriptions;        // update method descriptions
+    private final String[][] parameterNames;    // annotated parameter names of each update method
+    private final Class[][] parameterTypes;     // parameter types of each update method
+    private final int defaultMethod;            // index of the default update method, or -1
+    private final String[] referenceMethods;    // names of the methods with a Reference annotation
+    private final String[][] referenceContexts; // Reference contexts of each of those methods
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * UpdateDispatcher constructor.
+     * @param Names Update method names, in declaration order.
+     * @param Descriptions Update method descriptions.
+     * @param ParameterNames Annotated parameter names of each update method.
+     * @param ParameterTypes Parameter types of each update method.
+     * @param DefaultMethod Index of the default update method, or -1 if there is none.
+     * @param ReferenceMethods Names of the methods with a Reference annotation.
+     * @param ReferenceContexts Reference contexts of each of those methods.
+     */
+    protected UpdateDispatcher(String[] Names, String[] Descriptions, String[][] ParameterNames, Class[][] ParameterTypes, int DefaultMethod, String[] ReferenceMethods, String[][] ReferenceContexts) {
+        this.names = Names;
+        this.descriptions = Descriptions;
+        this.parameterNames = ParameterNames;
+        this.parameterTypes = ParameterTypes;
+        this.defaultMethod = DefaultMethod;
+        this.referenceMethods = ReferenceMethods;
+        this.referenceContexts = ReferenceContexts;
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Get the numeric value of an Input.
+     * @param MyInput Input.
+     * @return Value.
+     */
+    protected static double doubleValue(Input MyInput) {
+        if (MyInput.isNumeric()) {
+            return MyInput.getDoubleResult();
+        }
+        return ((Number) MyInput.getResult()).doubleValue();
+    }
+
+    /**
+     * Get the index of the default update method.
+     * @return Index, or -1 if the class has no default update method.
+     */
+    int getDefaultMethod() {
+        return this.defaultMethod;
+    }
+
+    /**
+     * Get the description of an update method.
+     * @param Index Update method index.
+     * @return Description.
+     */
+    String getDescription(int Index) {
+        return this.descriptions[Index];
+    }
+
+    /**
+     * Get the number of update methods.
+     * @return Number of update methods.
+     */
+    int getMethodCount() {
+        return this.names.length;
+    }
+
+    /**
+     * Get the name of an update method.
+     * @param Index Update method index.
+     * @return Method name.
+     */
+    String getName(int Index) {
+        return this.names[Index];
+    }
+
+    /**
+     * Get the annotated parameter names of an update method.
+     * @param Index Update method index.
+     * @return Parameter names.
+     */
+    String[] getParameterNames(int Index) {
+        return this.parameterNames[Index];
+    }
+
+    /**
+     * Get the parameter types of an update method.
+     * @param Index Update method index.
+     * @return Parameter types.
+     */
+    Class[] getParameterTypes(int Index) {
+        return this.parameterTypes[Index];
+    }
+
+    /**
+     * Get the Reference contexts of a method.
+     * @param Index Reference method index.
+     * @return Reference contexts.
+     */
+    String[] getReferenceContexts(int Index) {
+        return this.referenceContexts[Index];
+    }
+
+    /**
+     * Get the number of methods with a Reference annotation.
+     * @return Number of methods.
+     */
+    int getReferenceCount() {
+        return this.referenceMethods.length;
+    }
+
+    /**
+     * Get the name of a method with a Reference annotation.
+     * @param Index Reference method index.
+     * @return Method name.
+     */
+    String getReferenceMethod(int Index) {
+        return this.referenceMethods[Index];
+    }
+
+    /**
+     * Invoke an update method.
+     * @param Element Element to update.
+     * @param Index Update method index.
+     * @param Inputs Inputs of the element, in parameter order.
+     * @throws Throwable The method failed, or an Input value does not match its parameter type.
+     */
+    protected abstract void invoke(Component Element, int Index, Input[] Inputs) throws Throwable;
+
+}
@@ -0,0 +1,227 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.model.annotations.Update;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * An Update method bound to a method handle.  The handle takes the element
+ * and its Inputs, reads the value of each Input as the exact type of the
+ * corresponding method parameter, and invokes the method.  Numeric Inputs
+ * are passed to primitive parameters without boxing, and no argument array
+ * is allocated.  The handle and the Update annotation values are read once
+ * for each method, by UpdateMethodRegistry, and shared by all elements that
+ * use the method.  Where the element class has a generated UpdateDispatcher,
+ * the method is invoked through the dispatcher instead, and the annotation
+ * values are taken from its descriptor.
+ * @author Davis Marques
+ */
+final class UpdateMethod {
+
+    private static final MethodType INVOKER = MethodType.methodType(Void.TYPE, Component.class, Input[].class);
+
+    private static final MethodHandle DOUBLE_VALUE;     // (Input)double
+    private static final MethodHandle OBJECT_VALUE;     // (Input)Object
+    private static final MethodHandle INPUT_AT;         // (Input[],int)Input
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            DOUBLE_VALUE = lookup.findStatic(UpdateMethod.class, "doubleValue", MethodType.methodType(Double.TYPE, Input.class));
+            OBJECT_VALUE = lookup.findVirtual(Input.class, "getResult", MethodType.methodType(Object.class));
+            INPUT_AT = MethodHandles.arrayElementGetter(Input[].class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final Method method;            // update method
+    private final String description;       // description from the Update annotation
+    private final String[] parameterNames;  // parameter names from the Update annotation
+    private final Class[] parameterTypes;   // parameter types
+    private final MethodHandle invoker;     // (Component,Input[])void, or null if dispatched
+    private final UpdateDispatcher dispatcher; // generated dispatcher, or null
+    private final int index;                // index of the method in the dispatcher
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * UpdateMethod constructor.
+     * @param MyMethod Update method.
+     * @throws IllegalAccessException The method is not accessible.
+     */
+    UpdateMethod(Method MyMethod) throws IllegalAccessException {
+        Update annotation = MyMethod.getAnnotation(Update.class);
+        this.method = MyMethod;
+        this.description = annotation.description();
+        this.parameterNames = annotation.parameter();
+        this.parameterTypes = MyMethod.getParameterTypes();
+        if (!Modifier.isPublic(MyMethod.getModifiers()) || !Modifier.isPublic(MyMethod.getDeclaringClass().getModifiers())) {
+            MyMethod.setAccessible(true);
+        }
+        MethodHandle target = MethodHandles.lookup().unreflect(MyMethod);
+        // read each argument from the corresponding Input
+        Class[] parameters = this.parameterTypes;
+        MethodHandle[] filters = new MethodHandle[parameters.length];
+        int[] reorder = new int[parameters.length + 1];
+        for (int i=0;i<parameters.length;i++) {
+            MethodHandle input = MethodHandles.insertArguments(INPUT_AT, 1, Integer.valueOf(i));
+            filters[i] = MethodHandles.filterReturnValue(input, getValueReader(parameters[i]));
+            reorder[i + 1] = 1;
+        }
+        MethodHandle bound = MethodHandles.filterArguments(target, 1, filters);
+        MethodType type = MethodType.methodType(bound.type().returnType(), MyMethod.getDeclaringClass(), Input[].class);
+        bound = MethodHandles.permuteArguments(bound, type, reorder);
+        // the element is passed as a Component, and the result is ignored
+        this.invoker = bound.asType(INVOKER);
+        this.dispatcher = null;
+        this.index = -1;
+    }
+
+    /**
+     * UpdateMethod constructor.
+     * @param MyMethod Update method.
+     * @param Dispatcher Generated dispatcher of the declaring class.
+     * @param Index Index of the method in the dispatcher.
+     */
+    UpdateMethod(Method MyMethod, UpdateDispatcher Dispatcher, int Index) {
+        this.method = MyMethod;
+        this.description = Dispatcher.getDescription(Index);
+        this.parameterNames = Dispatcher.getParameterNames(Index);
+        this.parameterTypes = Dispatcher.getParameterTypes(Index);
+        this.invoker = null;
+        this.dispatcher = Dispatcher;
+        this.index = Index;
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Get the numeric value of an Input.
+     * @param MyInput Input.
+     * @return Value.
+     */
+    private static double doubleValue(Input MyInput) {
+        return UpdateDispatcher.doubleValue(MyInput);
+    }
+
+    /**
+     * Determine if the method is invoked through a generated dispatcher.
+     * @return True if the method is dispatched, false if it is invoked through a method handle.
+     */
+    boolean isDispatched() {
+        return this.dispatcher != null;
+    }
+
+    /**
+     * Get the description of the method.
+     * @return Description.
+     */
+    String getDescription() {
+        return this.description;
+    }
+
+    /**
+     * Get the method.
+     * @return Update method.
+     */
+    Method getMethod() {
+        return this.method;
+    }
+
+    /**
+     * Get the parameter names given by the Update annotation.
+     * @return Parameter names.  The array must not be modified.
+     */
+    String[] getParameterNames() {
+        return this.parameterNames;
+    }
+
+    /**
+     * Get the parameter types of the method.
+     * @return Parameter types.  The array must not be modified.
+     */
+    Class[] getParameterTypes() {
+        return this.parameterTypes;
+    }
+
+    /**
+     * Get a handle that reads the value of an Input as a parameter type.
+     * Numeric parameters are read as primitive values and narrowed as a cast
+     * would narrow them; other parameters are cast from the Input result.
+     * @param Parameter Parameter type.
+     * @return Handle of type (Input)Parameter.
+     */
+    private static MethodHandle getValueReader(Class Parameter) {
+        Class primitive = Parameter.isPrimitive() ? Parameter : unwrap(Parameter);
+        if (primitive != null && primitive != Boolean.TYPE && primitive != Character.TYPE) {
+            MethodHandle value = MethodHandles.explicitCastArguments(DOUBLE_VALUE, MethodType.methodType(primitive, Input.class));
+            return value.asType(MethodType.methodType(Parameter, Input.class));
+        }
+        return OBJECT_VALUE.asType(MethodType.methodType(Parameter, Input.class));
+    }
+
+    /**
+     * Invoke the Update method.
+     * @param Element Element to update.
+     * @param Inputs Inputs of the element, in parameter order.
+     * @throws Exception The method failed, or an Input value does not match its parameter type.
+     */
+    void invoke(Component Element, Input[] Inputs) throws Exception {
+        try {
+            if (this.dispatcher != null) {
+                this.dispatcher.invoke(Element, this.index, Inputs);
+            } else {
+                this.invoker.invokeExact(Element, Inputs);
+            }
+        } catch (Exception ex) {
+            throw ex;
+        } catch (Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new UndeclaredThrowableException(ex);
+        }
+    }
+
+    /**
+     * Get the primitive class for a wrapper class.
+     * @param Clazz Class.
+     * @return Primitive class, or null if the class is not a primitive wrapper.
+     */
+    private static Class unwrap(Class Clazz) {
+        if (Clazz == Double.class) {
+            return Double.TYPE;
+        } else if (Clazz == Integer.class) {
+            return Integer.TYPE;
+        } else if (Clazz == Long.class) {
+            return Long.TYPE;
+        } else if (Clazz == Float.class) {
+            return Float.TYPE;
+        } else if (Clazz == Short.class) {
+            return Short.TYPE;
+        } else if (Clazz == Byte.class) {
+            return Byte.TYPE;
+        }
+        return null;
+    }
+
+}
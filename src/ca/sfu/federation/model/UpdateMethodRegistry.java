@@ -0,0 +1,250 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.model.annotations.Default;
+import ca.sfu.federation.model.annotations.Reference;
+import ca.sfu.federation.model.annotations.Update;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang.exception.ExceptionUtils;
+
+/**
+ * The Update, Default and Reference methods declared by each element class.
+ * A class's declared methods are scanned once, when the class is first
+ * looked up, and the results are kept with the class, so that selecting
+ * elements and setting update methods do not repeat the reflection scan.
+ * Where the class has a dispatcher generated at build time, the annotation
+ * values are read from its descriptor rather than by reflection, and the
+ * update methods are invoked through it.  The entry for a class is discarded
+ * along with the class.
+ * @author Davis Marques
+ */
+public final class UpdateMethodRegistry {
+
+    private static final ClassValue<Entry> registry = new ClassValue<Entry>() {
+        protected Entry computeValue(Class<?> Clazz) {
+            return new Entry(Clazz);
+        }
+    };
+
+    private static final Logger logger = Logger.getLogger(UpdateMethodRegistry.class.getName());
+
+    /**
+     * UpdateMethodRegistry constructor.
+     */
+    private UpdateMethodRegistry() {
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Get the Update method annotated as the default for a class.
+     * @param Clazz Element class.
+     * @return Default Update method, or null if the class declares none.
+     */
+    public static Method getDefaultMethod(Class Clazz) {
+        return registry.get(Clazz).defaultMethod;
+    }
+
+    /**
+     * Get the contexts in which the object returned by a method is referenced.
+     * @param Clazz Element class.
+     * @param MethodName Method name.
+     * @return Fully qualified context names, or null if the method does not have a Reference annotation.
+     */
+    public static String[] getReferenceContexts(Class Clazz, String MethodName) {
+        String[] contexts = registry.get(Clazz).references.get(MethodName);
+        return contexts == null ? null : (String[]) contexts.clone();
+    }
+
+    /**
+     * Get a named Update method of a class.
+     * @param Clazz Element class.
+     * @param MethodName Method name.
+     * @return Update method, or null if the class does not declare an Update method of that name.
+     */
+    static UpdateMethod getUpdateMethod(Class Clazz, String MethodName) {
+        return registry.get(Clazz).updateMethods.get(MethodName);
+    }
+
+    /**
+     * Get the Update methods of a class, in declaration order.
+     * @param Clazz Element class.
+     * @return Update methods.
+     */
+    public static List<Method> getUpdateMethods(Class Clazz) {
+        return new ArrayList<Method>(registry.get(Clazz).methods);
+    }
+
+    /**
+     * Determine if a class declares a method of the given name, whether or
+     * not it is an Update method.
+     * @param Clazz Element class.
+     * @param MethodName Method name.
+     * @return True if the class declares a method of that name, false otherwise.
+     */
+    public static boolean hasMethod(Class Clazz, String MethodName) {
+        return registry.get(Clazz).getNames().contains(MethodName);
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Get the dispatcher generated for a class.
+     * @param Clazz Element class.
+     * @return Dispatcher, or null if none was generated for the class.
+     */
+    private static UpdateDispatcher getDispatcher(Class Clazz) {
+        try {
+            Class dispatcher = Class.forName(Clazz.getName() + UpdateDispatcher.SUFFIX, true, Clazz.getClassLoader());
+            if (UpdateDispatcher.class.isAssignableFrom(dispatcher)) {
+                return (UpdateDispatcher) dispatcher.getDeclaredConstructor().newInstance();
+            }
+        } catch (ClassNotFoundException ex) {
+            // the class was compiled without the annotation processor
+        } catch (Exception ex) {
+            String stack = ExceptionUtils.getFullStackTrace(ex);
+            logger.log(Level.WARNING,"Could not load update dispatcher for {0}\n\n{1}", new Object[]{Clazz.getName(), stack});
+        } catch (LinkageError ex) {
+            String stack = ExceptionUtils.getFullStackTrace(ex);
+            logger.log(Level.WARNING,"Could not load update dispatcher for {0}\n\n{1}", new Object[]{Clazz.getName(), stack});
+        }
+        return null;
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * The annotated methods declared by a class.
+     */
+    private static final class Entry {
+
+        final Class clazz;                                                          // element class
+        final LinkedHashMap<String,UpdateMethod> updateMethods = new LinkedHashMap<String,UpdateMethod>(); // Update methods by name
+        final List<Method> methods;                                                 // Update methods, in declaration order
+        final Map<String,String[]> references = new HashMap<String,String[]>();     // Reference contexts by method name
+        final Method defaultMethod;                                                 // default Update method, or null
+        private volatile Set<String> names;                                         // names of all declared methods
+
+        Entry(Class Clazz) {
+            this.clazz = Clazz;
+            UpdateDispatcher dispatcher = getDispatcher(Clazz);
+            Method defaultUpdate = null;
+            if (dispatcher != null) {
+                defaultUpdate = this.load(dispatcher);
+            } else {
+                defaultUpdate = this.scan();
+            }
+            ArrayList<Method> list = new ArrayList<Method>(this.updateMethods.size());
+            Iterator<UpdateMethod> iter = this.updateMethods.values().iterator();
+            while (iter.hasNext()) {
+                list.add(iter.next().getMethod());
+            }
+            this.methods = Collections.unmodifiableList(list);
+            this.defaultMethod = defaultUpdate;
+        }
+
+        /**
+         * Get the names of all methods declared by the class.
+         * @return Method names.
+         */
+        Set<String> getNames() {
+            Set<String> result = this.names;
+            if (result == null) {
+                result = new HashSet<String>();
+                Method[] declared = this.clazz.getDeclaredMethods();
+                for (int i=0;i<declared.length;i++) {
+                    result.add(declared[i].getName());
+                }
+                this.names = result;
+            }
+            return result;
+        }
+
+        /**
+         * Load the annotated methods from the descriptor of a generated
+         * dispatcher.
+         * @param Dispatcher Dispatcher.
+         * @return Default Update method, or null.
+         */
+        private Method load(UpdateDispatcher Dispatcher) {
+            Method defaultUpdate = null;
+            for (int i=0;i<Dispatcher.getReferenceCount();i++) {
+                this.references.put(Dispatcher.getReferenceMethod(i), Dispatcher.getReferenceContexts(i));
+            }
+            for (int i=0;i<Dispatcher.getMethodCount();i++) {
+                Method method;
+                try {
+                    method = this.clazz.getDeclaredMethod(Dispatcher.getName(i), Dispatcher.getParameterTypes(i));
+                } catch (NoSuchMethodException ex) {
+                    String stack = ExceptionUtils.getFullStackTrace(ex);
+                    logger.log(Level.WARNING,"Update dispatcher does not match {0}\n\n{1}", new Object[]{this.clazz.getName(), stack});
+                    continue;
+                }
+                this.updateMethods.put(method.getName(), new UpdateMethod(method, Dispatcher, i));
+                if (i == Dispatcher.getDefaultMethod()) {
+                    defaultUpdate = method;
+                }
+            }
+            return defaultUpdate;
+        }
+
+        /**
+         * Scan the declared methods of the class for annotations.
+         * @return Default Update method, or null.
+         */
+        private Method scan() {
+            Method defaultUpdate = null;
+            HashSet<String> declaredNames = new HashSet<String>();
+            Method[] declared = this.clazz.getDeclaredMethods();
+            for (int i=0;i<declared.length;i++) {
+                Method method = declared[i];
+                declaredNames.add(method.getName());
+                if (method.isAnnotationPresent(Reference.class)) {
+                    this.references.put(method.getName(), method.getAnnotation(Reference.class).inContext());
+                }
+                if (!method.isAnnotationPresent(Update.class) || this.updateMethods.containsKey(method.getName())) {
+                    continue;
+                }
+                try {
+                    this.updateMethods.put(method.getName(), new UpdateMethod(method));
+                } catch (Exception ex) {
+                    String stack = ExceptionUtils.getFullStackTrace(ex);
+                    logger.log(Level.WARNING,"Could not bind update method {0}\n\n{1}", new Object[]{method.getName(), stack});
+                    continue;
+                }
+                if (defaultUpdate == null && method.isAnnotationPresent(Default.class)) {
+                    defaultUpdate = method;
+                }
+            }
+            this.names = declaredNames;
+            return defaultUpdate;
+        }
+
+    }
+
+}
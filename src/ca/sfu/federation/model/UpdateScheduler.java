@@ -0,0 +1,232 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang.exception.ExceptionUtils;
+
+/**
+ * Updates the elements of a context level by level.  The levels of a
+ * dependency graph are antichains: no element depends on another element of
+ * the same level.  Large levels are split into tasks on a shared work
+ * stealing pool and updated in parallel; the next level starts once every
+ * element of the current level has been updated.  Results are collected by
+ * position within the level, so failures are reported in the same order
+ * regardless of how the work was scheduled.  If any element of a level fails
+ * to update, the later levels are not updated.  An update may be cancelled
+ * between levels, in which case the later levels are not updated either.
+ * <p>
+ * Elements that are themselves contexts are always updated on the calling
+ * thread.  They notify their observers when they update, unless the caller
+ * collects them to notify their observers later, as is done when the update
+ * is not run on the event dispatch thread.  The elements of a nested context
+ * are updated under the same cancellation flag as the levels that contain it.
+ * @author Davis Marques
+ */
+public final class UpdateScheduler {
+
+    private static final int GRAIN = 16;    // number of elements updated sequentially by a single task
+
+    private static final Throwable NOT_UPDATED = new IllegalStateException("Element did not update."); // element reported failure
+
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private static final Logger logger = Logger.getLogger(UpdateScheduler.class.getName());
+
+    /**
+     * UpdateScheduler constructor.
+     */
+    private UpdateScheduler() {
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Update a single element.
+     * @param Named Element.
+     * @return Null if the element updated successfully, otherwise the cause of the failure.
+     */
+    private static Throwable run(INamed Named) {
+        try {
+            if (Named instanceof IUpdateable && !((IUpdateable) Named).update()) {
+                return NOT_UPDATED;
+            }
+        } catch (RuntimeException ex) {
+            return ex;
+        }
+        return null;
+    }
+
+    /**
+     * Update a single element that may be a context.  A nested context is 
+     * added to the updated contexts instead of notifying its observers.
+     * @param Named Element.
+     * @param Cancelled Flag that is set when the update is cancelled, or null.
+     * @param Updated Map to which updated nested contexts are added, or null.
+     * @return Null if the element updated successfully, otherwise the cause of the failure.
+     */
+    private static Throwable run(INamed Named, AtomicBoolean Cancelled, Map<IContext,Boolean> Updated) {
+        if (Updated == null || !(Named instanceof Assembly || Named instanceof Scenario)) {
+            return run(Named);
+        }
+        try {
+            boolean success;
+            if (Named instanceof Assembly) {
+                success = ((Assembly) Named).updateElements(Cancelled, Updated);
+            } else {
+                success = ((Scenario) Named).updateElements(Cancelled, Updated);
+            }
+            Updated.put((IContext) Named, Boolean.valueOf(success));
+            if (!success) {
+                return NOT_UPDATED;
+            }
+        } catch (RuntimeException ex) {
+            return ex;
+        }
+        return null;
+    }
+
+    /**
+     * Update levels of independent elements in order.
+     * @param Levels Levels of elements, from first to last, as produced by DependencyGraph.getLevels.
+     * @param Failed List to which the elements that failed to update are added, or null.
+     * @return True if all elements updated successfully, false otherwise.
+     */
+    public static boolean update(List<List<INamed>> Levels, List<INamed> Failed) {
+        return update(Levels, Failed, null);
+    }
+
+    /**
+     * Update levels of independent elements in order, stopping before the 
+     * next level once the update has been cancelled.
+     * @param Levels Levels of elements, from first to last, as produced by DependencyGraph.getLevels.
+     * @param Failed List to which the elements that failed to update are added, or null.
+     * @param Cancelled Flag that is set when the update is cancelled, or null.
+     * @return True if all elements updated successfully, false if an element failed or the update was cancelled.
+     */
+    public static boolean update(List<List<INamed>> Levels, List<INamed> Failed, AtomicBoolean Cancelled) {
+        return update(Levels, Failed, Cancelled, null);
+    }
+
+    /**
+     * Update levels of independent elements in order, stopping before the 
+     * next level once the update has been cancelled.  Nested contexts that
+     * are updated are collected, in the order in which they complete, so that
+     * the caller can notify their observers on another thread.
+     * @param Levels Levels of elements, from first to last, as produced by DependencyGraph.getLevels.
+     * @param Failed List to which the elements that failed to update are added, or null.
+     * @param Cancelled Flag that is set when the update is cancelled, or null.
+     * @param Updated Map to which updated nested contexts are added with their result, or null to have the contexts notify their observers as they update.
+     * @return True if all elements updated successfully, false if an element failed or the update was cancelled.
+     */
+    static boolean update(List<List<INamed>> Levels, List<INamed> Failed, AtomicBoolean Cancelled, Map<IContext,Boolean> Updated) {
+        // init
+        boolean success = true;
+        // update each level in turn, stopping after the first level with a failure
+        for (int i=0;i<Levels.size() && success;i++) {
+            if (Cancelled != null && Cancelled.get()) {
+                return false;
+            }
+            List<INamed> level = Levels.get(i);
+            Throwable[] errors = new Throwable[level.size()];
+            // leaf elements first, in parallel if there are enough of them
+            ArrayList<INamed> leaves = new ArrayList<INamed>(level.size());
+            for (int j=0;j<level.size();j++) {
+                if (!(level.get(j) instanceof IContext)) {
+                    leaves.add(level.get(j));
+                }
+            }
+            Throwable[] leafErrors = new Throwable[leaves.size()];
+            if (leaves.size() >= 2 * GRAIN) {
+                pool.invoke(new LevelTask(leaves, 0, leaves.size(), leafErrors));
+            } else {
+                for (int j=0;j<leaves.size();j++) {
+                    leafErrors[j] = run(leaves.get(j));
+                }
+            }
+            // then contexts, on the calling thread
+            int leaf = 0;
+            for (int j=0;j<level.size();j++) {
+                if (level.get(j) instanceof IContext) {
+                    errors[j] = run(level.get(j), Cancelled, Updated);
+                } else {
+                    errors[j] = leafErrors[leaf++];
+                }
+            }
+            // collect failures in level order
+            for (int j=0;j<errors.length;j++) {
+                if (errors[j] != null) {
+                    success = false;
+                    if (Failed != null) {
+                        Failed.add(level.get(j));
+                    }
+                    if (errors[j] == NOT_UPDATED) {
+                        logger.log(Level.FINE,"{0} did not update", level.get(j).getName());
+                    } else {
+                        String stack = ExceptionUtils.getFullStackTrace(errors[j]);
+                        logger.log(Level.WARNING,"Could not update {0}\n\n{1}", new Object[]{level.get(j).getName(), stack});
+                    }
+                }
+            }
+        }
+        // return result
+        return success;
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Updates a range of the elements of a level, splitting the range in half
+     * until it is small enough to update sequentially.
+     */
+    private static final class LevelTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<INamed> level;   // elements of the level
+        private final int from;             // first element of the range
+        private final int to;               // end of the range, exclusive
+        private final Throwable[] errors;   // failure cause for each element of the level
+
+        LevelTask(List<INamed> Level, int From, int To, Throwable[] Errors) {
+            this.level = Level;
+            this.from = From;
+            this.to = To;
+            this.errors = Errors;
+        }
+
+        protected void compute() {
+            if (this.to - this.from <= GRAIN) {
+                for (int i=this.from;i<this.to;i++) {
+                    this.errors[i] = run(this.level.get(i));
+                }
+            } else {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new LevelTask(this.level, this.from, middle, this.errors),
+                          new LevelTask(this.level, middle, this.to, this.errors));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,477 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.model.exception.GraphCycleException;
+import ca.sfu.federation.utils.IContextUtils;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import org.apache.commons.lang.exception.ExceptionUtils;
+
+/**
+ * Propagates edits to a model on a background thread, so that the user
+ * interface remains responsive while a large model updates.  Edits are made
+ * and validated on the calling thread, normally the Swing event dispatch
+ * thread.  The elements affected by an edit, and the order in which they are
+ * updated, are fixed at that time from the dependency graph.  The update
+ * methods of the affected elements are then run on the update thread.  Where
+ * the structure of a model has changed, its expression trees are optimized on
+ * the update thread before the pass is run, so that no solver is rewritten
+ * while a pass is evaluating it.  When a pass completes, observers are
+ * notified on the event dispatch thread.
+ * <p>
+ * A pass does not work from a snapshot of the model: it reads the update 
+ * methods, inputs and values of the elements as they are when each element
+ * is updated.  Edits are therefore kept off the update thread's model while
+ * a pass is running on it.  Component.setInput, Component.setUpdateMethod 
+ * and ModelTransaction.commit hold the model for the duration of the edit:
+ * a running pass on the model is cancelled, the edit waits for it to stop,
+ * and no pass is started on the model until the edit is done.  The elements
+ * of the cancelled and waiting passes are then planned again from the edited
+ * model.  Viewers that read element values while a pass is running may see
+ * some elements updated and others not; they are notified once the pass has
+ * completed.
+ * <p>
+ * A newer edit to the same model supersedes a pass that is waiting or
+ * running.  A running pass is cancelled before its next level, and the
+ * elements it was to update are included in the pass for the newer edit.
+ * @author Davis Marques
+ */
+public final class UpdateService {
+
+    private static final Object lock = new Object();
+
+    private static final LinkedHashMap<IContext,Pass> waiting = new LinkedHashMap<IContext,Pass>(); // next pass for each root context
+
+    private static final IdentityHashMap<IContext,int[]> held = new IdentityHashMap<IContext,int[]>(); // number of holds on each root context being edited
+
+    private static final IdentityHashMap<IContext,List<INamed>> interrupted = new IdentityHashMap<IContext,List<INamed>>(); // changed elements of passes cancelled by a hold
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable Task) {
+            Thread thread = new Thread(Task, "Model Update");
+            thread.setDaemon(true);
+            updateThread = thread;
+            return thread;
+        }
+    });
+
+    private static Pass running;        // pass being updated, or null
+    private static volatile Thread updateThread; // thread on which passes are run
+    private static boolean scheduled;   // true if the update thread has been asked to run the waiting passes
+
+    private static final Logger logger = Logger.getLogger(UpdateService.class.getName());
+
+    /**
+     * UpdateService constructor.
+     */
+    private UpdateService() {
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Wait until all submitted passes have completed and their results have
+     * been published.  Must not be called on the event dispatch thread.
+     * @throws InterruptedException The calling thread was interrupted.
+     */
+    public static void flush() throws InterruptedException {
+        synchronized (lock) {
+            while (scheduled || running != null || !waiting.isEmpty()) {
+                lock.wait();
+            }
+        }
+        // results are published on the event dispatch thread
+        try {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                }
+            });
+        } catch (InvocationTargetException ex) {
+            // nothing to report
+        }
+    }
+
+    /**
+     * Get the changed elements and the elements that depend on them, in
+     * topological order.
+     * @param Root Root context.
+     * @param Changed Changed elements.
+     * @return Affected elements.
+     * @throws GraphCycleException The affected elements contain a cycle.
+     */
+    private static List<INamed> getAffectedElements(IContext Root, Collection<INamed> Changed) throws GraphCycleException {
+        if (Root instanceof ParametricModel) {
+            return ((ParametricModel) Root).getAffectedElements(Changed);
+        }
+        DependencyGraph graph = getGraph(Root);
+        return graph == null ? new ArrayList<INamed>() : graph.getDownstreamElementsInTopologicalOrder(Changed);
+    }
+
+    /**
+     * Get the dependency graph of a root context.
+     * @param Root Root context.
+     * @return Dependency graph, or null if the context has none.
+     */
+    private static DependencyGraph getGraph(IContext Root) {
+        if (Root instanceof ParametricModel) {
+            return ((ParametricModel) Root).getGraph();
+        } else if (Root instanceof Assembly) {
+            return ((Assembly) Root).getGraph();
+        } else if (Root instanceof Scenario) {
+            return ((Scenario) Root).getGraph();
+        }
+        return null;
+    }
+
+    /**
+     * Hold the model of a context while it is edited on the calling thread.
+     * A running pass on the model is cancelled, and the call waits for it to
+     * stop.  No pass is started on the model until each hold has been 
+     * released.  Holds are counted, so they may be nested.  Calls made while
+     * updating an element have no effect.
+     * @param Context Context of the edited element, or null.
+     */
+    public static void hold(IContext Context) {
+        if (Context == null || isUpdating()) {
+            return;
+        }
+        IContext root = IContextUtils.getRoot(Context);
+        synchronized (lock) {
+            int[] count = held.get(root);
+            if (count == null) {
+                count = new int[1];
+                held.put(root, count);
+            }
+            count[0]++;
+            if (running == null || running.root != root) {
+                return;
+            }
+            // stop the running pass before the next level
+            Pass pass = running;
+            pass.cancelled.set(true);
+            boolean interrupt = false;
+            while (running == pass) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException ex) {
+                    interrupt = true;
+                }
+            }
+            if (interrupt) {
+                Thread.currentThread().interrupt();
+            }
+            // the elements of the pass are updated once the hold is released,
+            // unless a newer pass already includes them
+            if (!waiting.containsKey(root)) {
+                List<INamed> changed = interrupted.get(root);
+                if (changed == null) {
+                    changed = new ArrayList<INamed>();
+                    interrupted.put(root, changed);
+                }
+                changed.addAll(pass.changed);
+            }
+        }
+    }
+
+    /**
+     * Determine if the calling thread is updating elements for a pass.
+     * @return True if called on the update thread or one of its workers.
+     */
+    private static boolean isUpdating() {
+        return Thread.currentThread() == updateThread || ForkJoinTask.inForkJoinPool();
+    }
+
+    /**
+     * Notify the observers of the nested contexts updated by a pass, then the
+     * observers of the model, that the pass has completed.  Called on the 
+     * event dispatch thread.
+     * @param MyPass Completed pass.
+     * @param Success True if the affected elements updated successfully.
+     */
+    private static void publish(Pass MyPass, boolean Success) {
+        Iterator<Map.Entry<IContext,Boolean>> iter = MyPass.contexts.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<IContext,Boolean> entry = iter.next();
+            if (entry.getKey() instanceof Assembly) {
+                ((Assembly) entry.getKey()).notifyUpdated(entry.getValue().booleanValue());
+            } else if (entry.getKey() instanceof Scenario) {
+                ((Scenario) entry.getKey()).notifyUpdated(entry.getValue().booleanValue());
+            }
+        }
+        IContext root = MyPass.root;
+        if (root instanceof ParametricModel) {
+            ((ParametricModel) root).notifyUpdated(MyPass.affected, Success);
+        } else if (root instanceof Assembly) {
+            ((Assembly) root).notifyUpdated(Success);
+        } else if (root instanceof Scenario) {
+            ((Scenario) root).notifyUpdated(Success);
+        }
+    }
+
+    /**
+     * Run the waiting passes on the update thread until none remain.
+     */
+    private static void runWaitingPasses() {
+        while (true) {
+            // take the next pass
+            Pass pass;
+            synchronized (lock) {
+                // skip the models that are being edited
+                pass = null;
+                Iterator<Pass> iter = waiting.values().iterator();
+                while (iter.hasNext() && pass == null) {
+                    Pass next = iter.next();
+                    if (!held.containsKey(next.root)) {
+                        pass = next;
+                        iter.remove();
+                    }
+                }
+                if (pass == null) {
+                    scheduled = false;
+                    lock.notifyAll();
+                    return;
+                }
+                running = pass;
+            }
+            // update the affected elements
+            boolean success = false;
+            try {
+                // expression trees are only rewritten here, while no pass is running
+                if (pass.root instanceof ParametricModel) {
+                    ((ParametricModel) pass.root).optimizeIfRequired();
+                }
+                success = UpdateScheduler.update(pass.levels, null, pass.cancelled, pass.contexts);
+            } catch (RuntimeException ex) {
+                String stack = ExceptionUtils.getFullStackTrace(ex);
+                logger.log(Level.WARNING,"Could not update model\n\n{0}",stack);
+            } catch (Error ex) {
+                // abandon the pass, but leave the service able to run the others
+                synchronized (lock) {
+                    running = null;
+                    scheduled = false;
+                    if (!waiting.isEmpty()) {
+                        schedule();
+                    }
+                    lock.notifyAll();
+                }
+                throw ex;
+            }
+            // publish the result, unless a newer pass supersedes it
+            final Pass completed = pass;
+            final boolean result = success;
+            synchronized (lock) {
+                if (!pass.cancelled.get()) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            publish(completed, result);
+                        }
+                    });
+                }
+                running = null;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Release a hold on the model of a context.  When the last hold is
+     * released, the elements of the passes that were cancelled or kept 
+     * waiting by the hold are submitted again, so that they are planned from
+     * the edited model.
+     * @param Context Context of the edited element, or null.
+     */
+    public static void release(IContext Context) {
+        if (Context == null || isUpdating()) {
+            return;
+        }
+        IContext root = IContextUtils.getRoot(Context);
+        ArrayList<INamed> changed = new ArrayList<INamed>();
+        synchronized (lock) {
+            int[] count = held.get(root);
+            if (count == null || --count[0] > 0) {
+                return;
+            }
+            held.remove(root);
+            List<INamed> stopped = interrupted.remove(root);
+            if (stopped != null) {
+                changed.addAll(stopped);
+            }
+            Pass pass = waiting.remove(root);
+            if (pass != null) {
+                changed.addAll(pass.changed);
+            }
+        }
+        if (!changed.isEmpty()) {
+            submit(root, changed);
+        }
+        // resume the passes on other models that were left waiting
+        synchronized (lock) {
+            if (!waiting.isEmpty() && !scheduled) {
+                schedule();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Set the value of an Input and propagate the change in the background.
+     * The value is validated and assigned immediately.
+     * @param Table Input table.
+     * @param InputName Input name.
+     * @param UserInput User specified input value.
+     * @throws IllegalArgumentException The value is malformed, does not resolve to the class required by the Input, or forms a dependency cycle.
+     */
+    public static void setInput(InputTable Table, String InputName, String UserInput) throws IllegalArgumentException {
+        INamed parent = Table.getParent();
+        IContext context = parent == null ? null : parent.getContext();
+        if (context == null) {
+            Table.setInput(InputName, UserInput);
+            return;
+        }
+        // make the edit without propagating it
+        ModelTransaction tx = ModelTransaction.begin(context);
+        List<INamed> changed = null;
+        try {
+            if (parent instanceof Component) {
+                ((Component) parent).setInput(InputName, UserInput);
+            } else {
+                Table.setInput(InputName, UserInput);
+                ModelTransaction.record(context, parent);
+            }
+        } finally {
+            changed = tx.end();
+        }
+        if (changed != null && !changed.isEmpty()) {
+            submit(tx.getRoot(), changed);
+        }
+    }
+
+    /**
+     * Propagate changes to elements of a model in the background.  The
+     * affected elements are determined immediately; their update methods are
+     * run on the update thread.  A waiting or running pass on the same model
+     * is superseded.
+     * @param Context Context of the changed elements.
+     * @param Changed Changed elements.
+     */
+    public static void submit(IContext Context, Collection<INamed> Changed) {
+        IContext root = IContextUtils.getRoot(Context);
+        // include the elements of any pass that this pass supersedes
+        BitSet seen = new BitSet();
+        ArrayList<INamed> changed = new ArrayList<INamed>();
+        synchronized (lock) {
+            Pass superseded = waiting.remove(root);
+            if (superseded != null) {
+                add(changed, seen, superseded.changed);
+            }
+            if (running != null && running.root == root) {
+                running.cancelled.set(true);
+                add(changed, seen, running.changed);
+            }
+        }
+        add(changed, seen, Changed);
+        // fix the affected elements and their order
+        List<INamed> affected;
+        try {
+            affected = getAffectedElements(root, changed);
+        } catch (GraphCycleException ex) {
+            String stack = ExceptionUtils.getFullStackTrace(ex);
+            logger.log(Level.WARNING,"Could not get elements in topological order\n\n{0}",stack);
+            return;
+        }
+        DependencyGraph graph = getGraph(root);
+        if (graph == null || affected.isEmpty()) {
+            return;
+        }
+        Pass pass = new Pass(root, changed, affected, graph.getLevels(affected));
+        // queue the pass
+        synchronized (lock) {
+            waiting.put(root, pass);
+            if (!scheduled) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * Ask the update thread to run the waiting passes.  Called while holding
+     * the lock.
+     */
+    private static void schedule() {
+        scheduled = true;
+        executor.execute(new Runnable() {
+            public void run() {
+                runWaitingPasses();
+            }
+        });
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Add elements to a list, skipping those already seen.
+     */
+    private static void add(List<INamed> Elements, BitSet Seen, Collection<INamed> Added) {
+        Iterator<INamed> iter = Added.iterator();
+        while (iter.hasNext()) {
+            INamed named = iter.next();
+            if (!Seen.get(named.getId())) {
+                Seen.set(named.getId());
+                Elements.add(named);
+            }
+        }
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * The elements to be updated for a set of changes to a model.
+     */
+    private static final class Pass {
+
+        final IContext root;                    // root context of the model
+        final List<INamed> changed;             // changed elements
+        final List<INamed> affected;            // affected elements in topological order
+        final List<List<INamed>> levels;        // affected elements in levels of independent elements
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final LinkedHashMap<IContext,Boolean> contexts = new LinkedHashMap<IContext,Boolean>(); // nested contexts updated by the pass, and their results
+
+        Pass(IContext Root, List<INamed> Changed, List<INamed> Affected, List<List<INamed>> Levels) {
+            this.root = Root;
+            this.changed = Changed;
+            this.affected = Affected;
+            this.levels = Levels;
+        }
+
+    }
+
+}
@@ -26,12 +26,11 @@ import java.lang.annotation.Target;
 
 /**
  * Default Update method annotation.  Only one method in each Systolic Array 
- * Element is allowed to be marked as Default.
+ * Element is allowed to be marked as Default.  This is enforced at build time
+ * by UpdateProcessor.
  *
  * @author Davis Marques
  * @version 0.1.0
- *
- * TODO: need to find a way to enforce the one Default method per SAE
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.METHOD})
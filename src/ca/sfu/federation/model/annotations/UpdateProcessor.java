@@ -0,0 +1,414 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package ca.sfu.federation.model.annotations;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Annotation processor for the Update, Default and Reference annotations.
+ * For each class that declares Update methods, the processor checks that
+ * the annotations agree with the method signatures, and generates an
+ * UpdateDispatcher that describes the annotated methods and calls the Update
+ * methods directly, without reflection.  The following are reported as
+ * compile errors:
+ * <ul>
+ * <li>an Update annotation that names a different number of parameters than
+ * the method declares, or names a parameter twice</li>
+ * <li>an Update method that is private or static, or that has the same name
+ * as another Update method of the class</li>
+ * <li>an Update method declared by a class that is not a Component</li>
+ * <li>a Default method without an Update annotation, or more than one Default
+ * method in a class</li>
+ * </ul>
+ * The processor is run by the -pre-compile target of the build script.
+ * @author Davis Marques
+ */
+@SupportedAnnotationTypes({
+    "ca.sfu.federation.model.annotations.Update",
+    "ca.sfu.federation.model.annotations.Default",
+    "ca.sfu.federation.model.annotations.Reference"})
+public class UpdateProcessor extends AbstractProcessor {
+
+    private static final String COMPONENT = "ca.sfu.federation.model.Component";
+    private static final String DISPATCHER = "ca.sfu.federation.model.UpdateDispatcher";
+    private static final String INPUT = "ca.sfu.federation.model.Input";
+    private static final String SUFFIX = "UpdateDispatcher";
+
+    private HashSet<String> generated = new HashSet<String>();   // classes for which dispatchers have been generated
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Get the latest supported source version.
+     * @return Source version.
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * Check the annotated methods and generate a dispatcher for each class that
+     * declares Update methods.
+     * @param Annotations Annotation types.
+     * @param Env Round environment.
+     * @return False, so that other processors may also claim the annotations.
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> Annotations, RoundEnvironment Env) {
+        // find the classes that declare annotated methods
+        LinkedHashSet<TypeElement> classes = new LinkedHashSet<TypeElement>();
+        addEnclosingClasses(classes, Env.getElementsAnnotatedWith(Update.class));
+        addEnclosingClasses(classes, Env.getElementsAnnotatedWith(Default.class));
+        addEnclosingClasses(classes, Env.getElementsAnnotatedWith(Reference.class));
+        // check each class and generate its dispatcher
+        Iterator<TypeElement> iter = classes.iterator();
+        while (iter.hasNext()) {
+            TypeElement type = iter.next();
+            List<ExecutableElement> updates = new ArrayList<ExecutableElement>();
+            List<ExecutableElement> references = new ArrayList<ExecutableElement>();
+            int defaultMethod = check(type, updates, references);
+            if (defaultMethod < -1 || updates.isEmpty()) {
+                continue;
+            }
+            String name = processingEnv.getElementUtils().getBinaryName(type).toString();
+            if (this.generated.add(name)) {
+                generate(type, updates, defaultMethod, references);
+            }
+        }
+        return false;
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Add the classes enclosing a set of annotated methods to a set.
+     * @param Classes Set of classes.
+     * @param Annotated Annotated elements.
+     */
+    private static void addEnclosingClasses(Set<TypeElement> Classes, Set<? extends Element> Annotated) {
+        Iterator<? extends Element> iter = Annotated.iterator();
+        while (iter.hasNext()) {
+            Element element = iter.next();
+            if (element.getKind() == ElementKind.METHOD && element.getEnclosingElement() instanceof TypeElement) {
+                Classes.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+    }
+
+    /**
+     * Check the annotated methods of a class.  Errors are reported to the
+     * compiler.
+     * @param Type Class.
+     * @param Updates List to which the Update methods are added, in declaration order.
+     * @param References List to which the Reference methods are added, in declaration order.
+     * @return Index of the Default method in the Update methods, -1 if there is none, or -2 if an error was reported.
+     */
+    private int check(TypeElement Type, List<ExecutableElement> Updates, List<ExecutableElement> References) {
+        // init
+        boolean valid = true;
+        int defaultMethod = -1;
+        HashSet<String> names = new HashSet<String>();
+        // check each annotated method in declaration order
+        Iterator<? extends Element> iter = Type.getEnclosedElements().iterator();
+        while (iter.hasNext()) {
+            Element element = iter.next();
+            if (element.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            ExecutableElement method = (ExecutableElement) element;
+            Update update = method.getAnnotation(Update.class);
+            if (method.getAnnotation(Reference.class) != null) {
+                References.add(method);
+            }
+            if (update == null) {
+                if (method.getAnnotation(Default.class) != null) {
+                    error(method, "Default method " + method.getSimpleName() + " does not have an Update annotation.");
+                    valid = false;
+                }
+                continue;
+            }
+            String name = method.getSimpleName().toString();
+            // the annotation must name each parameter in the signature once
+            String[] parameters = update.parameter();
+            if (parameters.length != method.getParameters().size()) {
+                error(method, "Update annotation of " + name + " names " + parameters.length + " parameters, but the method declares " + method.getParameters().size() + ".");
+                valid = false;
+            }
+            HashSet<String> parameterNames = new HashSet<String>();
+            for (int i=0;i<parameters.length;i++) {
+                if (!parameterNames.add(parameters[i])) {
+                    error(method, "Update annotation of " + name + " names parameter " + parameters[i] + " more than once.");
+                    valid = false;
+                }
+            }
+            // the method must be callable on an instance from the same package
+            if (method.getModifiers().contains(Modifier.PRIVATE) || method.getModifiers().contains(Modifier.STATIC)) {
+                error(method, "Update method " + name + " must not be private or static.");
+                valid = false;
+            }
+            if (!names.add(name)) {
+                error(method, "Update method " + name + " has the same name as another Update method of " + Type.getSimpleName() + ".");
+                valid = false;
+            }
+            if (method.getAnnotation(Default.class) != null) {
+                if (defaultMethod != -1) {
+                    error(method, "Default method " + name + " is the second Default method of " + Type.getSimpleName() + ".");
+                    valid = false;
+                }
+                defaultMethod = Updates.size();
+            }
+            Updates.add(method);
+        }
+        // Update methods must be declared by an accessible Component
+        if (!Updates.isEmpty()) {
+            TypeElement component = processingEnv.getElementUtils().getTypeElement(COMPONENT);
+            TypeMirror erased = processingEnv.getTypeUtils().erasure(Type.asType());
+            if (component != null && !processingEnv.getTypeUtils().isSubtype(erased, processingEnv.getTypeUtils().erasure(component.asType()))) {
+                error(Type, "Class " + Type.getSimpleName() + " declares Update methods but is not a Component.");
+                valid = false;
+            }
+            Element enclosing = Type;
+            while (enclosing instanceof TypeElement) {
+                if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+                    error(Type, "Class " + Type.getSimpleName() + " declares Update methods but is not accessible from its package.");
+                    valid = false;
+                    break;
+                }
+                enclosing = enclosing.getEnclosingElement();
+            }
+        }
+        // return result
+        return valid ? defaultMethod : -2;
+    }
+
+    /**
+     * Report an error.
+     * @param Target Element at which the error is reported.
+     * @param Message Message.
+     */
+    private void error(Element Target, String Message) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, Message, Target);
+    }
+
+    /**
+     * Generate the dispatcher for a class.
+     * @param Type Class.
+     * @param Updates Update methods, in declaration order.
+     * @param DefaultMethod Index of the Default method, or -1.
+     * @param References Reference methods, in declaration order.
+     */
+    private void generate(TypeElement Type, List<ExecutableElement> Updates, int DefaultMethod, List<ExecutableElement> References) {
+        // init
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(Type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(Type).toString();
+        String simpleName = (packageName.length() == 0 ? binaryName : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+        String typeName = erasure(Type.asType());
+        StringBuilder src = new StringBuilder();
+        // header
+        src.append("/* Generated by UpdateProcessor from ").append(binaryName).append(".  Do not edit. */\n");
+        if (packageName.length() > 0) {
+            src.append("package ").append(packageName).append(";\n");
+        }
+        src.append("\n/**\n * Update dispatcher for ").append(Type.getSimpleName()).append(".\n */\n");
+        src.append("public final class ").append(simpleName).append(" extends ").append(DISPATCHER).append(" {\n\n");
+        // descriptor
+        src.append("    public ").append(simpleName).append("() {\n");
+        src.append("        super(new String[] {");
+        for (int i=0;i<Updates.size();i++) {
+            src.append(i == 0 ? "" : ", ").append(literal(Updates.get(i).getSimpleName().toString()));
+        }
+        src.append("},\n              new String[] {");
+        for (int i=0;i<Updates.size();i++) {
+            src.append(i == 0 ? "" : ", ").append(literal(Updates.get(i).getAnnotation(Update.class).description()));
+        }
+        src.append("},\n              new String[][] {");
+        for (int i=0;i<Updates.size();i++) {
+            src.append(i == 0 ? "{" : ", {").append(literals(Updates.get(i).getAnnotation(Update.class).parameter())).append("}");
+        }
+        src.append("},\n              new Class[][] {");
+        for (int i=0;i<Updates.size();i++) {
+            src.append(i == 0 ? "{" : ", {");
+            List<? extends VariableElement> parameters = Updates.get(i).getParameters();
+            for (int j=0;j<parameters.size();j++) {
+                src.append(j == 0 ? "" : ", ").append(erasure(parameters.get(j).asType())).append(".class");
+            }
+            src.append("}");
+        }
+        src.append("},\n              ").append(DefaultMethod).append(",\n              new String[] {");
+        for (int i=0;i<References.size();i++) {
+            src.append(i == 0 ? "" : ", ").append(literal(References.get(i).getSimpleName().toString()));
+        }
+        src.append("},\n              new String[][] {");
+        for (int i=0;i<References.size();i++) {
+            src.append(i == 0 ? "{" : ", {").append(literals(References.get(i).getAnnotation(Reference.class).inContext())).append("}");
+        }
+        src.append("});\n    }\n\n");
+        // dispatch
+        src.append("    @SuppressWarnings(\"unchecked\")\n");
+        src.append("    protected void invoke(").append(COMPONENT).append(" Element, int Index, ").append(INPUT).append("[] Inputs) throws Throwable {\n");
+        src.append("        ").append(typeName).append(" element = (").append(typeName).append(") Element;\n");
+        src.append("        switch (Index) {\n");
+        for (int i=0;i<Updates.size();i++) {
+            ExecutableElement method = Updates.get(i);
+            src.append("            case ").append(i).append(":\n");
+            src.append("                element.").append(method.getSimpleName()).append("(");
+            List<? extends VariableElement> parameters = method.getParameters();
+            for (int j=0;j<parameters.size();j++) {
+                src.append(j == 0 ? "" : ", ").append(argument(parameters.get(j).asType(), j));
+            }
+            src.append(");\n                return;\n");
+        }
+        src.append("            default:\n");
+        src.append("                throw new IllegalArgumentException(\"No update method \" + Index + \" in ").append(binaryName).append(".\");\n");
+        src.append("        }\n    }\n\n}\n");
+        // write the source file
+        String fileName = packageName.length() == 0 ? simpleName : packageName + "." + simpleName;
+        try {
+            Writer writer = processingEnv.getFiler().createSourceFile(fileName, Type).openWriter();
+            try {
+                writer.write(src.toString());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException ex) {
+            error(Type, "Could not write update dispatcher " + fileName + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Get the expression that reads an argument from an Input.  Numeric
+     * arguments are read as primitive values and narrowed as a cast would
+     * narrow them; other arguments are cast from the Input result.
+     * @param Parameter Parameter type.
+     * @param Index Parameter index.
+     * @return Expression.
+     */
+    private String argument(TypeMirror Parameter, int Index) {
+        String input = "Inputs[" + Index + "]";
+        String type = erasure(Parameter);
+        TypeKind kind = Parameter.getKind();
+        if (kind == TypeKind.BOOLEAN) {
+            return "((java.lang.Boolean) " + input + ".getResult()).booleanValue()";
+        } else if (kind == TypeKind.CHAR) {
+            return "((java.lang.Character) " + input + ".getResult()).charValue()";
+        } else if (kind == TypeKind.DOUBLE) {
+            return "doubleValue(" + input + ")";
+        } else if (kind.isPrimitive()) {
+            return "(" + type + ") doubleValue(" + input + ")";
+        }
+        String primitive = unbox(type);
+        if (primitive != null) {
+            String value = "double".equals(primitive) ? "doubleValue(" + input + ")" : "(" + primitive + ") doubleValue(" + input + ")";
+            return type + ".valueOf(" + value + ")";
+        }
+        return "(" + type + ") " + input + ".getResult()";
+    }
+
+    /**
+     * Get the source name of the erasure of a type.
+     * @param Type Type.
+     * @return Type name.
+     */
+    private String erasure(TypeMirror Type) {
+        return processingEnv.getTypeUtils().erasure(Type).toString();
+    }
+
+    /**
+     * Get a Java string literal.
+     * @param Value String value.
+     * @return Literal.
+     */
+    private static String literal(String Value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i=0;i<Value.length();i++) {
+            char c = Value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Get a comma separated list of Java string literals.
+     * @param Values String values.
+     * @return Literals.
+     */
+    private static String literals(String[] Values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i=0;i<Values.length;i++) {
+            sb.append(i == 0 ? "" : ", ").append(literal(Values[i]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the primitive type for a numeric wrapper class.
+     * @param Type Class name.
+     * @return Primitive type name, or null if the class is not a numeric wrapper.
+     */
+    private static String unbox(String Type) {
+        if ("java.lang.Double".equals(Type)) {
+            return "double";
+        } else if ("java.lang.Integer".equals(Type)) {
+            return "int";
+        } else if ("java.lang.Long".equals(Type)) {
+            return "long";
+        } else if ("java.lang.Float".equals(Type)) {
+            return "float";
+        } else if ("java.lang.Short".equals(Type)) {
+            return "short";
+        } else if ("java.lang.Byte".equals(Type)) {
+            return "byte";
+        }
+        return null;
+    }
+
+}
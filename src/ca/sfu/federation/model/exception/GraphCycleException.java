@@ -19,6 +19,11 @@
 
 package ca.sfu.federation.model.exception;
 
+import ca.sfu.federation.model.INamed;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * The propagation could not be updated because it contains a cycle.
  * @author Davis Marques
@@ -26,6 +31,8 @@ package ca.sfu.federation.model.exception;
  */
 public class GraphCycleException extends Exception {
     
+    private List<List<INamed>> cycles = Collections.emptyList();    // members of each cycle
+
     //--------------------------------------------------------------------------
 
     
@@ -43,4 +50,45 @@ public class GraphCycleException extends Exception {
         super(msg);
     }
     
+    /**
+     * GraphCycleException constructor.
+     * @param Cycles Members of each cycle in the graph.
+     */
+    public GraphCycleException(List<List<INamed>> Cycles) {
+        super(getMessage(Cycles));
+        this.cycles = Collections.unmodifiableList(new ArrayList<List<INamed>>(Cycles));
+    }
+    
+    //--------------------------------------------------------------------------
+
+    /**
+     * Get the members of each cycle in the graph.  The members of a cycle are
+     * strongly connected: each member depends, directly or indirectly, on 
+     * every other member.
+     * @return Cycles, or an empty list if the members are not known.
+     */
+    public List<List<INamed>> getCycles() {
+        return this.cycles;
+    }
+    
+    /**
+     * Get a message listing the members of each cycle.
+     * @param Cycles Cycles.
+     * @return Message.
+     */
+    private static String getMessage(List<List<INamed>> Cycles) {
+        StringBuilder sb = new StringBuilder("The dependency graph contains a cycle.");
+        for (int i=0;i<Cycles.size();i++) {
+            List<INamed> cycle = Cycles.get(i);
+            sb.append("\n  Cycle between ");
+            for (int j=0;j<cycle.size();j++) {
+                if (j > 0) {
+                    sb.append(", ");
+                }
+                sb.append(cycle.get(j).getName());
+            }
+        }
+        return sb.toString();
+    }
+    
 } 
@@ -16,6 +16,7 @@
 
 package ca.sfu.federation.model.geometry;
 
+import ca.sfu.federation.ApplicationContext;
 import ca.sfu.federation.model.Component;
 import ca.sfu.federation.model.annotations.Default;
 import ca.sfu.federation.model.annotations.Update;
@@ -149,6 +150,8 @@ public class CoordinateSystem extends Component implements IPoint {
      */
     public void setX(Double X) {
         this.x = X.doubleValue();
+        this.setChanged();
+        this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_PROPERTY_CHANGE));
     }
     
     /**
@@ -157,6 +160,8 @@ public class CoordinateSystem extends Component implements IPoint {
      */
     public void setY(Double Y) {
         this.y = Y.doubleValue();
+        this.setChanged();
+        this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_PROPERTY_CHANGE));
     }
     
     /**
@@ -165,6 +170,8 @@ public class CoordinateSystem extends Component implements IPoint {
      */
     public void setZ(Double Z) {
         this.z = Z.doubleValue();
+        this.setChanged();
+        this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_PROPERTY_CHANGE));
     }
     
     /**
@@ -173,6 +180,8 @@ public class CoordinateSystem extends Component implements IPoint {
      */
     public void setBaseCS(boolean IsBaseCS) {
         this.isBaseCS = IsBaseCS;
+        this.setChanged();
+        this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_PROPERTY_CHANGE));
     }
     
     //--------------------------------------------------------------------------
@@ -16,6 +16,7 @@
 
 package ca.sfu.federation.model.geometry;
 
+import ca.sfu.federation.ApplicationContext;
 import ca.sfu.federation.model.Component;
 import ca.sfu.federation.model.annotations.Default;
 import ca.sfu.federation.model.annotations.Update;
@@ -129,6 +130,8 @@ public class Plane extends Component implements IPlane, IPoint {
      */
     public void setX(Double X) {
         this.o_x = X.doubleValue();
+        this.setChanged();
+        this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_PROPERTY_CHANGE));
     }
     
     /**
@@ -137,6 +140,8 @@ public class Plane extends Component implements IPlane, IPoint {
      */
     public void setY(Double Y) {
         this.o_y = Y.doubleValue();
+        this.setChanged();
+        this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_PROPERTY_CHANGE));
     }
 
     /**
@@ -145,6 +150,8 @@ public class Plane extends Component implements IPlane, IPoint {
      */
     public void setZ(Double Z) {
         this.o_z = Z.doubleValue();
+        this.setChanged();
+        this.notifyObservers(Integer.valueOf(ApplicationContext.EVENT_PROPERTY_CHANGE));
     }
     
     //--------------------------------------------------------------------------
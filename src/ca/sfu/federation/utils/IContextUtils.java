@@ -15,12 +15,12 @@
  */
 package ca.sfu.federation.utils;
 
+import ca.sfu.federation.model.DependencyGraph;
 import ca.sfu.federation.model.IContext;
 import ca.sfu.federation.model.IGraphable;
 import ca.sfu.federation.model.INamed;
 import ca.sfu.federation.model.IUpdateable;
 import ca.sfu.federation.model.exception.GraphCycleException;
-import com.developer.rose.BeanProxy;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -64,60 +64,30 @@ public class IContextUtils {
         return map;
     }
     
+    /**
+     * Get elements in topological order.  Contexts keep a DependencyGraph
+     * and reuse its order between updates; this method builds a temporary 
+     * graph for a single sort.
+     * @param ElementMap Elements.
+     * @return Elements in topological order.
+     * @throws GraphCycleException Graph contains a cycle and can not be updated.
+     */
     public static ArrayList<INamed> getElementsInTopologicalOrder(Map<String,INamed> ElementMap) 
             throws GraphCycleException {
-        ArrayList<INamed> sorted = new ArrayList<INamed>();
-        Iterator iter = ElementMap.values().iterator();
-        while (iter.hasNext()) {
-            INamed named = (INamed) iter.next();
-            if (named instanceof IGraphable) {
-                IGraphable graphobject = (IGraphable) named;
-                // get dependancies for the node
-                LinkedHashMap deps = (LinkedHashMap) graphobject.getDependancies();
-                // for each dependancy, do a topological sort on its subgraph
-                Iterator it = deps.values().iterator();
-                while (it.hasNext()) {
-                    INamed namedDep = (INamed) it.next();
-                    getElementsInTopologicalOrder(namedDep, sorted);
-                }
-                // insert self into list
-                if (!sorted.contains(named)) {
-                    sorted.add(named);
-                }
-            } else {
-                // what should we do with an object that does not have dependancies?
-            }
-        }
-        // return result
-        return sorted;
+        return new DependencyGraph(ElementMap.values()).getElementsInTopologicalOrder();
     }
 
     /**
-     * Get elements in topological order.
-     * @param Named Named object.
-     * @param Sorted List of elements in topological order.
-     * @throws GraphCycleException Graph contains a cycle and can not be updated.
+     * Get the root context of a context.
+     * @param Context Context.
+     * @return The outermost context that contains the context, or the context itself if it has no parent.
      */
-    private static void getElementsInTopologicalOrder(INamed Named, ArrayList Sorted) throws GraphCycleException {
-        // if the NamedObject is already in the list, then we expect that its dependancies
-        // are also already represented there and therefore we don't need to do anything
-        if (Named instanceof IGraphable && !Sorted.contains(Named)) {
-            IGraphable graphobject = (IGraphable) Named;
-            // add nodes upon which the object is dependant first
-            LinkedHashMap deps = (LinkedHashMap) graphobject.getDependancies();
-            Iterator iter = deps.values().iterator();
-            while (iter.hasNext()) {
-                INamed namedDep = (INamed) iter.next();
-                getElementsInTopologicalOrder(namedDep, Sorted);
-            }
-            // add myself
-            if (!Sorted.contains(Named)) {
-                Sorted.add(Named);
-            } else {
-                // graph has a cycle
-                throw new GraphCycleException();
-            }
+    public static IContext getRoot(IContext Context) {
+        IContext root = Context;
+        while (root.getContext() != null) {
+            root = root.getContext();
         }
+        return root;
     }
 
     /**
@@ -133,7 +103,7 @@ public class IContextUtils {
             // if the object can have dependancies
             if (named instanceof IGraphable) {
                 IGraphable graphobject = (IGraphable) named;
-                LinkedHashMap dep = (LinkedHashMap) graphobject.getDependancies();
+                Map dep = graphobject.getDependancies();
                 // if the elements has no dependancies, then it is an independant elements
                 if (dep.size() == 0) {
                     independant.add(named);
@@ -189,74 +159,7 @@ public class IContextUtils {
      * located, or the resultant value is null.
      */
     public static Object lookup(Map<String,INamed> ElementMap, String Query) throws IllegalArgumentException {
-        // initialize
-        INamed named = null;
-        Object result = null;
-        // check to see if the Query is well formed
-        if (Query.length() < 1) {
-            // TODO: do checks for malformed names.  I think there is a Java library that checks names
-            throw new IllegalArgumentException("An empty or null object reference was provided.");
-        }
-        // convert the query into a path
-        String[] path = Query.split("\\.");
-        // lookup the object in the local context
-        if (ElementMap.containsKey(path[0])) {
-            named = ElementMap.get(path[0]);
-        }
-        // if not found, throw an error
-        if (named == null) {
-            throw new IllegalArgumentException("The referenced object could not be found in the current Context.");
-        }
-        // lookup object subparts
-        if (path.length == 1) {
-            // objectname
-            result = named;
-        } else if (path.length == 2) {
-            // objectname.propertyname
-            BeanProxy proxy = null;
-            try {
-                // create a bean proxy object to help us access properties
-                proxy = new BeanProxy(named);
-                // try to retrieve the property value
-                result = proxy.get(path[1]);
-                // if the value is null
-                if (result == null) {
-                    throw new IllegalArgumentException("Property value is null.");
-                }
-            } catch (Exception ex) {
-                throw new IllegalArgumentException("Named property could not be resolved.");
-            }
-        } else if (path.length > 2) {
-            // if the object supports IContext, then send the subquery to the object
-            if (named instanceof IContext) {
-                // convert path back to a normal query
-                String query = "";
-                for (int i = 1; i < path.length; i++) {
-                    if (i + 1 < path.length) {
-                        query += path[i] + ".";
-                    } else {
-                        query += path[i];
-                    }
-                }
-                // cast object as IContext
-                IContext context = (IContext) named;
-                // try to get the object value
-                try {
-                    result = context.lookup(query);
-                } catch (Exception ex) {
-                    String stack = ExceptionUtils.getFullStackTrace(ex);
-                    logger.log(Level.WARNING, "{0}", stack);
-                }
-            } else {
-                // the reference is malformed, throw an error
-                throw new IllegalArgumentException("Object " + named.getName() + " does not support IContext.  Subparts of this object can not be resolved.");
-            }
-        } else {
-            // the reference is malformed, throw an error
-            throw new IllegalArgumentException("Object reference is malformed.");
-        }
-        // return result
-        return result;
+        return PathResolver.lookup(ElementMap, Query);
     }
 
     /**
@@ -18,6 +18,8 @@ package ca.sfu.federation.utils;
 import ca.sfu.federation.model.IContext;
 import ca.sfu.federation.model.INamed;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Common utility methods for INamed objects.
@@ -25,6 +27,9 @@ import java.util.Map;
  */
 public class INamedUtils {
 
+    private static final AtomicInteger ids = new AtomicInteger(); // element id sequence
+    private static final AtomicLong stamps = new AtomicLong();   // modification stamp sequence
+
     /**
      * Get the fully qualified object name.
      * @param Named Named object
@@ -40,12 +45,32 @@ public class INamedUtils {
     }
 
     /**
-     *
+     * Get the next element id.  Ids start at one, so that zero may mark an
+     * object that has not yet been assigned an id.
+     * @return Element id.
+     */
+    public static int nextId() {
+        return ids.incrementAndGet();
+    }
+
+    /**
+     * Get the next modification stamp.  Stamps increase monotonically across
+     * all objects.
+     * @return Modification stamp.
+     */
+    public static long nextModificationStamp() {
+        return stamps.incrementAndGet();
+    }
+
+    /**
+     * Register an object in a context.  The object is assigned its element id,
+     * if it does not yet have one, before it is added to the context.
      * @param Context
      * @param Named
      * @throws Exception
      */
     public static void registerInContext(IContext Context,INamed Named) throws Exception {
+        Named.getId();
         Context.add(Named);
         Named.setContext(Context);
     }
@@ -0,0 +1,341 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.utils;
+
+import ca.sfu.federation.model.IContext;
+import ca.sfu.federation.model.INamed;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang.exception.ExceptionUtils;
+
+/**
+ * Resolves references of the form objectname[.objectname...][.propertyname],
+ * such as scenario0.myAssembly1.Point01.x, against a context.  References are
+ * parsed once into arrays of interned path segments.  Each segment is looked
+ * up in the element index of the context named by the segment before it, so
+ * that no subqueries are built.  Property read methods are found once for each
+ * bean class.  The object and property read method that a reference resolves
+ * to in a context are cached, and reused until an element is added to, 
+ * removed from or renamed in any context of any model.  Contexts signal those
+ * changes by calling invalidate, which discards the cached bindings.  Bindings
+ * hold their objects weakly, so that the cache does not keep a model alive.
+ * @author Davis Marques
+ */
+public final class PathResolver {
+
+    private static final int MAX_PATHS = 10000;     // parsed references kept before the path cache is cleared
+
+    private static final ConcurrentHashMap<String,String[]> paths = new ConcurrentHashMap<String,String[]>(); // parsed references
+
+    private static final ClassValue<Map<String,Method>> readMethods = new ClassValue<Map<String,Method>>() {
+        protected Map<String,Method> computeValue(Class<?> Clazz) {
+            HashMap<String,Method> methods = new HashMap<String,Method>();
+            try {
+                PropertyDescriptor[] pds = Introspector.getBeanInfo(Clazz).getPropertyDescriptors();
+                for (int i=0;i<pds.length;i++) {
+                    if (pds[i].getReadMethod() != null) {
+                        methods.put(pds[i].getName(), pds[i].getReadMethod());
+                    }
+                }
+            } catch (IntrospectionException ex) {
+                String stack = ExceptionUtils.getFullStackTrace(ex);
+                logger.log(Level.WARNING,"Could not get bean properties of {0}\n\n{1}", new Object[]{Clazz.getName(), stack});
+            }
+            return Collections.unmodifiableMap(methods);
+        }
+    };
+
+    private static final Map<IContext,Map<String,Binding>> bindings = Collections.synchronizedMap(new WeakHashMap<IContext,Map<String,Binding>>()); // bindings for each context
+
+    private static final AtomicLong version = new AtomicLong();     // structure version
+
+    private static final Logger logger = Logger.getLogger(PathResolver.class.getName());
+
+    /**
+     * PathResolver constructor.
+     */
+    private PathResolver() {
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Resolve a parsed reference to its target object and property read
+     * method.  Objects after the first are looked up in the element index of
+     * their parent context; if one is not found there, the context is asked to
+     * resolve the rest of the reference, and the reference is not bound.
+     * @param ElementMap Elements of the context in which the reference is resolved.
+     * @param Path Path segments.
+     * @return Binding.
+     * @throws IllegalArgumentException The reference could not be resolved.
+     */
+    private static Binding bind(Map<String,INamed> ElementMap, String[] Path) throws IllegalArgumentException {
+        INamed named = ElementMap.get(Path[0]);
+        if (named == null) {
+            throw new IllegalArgumentException("The referenced object could not be found in the current Context.");
+        }
+        int i = 0;
+        while (true) {
+            int remaining = Path.length - i - 1;
+            if (remaining == 0) {
+                // objectname
+                return new Binding(named, null, i);
+            } else if (remaining == 1) {
+                // objectname.propertyname
+                Method getter = getReadMethod(named.getClass(), Path[i + 1]);
+                if (getter == null) {
+                    return fail(i, "Named property could not be resolved.");
+                }
+                return new Binding(named, getter, i);
+            } else if (!(named instanceof IContext)) {
+                return fail(i, "Object " + named.getName() + " does not support IContext.  Subparts of this object can not be resolved.");
+            }
+            // contextname.subquery
+            INamed child = ((IContext) named).getElementMap().get(Path[i + 1]);
+            if (child == null) {
+                return new Binding((IContext) named, Path, i + 1);
+            }
+            named = child;
+            i++;
+        }
+    }
+
+    /**
+     * Report a reference that can not be resolved.  A failure to resolve the 
+     * first object of a reference is thrown; a failure within a nested context
+     * is reported when the reference is read.
+     * @param Index Index of the path segment that could not be resolved.
+     * @param Message Message.
+     * @return Binding that reports the failure.
+     * @throws IllegalArgumentException The first object of the reference could not be resolved.
+     */
+    private static Binding fail(int Index, String Message) throws IllegalArgumentException {
+        if (Index == 0) {
+            throw new IllegalArgumentException(Message);
+        }
+        return new Binding(Message);
+    }
+
+    /**
+     * Get the read method of a bean property.
+     * @param Clazz Bean class.
+     * @param Property Property name.
+     * @return Read method, or null if the class does not have a readable property of that name.
+     */
+    public static Method getReadMethod(Class Clazz, String Property) {
+        return readMethods.get(Clazz).get(Property);
+    }
+
+    /**
+     * Get the structure version.  The version is advanced each time the
+     * cached bindings are discarded, so a binding made at an earlier version
+     * may be stale.
+     * @return Structure version.
+     */
+    public static long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Discard the cached bindings of all references.  Called when an element
+     * is added to, removed from or renamed in a context, or a context is moved.
+     */
+    public static void invalidate() {
+        version.incrementAndGet();
+        bindings.clear();
+    }
+
+    /**
+     * Retrieve an object, or object property value, by reference from a
+     * context.  The first part of the reference is looked up in the element
+     * map of the context; the context is not asked to look it up.  The 
+     * binding of the reference is cached for the context.
+     * @param Context Context in which the reference is resolved.
+     * @param Query Reference of the form objectname[.objectname...][.propertyname].
+     * @return Referenced object or property value, or null if a part of the reference after the first could not be resolved.
+     * @throws IllegalArgumentException The reference is malformed, its first part could not be found in the context, or the property value is null.
+     */
+    public static Object lookup(IContext Context, String Query) throws IllegalArgumentException {
+        String[] path = parse(Query);
+        long current = version.get();
+        Map<String,Binding> cache = bindings.get(Context);
+        Binding binding = cache == null ? null : cache.get(Query);
+        if (binding == null || binding.version != current || binding.isCleared()) {
+            binding = bind(Context.getElementMap(), path);
+            binding.version = current;
+            if (cache == null) {
+                cache = new ConcurrentHashMap<String,Binding>();
+                bindings.put(Context, cache);
+            }
+            cache.put(Query, binding);
+        }
+        return binding.get();
+    }
+
+    /**
+     * Retrieve an object, or object property value, by reference from a map
+     * of elements.  The binding of the reference is not cached.
+     * @param ElementMap Elements of the context in which the reference is resolved.
+     * @param Query Reference of the form objectname[.objectname...][.propertyname].
+     * @return Referenced object or property value, or null if a part of the reference after the first could not be resolved.
+     * @throws IllegalArgumentException The reference is malformed, its first part could not be found in the context, or the property value is null.
+     */
+    public static Object lookup(Map<String,INamed> ElementMap, String Query) throws IllegalArgumentException {
+        return bind(ElementMap, parse(Query)).get();
+    }
+
+    /**
+     * Split a reference into path segments.  Segments are interned, and the
+     * result is cached.
+     * @param Query Reference of the form objectname[.objectname...][.propertyname].
+     * @return Path segments.  The array must not be modified.
+     * @throws IllegalArgumentException The reference is empty.
+     */
+    public static String[] parse(String Query) throws IllegalArgumentException {
+        String[] path = paths.get(Query);
+        if (path != null) {
+            return path;
+        }
+        if (Query.length() < 1) {
+            throw new IllegalArgumentException("An empty or null object reference was provided.");
+        }
+        path = Query.split("\\.");
+        if (path.length == 0) {
+            throw new IllegalArgumentException("Object reference is malformed.");
+        }
+        for (int i=0;i<path.length;i++) {
+            path[i] = path[i].intern();
+        }
+        if (paths.size() >= MAX_PATHS) {
+            paths.clear();
+        }
+        paths.put(Query, path);
+        return path;
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * A reference resolved to its target object and property read method.
+     */
+    private static final class Binding {
+
+        final WeakReference<INamed> target;     // referenced object, or null if unbound
+        final Method getter;                    // property read method, or null
+        final WeakReference<IContext> context;  // context that resolves the rest of an unbound reference, or null
+        final String subquery;          // rest of an unbound reference
+        final String error;             // reason the reference could not be resolved, or null
+        final boolean nested;           // true if the target is not in the context of the reference
+        volatile long version;          // structure version at which the binding was made
+
+        Binding(INamed Target, Method Getter, int Index) {
+            this.target = new WeakReference<INamed>(Target);
+            this.getter = Getter;
+            this.context = null;
+            this.subquery = null;
+            this.error = null;
+            this.nested = Index > 0;
+        }
+
+        Binding(String Error) {
+            this.target = null;
+            this.getter = null;
+            this.context = null;
+            this.subquery = null;
+            this.error = Error;
+            this.nested = true;
+        }
+
+        Binding(IContext Context, String[] Path, int Index) {
+            StringBuilder sb = new StringBuilder(Path[Index]);
+            for (int i=Index+1;i<Path.length;i++) {
+                sb.append('.').append(Path[i]);
+            }
+            this.target = null;
+            this.getter = null;
+            this.context = new WeakReference<IContext>(Context);
+            this.subquery = sb.toString();
+            this.error = null;
+            this.nested = true;
+        }
+
+        /**
+         * Determine if the referenced object, or the context that resolves the
+         * rest of the reference, has been collected.
+         * @return True if the binding can no longer be used.
+         */
+        boolean isCleared() {
+            return (this.target != null && this.target.get() == null) 
+                    || (this.context != null && this.context.get() == null);
+        }
+
+        /**
+         * Get the referenced object or property value.  Failures to resolve a
+         * reference within a nested context are logged, and null is returned.
+         * @return Value.
+         * @throws IllegalArgumentException The property value is null or can not be read.
+         */
+        Object get() throws IllegalArgumentException {
+            try {
+                if (this.error != null) {
+                    throw new IllegalArgumentException(this.error);
+                } else if (this.context != null) {
+                    IContext parent = this.context.get();
+                    if (parent == null) {
+                        throw new IllegalArgumentException("The referenced object could not be found in the current Context.");
+                    }
+                    return parent.lookup(this.subquery);
+                }
+                INamed named = this.target.get();
+                if (named == null) {
+                    throw new IllegalArgumentException("The referenced object could not be found in the current Context.");
+                } else if (this.getter == null) {
+                    return named;
+                }
+                Object result;
+                try {
+                    result = this.getter.invoke(named);
+                } catch (Exception ex) {
+                    throw new IllegalArgumentException("Named property could not be resolved.");
+                }
+                if (result == null) {
+                    throw new IllegalArgumentException("Named property could not be resolved.");
+                }
+                return result;
+            } catch (IllegalArgumentException ex) {
+                if (!this.nested) {
+                    throw ex;
+                }
+                String stack = ExceptionUtils.getFullStackTrace(ex);
+                logger.log(Level.WARNING, "{0}", stack);
+                return null;
+            }
+        }
+
+    }
+
+}
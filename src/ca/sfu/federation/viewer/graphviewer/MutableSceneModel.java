@@ -57,6 +57,7 @@ public class MutableSceneModel extends Scene implements Observer {
 
     private ArrayList nodes;                 // nodes
     private ArrayList edges;                 // edges
+    private IdentityHashMap edgesByWidget;   // edges attached to each node widget
     private LinkedHashMap annotations;         // annotations
     private int annotationId;             // for generating annotation id
     
@@ -76,6 +77,7 @@ public class MutableSceneModel extends Scene implements Observer {
         this.context = MyContext;
         this.nodes = new ArrayList();
         this.edges = new ArrayList();
+        this.edgesByWidget = new IdentityHashMap();
         this.annotations = new LinkedHashMap();
         this.annotationId = 0;
         // set visual properties
@@ -149,7 +151,7 @@ public class MutableSceneModel extends Scene implements Observer {
         if (Named instanceof IGraphable) {
             // get the dependancies
             IGraphable graphObj = (IGraphable) Named;
-            LinkedHashMap dependancies = (LinkedHashMap) graphObj.getDependancies();
+            Map dependancies = graphObj.getDependancies();
             // create edges for each of the dependancies
             Iterator it = dependancies.values().iterator();
             while (it.hasNext()) {
@@ -176,6 +178,8 @@ public class MutableSceneModel extends Scene implements Observer {
         Widget targetWidget = (Widget) nodes.get(Target.getName());
         edge.setSourceAnchor(AnchorFactory.createRectangularAnchor(sourceWidget));
         edge.setTargetAnchor(AnchorFactory.createRectangularAnchor(targetWidget));
+        this.indexEdge(sourceWidget,edge);
+        this.indexEdge(targetWidget,edge);
         // set visual attributes
         edge.setCheckClipping(true);
         edge.setForeground(ApplicationContext.BACKGROUND_LIGHT);
@@ -224,7 +228,10 @@ public class MutableSceneModel extends Scene implements Observer {
      * @param Named NamedObject.
      */
     private void deleteEdges(INamed Named) {
-        // TODO: need to rethink the whole edge indexing approach to take care of cardinality issues ... there may be more than one edge whose source is a named object
+        Widget widget = (Widget) this.getNodesByTargetName().get(Named.getName());
+        if (widget != null) {
+            this.removeEdgesConnectedToWidget(widget);
+        }
     }
     
     /**
@@ -373,7 +380,7 @@ public class MutableSceneModel extends Scene implements Observer {
      */
     public void initScene() {
         // add viewable elements to the scene
-        LinkedHashMap elements = (LinkedHashMap) this.context.getElementMap();
+        Map elements = this.context.getElementMap();
         Iterator iter = elements.values().iterator();
         while (iter.hasNext()) {
             INamed named = (INamed) iter.next();
@@ -418,24 +425,45 @@ public class MutableSceneModel extends Scene implements Observer {
     }
     
     /**
-     * Remove all edges connected to a particular IVisualWidget.
+     * Index an edge under one of the widgets it connects.
+     * @param MyWidget Widget.
+     * @param Edge Edge.
+     */
+    private void indexEdge(Widget MyWidget, ConnectionWidget Edge) {
+        if (MyWidget == null) {
+            return;
+        }
+        ArrayList list = (ArrayList) this.edgesByWidget.get(MyWidget);
+        if (list == null) {
+            list = new ArrayList();
+            this.edgesByWidget.put(MyWidget,list);
+        }
+        list.add(Edge);
+    }
+
+    /**
+     * Remove all edges connected to a particular IVisualWidget.  The edges are
+     * found in the edge index rather than by scanning every edge of the scene.
      * @param MyWidget Widget.
      */
     private void removeEdgesConnectedToWidget(Widget MyWidget) {
         // edges to be removed
-        ArrayList removeList = new ArrayList();
-        // build list of edges to be removed
-        Iterator e = this.edges.iterator();
-        while (e.hasNext()) {
-            ConnectionWidget edge = (ConnectionWidget) e.next();
-            Widget source = edge.getSourceAnchor().getRelatedWidget();
-            Widget target = edge.getTargetAnchor().getRelatedWidget();
-            if (MyWidget == source || MyWidget == target) {
-                removeList.add(edge);
+        ArrayList removeList = (ArrayList) this.edgesByWidget.remove(MyWidget);
+        // remove the edges from the index of the widget at their other end
+        if (removeList != null) {
+            Iterator e = removeList.iterator();
+            while (e.hasNext()) {
+                ConnectionWidget edge = (ConnectionWidget) e.next();
+                Widget source = edge.getSourceAnchor().getRelatedWidget();
+                Widget other = source == MyWidget ? edge.getTargetAnchor().getRelatedWidget() : source;
+                ArrayList list = (ArrayList) this.edgesByWidget.get(other);
+                if (list != null) {
+                    list.remove(edge);
+                }
             }
         }
         // remove edges from the scene
-        if (removeList.size()>0) {
+        if (removeList != null && removeList.size()>0) {
             this.edges.removeAll(removeList);
             this.edgeLayer.removeChildren(removeList);
         }
@@ -484,7 +512,7 @@ public class MutableSceneModel extends Scene implements Observer {
      */
     private void updateAddElements() {
         // get the list of objects in the context
-        LinkedHashMap elements = (LinkedHashMap) this.context.getElementMap();
+        Map elements = this.context.getElementMap();
         LinkedHashMap nodesByName = (LinkedHashMap) this.getNodesByTargetName();
         // determine which elements are new
         ArrayList newElements = new ArrayList();
@@ -540,7 +568,7 @@ public class MutableSceneModel extends Scene implements Observer {
      */
     private void updateDeleteElements() {
         // get the list of context objects
-        LinkedHashMap elements = (LinkedHashMap) this.context.getElementMap();
+        Map elements = this.context.getElementMap();
         // get the list of visual widgets
         LinkedHashMap widgets = (LinkedHashMap) this.getNodesByTargetName();
         // find out which widget does not have a corresponding model element
@@ -568,8 +596,10 @@ public class MutableSceneModel extends Scene implements Observer {
     private void updateEdges() {
         // clear all current edges
         this.edgeLayer.removeChildren();
+        this.edges.clear();
+        this.edgesByWidget.clear();
         // get the list of namedobjects in the scene
-        LinkedHashMap elements = (LinkedHashMap) this.context.getElementMap();
+        Map elements = this.context.getElementMap();
         Iterator iter = elements.values().iterator();
         while (iter.hasNext()) {
             INamed named = (INamed) iter.next();
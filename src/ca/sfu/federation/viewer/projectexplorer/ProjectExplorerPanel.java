@@ -111,7 +111,7 @@ public class ProjectExplorerPanel extends JPanel implements ActionListener, Obse
         } else if (Named instanceof IContext) {
             IContext context = (IContext) Named;
             // add subnodes
-            LinkedHashMap elements = (LinkedHashMap) context.getElementMap();
+            Map elements = context.getElementMap();
             Iterator iter = elements.values().iterator();
             while (iter.hasNext()) {
                 INamed named = (INamed) iter.next();
@@ -20,11 +20,14 @@
 package ca.sfu.federation.viewer.propertysheet;
 
 import ca.sfu.federation.model.InputTable;
+import ca.sfu.federation.model.UpdateService;
 import java.awt.Color;
 import java.awt.event.ActionEvent;
 import java.util.Observable;
 import java.util.Observer;
 import javax.swing.JTextField;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 /**
  * @author Davis Marques
@@ -35,6 +38,8 @@ public class InputTextField extends JTextField implements Observer {
     //--------------------------------------------------------------------------
 
     
+    private static final Color INVALID = new Color(255,200,200);   // background for input that can not be assigned
+    
     private InputTable inputTable;
     private String inputKey;
     
@@ -56,24 +61,49 @@ public class InputTextField extends JTextField implements Observer {
                 setValueActionListener(evt);
             }
         });
+        // check the value as it is typed
+        this.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                validateValue();
+            }
+            public void removeUpdate(DocumentEvent e) {
+                validateValue();
+            }
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
     }
     
     //--------------------------------------------------------------------------
 
 
     /**
-     * Set the input value.
+     * Set the input value.  The model is updated in the background.
      * @param evt
      */
     public void setValueActionListener(ActionEvent evt) {
         try {
-            this.inputTable.setInput(this.inputKey,this.getText());
+            UpdateService.setInput(this.inputTable,this.inputKey,this.getText());
             this.setBackground(Color.WHITE);
         } catch (Exception ex) {
             this.setBackground(Color.RED);
         }
     }
     
+    /**
+     * Check the current value without assigning it, and mark the field if the
+     * value is malformed or does not resolve to the class required by the
+     * input.
+     */
+    private void validateValue() {
+        try {
+            this.inputTable.validateInput(this.inputKey,this.getText());
+            this.setBackground(Color.WHITE);
+        } catch (Exception ex) {
+            this.setBackground(INVALID);
+        }
+    }
+    
     /**
      * @param o Observable object.
      * @param arg Update argument.
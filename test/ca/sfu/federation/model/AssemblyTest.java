@@ -4,6 +4,16 @@
  */
 package ca.sfu.federation.model;
 
+import ca.sfu.federation.model.annotations.Update;
+import ca.sfu.federation.model.exception.GraphCycleException;
+import ca.sfu.federation.model.geometry.CoordinateSystem;
+import ca.sfu.federation.model.geometry.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import junit.framework.TestCase;
 
 /**
@@ -25,6 +35,545 @@ public class AssemblyTest extends TestCase {
     protected void tearDown() throws Exception {
         super.tearDown();
     }
-    // TODO add test methods here. The name must begin with 'test'. For example:
-    // public void testHello() {}
+
+    public void testTopologicalOrder() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        Point p2 = new Point("p2");
+        p2.registerInContext(assembly);
+        Point p1 = new Point("p1");
+        p1.registerInContext(assembly);
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        ModelTestUtils.placePoints(p1, p2);
+        p2.setInput("X", "p1.x + 1");
+        List order = assembly.getElementsInTopologicalOrder();
+        assertEquals(3, order.size());
+        assertTrue(order.indexOf(cs) < order.indexOf(p1));
+        assertTrue(order.indexOf(p1) < order.indexOf(p2));
+        // removing an element removes its edges
+        assembly.remove(p1);
+        order = assembly.getElementsInTopologicalOrder();
+        assertEquals(2, order.size());
+        assertTrue(order.indexOf(cs) < order.indexOf(p2));
+        // an input that would form a cycle is rejected
+        p1.registerInContext(assembly);
+        try {
+            p1.setInput("X", "p2.x");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            assembly.getElementsInTopologicalOrder();
+        } catch (GraphCycleException ex) {
+            fail("Unexpected GraphCycleException");
+        }
+    }
+
+    public void testCycleDetection() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        final Point[] p = ModelTestUtils.createPoints(assembly, 4);
+        p[1].setInput("X", "p0.x");
+        p[2].setInput("X", "p1.x");
+        p[3].setInput("X", "p2.x");
+        // a graph in which p0 also depends on p2
+        DependencyGraph graph = new DependencyGraph() {
+            protected Collection getDependancies(INamed Named) {
+                ArrayList deps = new ArrayList(super.getDependancies(Named));
+                if (Named == p[0]) {
+                    deps.add(p[2]);
+                }
+                return deps;
+            }
+        };
+        graph.add(cs);
+        for (int i=0;i<p.length;i++) {
+            graph.add(p[i]);
+        }
+        try {
+            graph.getElementsInTopologicalOrder();
+            fail("Expected GraphCycleException");
+        } catch (GraphCycleException ex) {
+            // the downstream element p3 is not a member of the cycle
+            assertEquals(1, ex.getCycles().size());
+            List cycle = ex.getCycles().get(0);
+            assertEquals(3, cycle.size());
+            assertTrue(cycle.contains(p[0]) && cycle.contains(p[1]) && cycle.contains(p[2]));
+        }
+        assertEquals(1, graph.getCycles().size());
+        try {
+            graph.getDownstreamElementsInTopologicalOrder(Collections.singletonList((INamed) p[1]));
+            fail("Expected GraphCycleException");
+        } catch (GraphCycleException ex) {
+            assertEquals(3, ex.getCycles().get(0).size());
+        }
+        // the path of a proposed cycle is reported
+        List path = assembly.getGraph().getCycle(p[0], new Expression("p3.x", assembly));
+        assertEquals(4, path.size());
+        assertSame(p[0], path.get(0));
+        assertSame(p[3], path.get(3));
+        assertNull(assembly.getGraph().getCycle(p[3], new Expression("p0.x", assembly)));
+        try {
+            p[0].setInput("X", "p0.x");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public void testPropagation() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        Point[] p = ModelTestUtils.createPoints(assembly, 3);
+        p[0].setInput("X", "1");
+        p[1].setInput("X", "p0.x + 1");
+        p[2].setInput("X", "5");
+        // only the changed element and its dependants are affected
+        List affected = assembly.getGraph().getDownstreamElementsInTopologicalOrder(Collections.singletonList((INamed) p[0]));
+        assertEquals(2, affected.size());
+        assertSame(p[0], affected.get(0));
+        assertSame(p[1], affected.get(1));
+        // a change is propagated to the dependants
+        p[0].setInput("X", "10");
+        assertEquals(11.0, p[1].getX().doubleValue(), 0.0);
+        assertEquals(5.0, p[2].getX().doubleValue(), 0.0);
+    }
+
+    public void testEditDoesNotReoptimize() throws Exception {
+        CountingModel model = new CountingModel();
+        Scenario scenario = new Scenario("scenario");
+        scenario.registerInContext(model);
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(scenario);
+        Point p = new Point("p");
+        p.registerInContext(scenario);
+        ModelTestUtils.placePoints(p);
+        p.setInput("X", "cs.x");
+        model.update();
+        int optimizations = model.optimizations;
+        // an edit to an input leaves the rest of the model as it was
+        for (int i=0;i<20;i++) {
+            p.setInput("X", "cs.x + " + i);
+        }
+        model.update();
+        assertEquals(optimizations, model.optimizations);
+        assertEquals(19.0, p.getX().doubleValue(), 0.0);
+        // a structural change is optimized before the next update
+        Point q = new Point("q");
+        q.registerInContext(scenario);
+        model.update();
+        assertEquals(optimizations + 1, model.optimizations);
+    }
+
+    public void testSinglePropagation() throws Exception {
+        ParametricModel model = new ParametricModel();
+        Scenario scenario = new Scenario("scenario");
+        scenario.registerInContext(model);
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(scenario);
+        CountingPoint p1 = new CountingPoint("p1");
+        p1.registerInContext(scenario);
+        CountingPoint p2 = new CountingPoint("p2");
+        p2.registerInContext(scenario);
+        ModelTestUtils.placePoints(p1, p2);
+        p1.setInput("X", "0");
+        p2.setInput("X", "p1.x + 1");
+        // each edit updates the element and its dependant once
+        int updates1 = p1.updates;
+        int updates2 = p2.updates;
+        for (int i=0;i<20;i++) {
+            p1.setInput("X", String.valueOf(i));
+        }
+        assertEquals(20, p1.updates - updates1);
+        assertEquals(20, p2.updates - updates2);
+        assertEquals(20.0, p2.getX().doubleValue(), 0.0);
+    }
+
+    public void testParallelUpdate() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        Point[] p = ModelTestUtils.createPoints(assembly, 100);
+        for (int i=0;i<p.length;i++) {
+            p[i].setInput("X", "cs.x + " + i);
+        }
+        // the points are independent of each other
+        List<List<INamed>> levels = assembly.getGraph().getLevels(assembly.getElementsInTopologicalOrder());
+        assertEquals(2, levels.size());
+        assertEquals(1, levels.get(0).size());
+        assertEquals(p.length, levels.get(1).size());
+        cs.setX(new Double(1000));
+        assertTrue(assembly.update());
+        for (int i=0;i<p.length;i++) {
+            assertEquals(1000.0 + i, p[i].getX().doubleValue(), 0.0);
+        }
+    }
+
+    public void testModelGraph() throws Exception {
+        ParametricModel model = new ParametricModel();
+        Scenario scenario = new Scenario("scenario");
+        scenario.registerInContext(model);
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(scenario);
+        Assembly sub = new Assembly("sub");
+        sub.registerInContext(scenario);
+        CoordinateSystem local = new CoordinateSystem("cs");
+        local.registerInContext(sub);
+        Point p = new Point("p");
+        p.registerInContext(sub);
+        Point r = new Point("r");
+        r.registerInContext(sub);
+        Point q = new Point("q");
+        q.registerInContext(scenario);
+        ModelTestUtils.placePoints(p, r, q);
+        p.setInput("X", "1");
+        r.setInput("X", "1");
+        q.setInput("X", "1");
+        q.setInput("X", "sub.p.x + 1");
+        // elements of nested contexts are nodes of the model graph
+        ModelGraph graph = model.getGraph();
+        assertSame(p, graph.get("Model.scenario.sub.p"));
+        assertSame(q, graph.get("Model.scenario.q"));
+        assertFalse(graph.contains(sub));
+        // a reference through a context depends only on the named element
+        List affected = graph.getDownstreamElementsInTopologicalOrder(Collections.singletonList((INamed) p));
+        assertEquals(2, affected.size());
+        assertSame(p, affected.get(0));
+        assertSame(q, affected.get(1));
+        affected = graph.getDownstreamElementsInTopologicalOrder(Collections.singletonList((INamed) r));
+        assertEquals(1, affected.size());
+        // a change is propagated across contexts
+        p.setInput("X", "cs.x + 10");
+        assertEquals(11.0, q.getX().doubleValue(), 0.0);
+        local.setX(new Double(100));
+        assertTrue(model.update());
+        assertEquals(111.0, q.getX().doubleValue(), 0.0);
+    }
+
+    public void testTransaction() throws Exception {
+        ParametricModel model = new ParametricModel();
+        Scenario scenario = new Scenario("scenario");
+        scenario.registerInContext(model);
+        Assembly assembly = new Assembly("assembly");
+        assembly.registerInContext(scenario);
+        final int[] events = new int[1];
+        model.addObserver(new java.util.Observer() {
+            public void update(java.util.Observable o, Object arg) {
+                events[0]++;
+            }
+        });
+        ModelTransaction tx = ModelTransaction.begin(assembly);
+        assertTrue(ModelTransaction.isOpen(model));
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        Point p1 = new Point("p1");
+        p1.registerInContext(assembly);
+        Point p2 = new Point("p2");
+        p2.registerInContext(assembly);
+        ModelTestUtils.placePoints(p1, p2);
+        p1.setInput("X", "3");
+        p2.setInput("X", "p1.x * 2");
+        // inputs are validated as they are edited
+        try {
+            p1.setInput("X", "cs");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        // updates are deferred until the transaction is committed
+        assertEquals(0.0, p2.getX().doubleValue(), 0.0);
+        int before = events[0];
+        assertTrue(tx.commit());
+        assertFalse(ModelTransaction.isOpen(model));
+        assertEquals(6.0, p2.getX().doubleValue(), 0.0);
+        assertEquals(before + 1, events[0]);
+        // edits outside of a transaction are propagated immediately
+        p1.setInput("X", "4");
+        assertEquals(8.0, p2.getX().doubleValue(), 0.0);
+    }
+
+    public void testBackgroundUpdate() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        Point[] p = ModelTestUtils.createPoints(assembly, 3);
+        p[0].setInput("X", "1");
+        p[1].setInput("X", "p0.x + 1");
+        p[2].setInput("X", "p1.x + 1");
+        final Thread[] notified = new Thread[1];
+        assembly.addObserver(new java.util.Observer() {
+            public void update(java.util.Observable o, Object arg) {
+                notified[0] = Thread.currentThread();
+            }
+        });
+        // successive edits supersede each other, and the last edit wins
+        for (int i=0;i<10;i++) {
+            UpdateService.setInput(p[0].getInputTable(), "X", String.valueOf(i * 10));
+        }
+        UpdateService.flush();
+        assertEquals(92.0, p[2].getX().doubleValue(), 0.0);
+        // observers are notified on the event dispatch thread
+        assertNotNull(notified[0]);
+        final boolean[] edt = new boolean[1];
+        javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                edt[0] = Thread.currentThread() == notified[0];
+            }
+        });
+        assertTrue(edt[0]);
+        // invalid input is rejected immediately
+        try {
+            UpdateService.setInput(p[0].getInputTable(), "X", "p2.x");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public void testBackgroundContextUpdate() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        Scenario sub = new Scenario("sub");
+        sub.registerInContext(assembly);
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(sub);
+        Point[] p = ModelTestUtils.createPoints(sub, 2);
+        p[0].setInput("X", "1");
+        p[1].setInput("X", "p0.x + 1");
+        final Thread[] notified = new Thread[1];
+        sub.addObserver(new java.util.Observer() {
+            public void update(java.util.Observable o, Object arg) {
+                notified[0] = Thread.currentThread();
+            }
+        });
+        // a nested context updated in the background notifies its observers
+        // on the event dispatch thread
+        UpdateService.submit(assembly, Collections.singletonList((INamed) sub));
+        UpdateService.flush();
+        assertNotNull(notified[0]);
+        final boolean[] edt = new boolean[1];
+        javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                edt[0] = Thread.currentThread() == notified[0];
+            }
+        });
+        assertTrue(edt[0]);
+    }
+
+    public void testEditsHoldBackgroundUpdates() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        SlowPoint p0 = new SlowPoint("p0");
+        p0.registerInContext(assembly);
+        Point p1 = new Point("p1");
+        p1.registerInContext(assembly);
+        ModelTestUtils.placePoints(p0, p1);
+        p0.setInput("X", "1");
+        p1.setInput("X", "p0.x + 1");
+        // an edit stops the running pass before its next level
+        p0.started = new java.util.concurrent.CountDownLatch(1);
+        UpdateService.setInput(p0.getInputTable(), "X", "5");
+        p0.started.await();
+        UpdateService.hold(assembly);
+        assertFalse(p0.updating);
+        assertEquals(2.0, p1.getX().doubleValue(), 0.0);
+        // and no pass is run on the model until the edit is done
+        Thread.sleep(50);
+        assertEquals(2.0, p1.getX().doubleValue(), 0.0);
+        // the elements of the stopped pass are then updated
+        UpdateService.release(assembly);
+        UpdateService.flush();
+        assertEquals(6.0, p1.getX().doubleValue(), 0.0);
+    }
+
+    public void testUpdateMethodBinding() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        Point p1 = new Point("p1");
+        p1.registerInContext(assembly);
+        Point p2 = new Point("p2");
+        p2.registerInContext(assembly);
+        ca.sfu.federation.model.geometry.Line line = new ca.sfu.federation.model.geometry.Line("line");
+        line.registerInContext(assembly);
+        // wrapper parameters
+        cs.setUpdateMethod("updateByCoordinates");
+        cs.setInput("X", "1 + 1");
+        cs.setInput("Y", "0");
+        cs.setInput("Z", "0");
+        assertTrue(cs.update());
+        assertEquals(2.0, cs.getX().doubleValue(), 0.0);
+        // primitive and object parameters
+        p1.setUpdateMethod("updateByCSAndCoordinates");
+        p2.setUpdateMethod("updateByCSAndCoordinates");
+        p1.setInput("MyCoordinateSystem", "cs");
+        p2.setInput("MyCoordinateSystem", "cs");
+        p1.setInput("X", "0");
+        p1.setInput("Y", "0");
+        p1.setInput("Z", "0");
+        p2.setInput("X", "3");
+        p2.setInput("Y", "4");
+        p2.setInput("Z", "0");
+        line.setUpdateMethod("updateByPoints");
+        line.setInput("StartPoint", "p1");
+        line.setInput("EndPoint", "p2");
+        assertTrue(line.update());
+        assertSame(p1, line.getStartPoint());
+        assertEquals(5.0, line.getLength().doubleValue(), 1e-9);
+    }
+
+    public void testScenarioNamespace() throws Exception {
+        Assembly parent = new Assembly("parent");
+        Point q = new Point("q");
+        q.registerInContext(parent);
+        Assembly other = new Assembly("other");
+        Point a = new Point("a");
+        a.registerInContext(other);
+        Point b = new Point("b");
+        b.registerInContext(other);
+        Scenario scenario = new Scenario("scenario");
+        scenario.registerInContext(parent);
+        scenario.addContextual(a);
+        scenario.addContextual(b);
+        Point local = new Point("a");
+        scenario.add(local);
+        Point c = new Point("c");
+        scenario.add(c);
+        // transactional elements mask contextual elements of the same name
+        Map map = scenario.getElementMap();
+        assertEquals(3, map.size());
+        assertSame(local, map.get("a"));
+        assertSame(b, map.get("b"));
+        assertEquals(Arrays.asList(new Object[] {local, b, c}), new ArrayList(map.values()));
+        assertEquals(4, scenario.getElements().size());
+        // the view follows changes to the scenario
+        scenario.remove(local);
+        assertSame(a, map.get("a"));
+        assertEquals(3, scenario.getElements().size());
+        // names not found in the scenario are resolved in the parent contexts
+        assertSame(q, scenario.lookup("q"));
+        assertSame(c, scenario.lookup("c"));
+        assertFalse(scenario.hasObject("q"));
+        try {
+            scenario.lookup("missing");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public void testElementIds() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        Point p1 = new Point("p1");
+        p1.registerInContext(assembly);
+        Point p2 = new Point("p2");
+        p2.registerInContext(assembly);
+        // ids are assigned on registration and survive renames
+        int id = p1.getId();
+        assertTrue(id > 0);
+        assertTrue(p2.getId() != id);
+        p1.setName("renamed");
+        assertEquals(id, p1.getId());
+    }
+
+    public void testReferenceSlotsDoNotObserve() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        Point p = new Point("p");
+        p.registerInContext(assembly);
+        ModelTestUtils.placePoints(p);
+        p.setInput("X", "cs.x");
+        int csObservers = cs.countObservers();
+        int assemblyObservers = assembly.countObservers();
+        // replaced solvers leave nothing registered on the referenced objects
+        for (int i=0;i<100;i++) {
+            p.setInput("X", "cs.x + " + i);
+        }
+        assertEquals(csObservers, cs.countObservers());
+        assertEquals(assemblyObservers, assembly.countObservers());
+        // references are rebound after a structural change
+        cs.setX(new Double(10));
+        assertTrue(assembly.update());
+        assertEquals(109.0, p.getX().doubleValue(), 0.0);
+        assembly.remove(p);
+        p.registerInContext(assembly);
+        cs.setX(new Double(20));
+        assertTrue(assembly.update());
+        assertEquals(119.0, p.getX().doubleValue(), 0.0);
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Model that counts its optimization passes.
+     */
+    private static class CountingModel extends ParametricModel {
+
+        private int optimizations = 0;
+
+        @Override
+        public int optimize() {
+            this.optimizations++;
+            return super.optimize();
+        }
+
+    }
+
+    /**
+     * Point that counts its updates.
+     */
+    private static class CountingPoint extends Point {
+
+        private int updates = 0;
+
+        public CountingPoint(String Name) {
+            super(Name);
+        }
+
+        @Override
+        @Update(description="Point by coordinate system and coordinates.",
+                parameter={"MyCoordinateSystem","X","Y","Z"})
+        public boolean updateByCSAndCoordinates(CoordinateSystem MyCoordinateSystem, double X, double Y, double Z) {
+            this.updates++;
+            return super.updateByCSAndCoordinates(MyCoordinateSystem, X, Y, Z);
+        }
+
+    }
+
+    /**
+     * Point that is slow to update once it has been started.
+     */
+    private static class SlowPoint extends Point {
+
+        private volatile java.util.concurrent.CountDownLatch started;
+        private volatile boolean updating = false;
+
+        public SlowPoint(String Name) {
+            super(Name);
+        }
+
+        @Override
+        @Update(description="Point by coordinate system and coordinates.",
+                parameter={"MyCoordinateSystem","X","Y","Z"})
+        public boolean updateByCSAndCoordinates(CoordinateSystem MyCoordinateSystem, double X, double Y, double Z) {
+            this.updating = true;
+            try {
+                if (this.started != null) {
+                    this.started.countDown();
+                    Thread.sleep(100);
+                }
+                return super.updateByCSAndCoordinates(MyCoordinateSystem, X, Y, Z);
+            } catch (InterruptedException ex) {
+                return false;
+            } finally {
+                this.updating = false;
+            }
+        }
+
+    }
+
 }
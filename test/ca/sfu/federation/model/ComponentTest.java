@@ -4,6 +4,7 @@
  */
 package ca.sfu.federation.model;
 
+import ca.sfu.federation.model.annotations.Update;
 import junit.framework.TestCase;
 
 /**
@@ -25,6 +26,43 @@ public class ComponentTest extends TestCase {
     protected void tearDown() throws Exception {
         super.tearDown();
     }
-    // TODO add test methods here. The name must begin with 'test'. For example:
-    // public void testHello() {}
+
+    public void testUpdateFailures() throws Exception {
+        FailingComponent component = new FailingComponent("component");
+        // an exception thrown by the update method is reported as a failure
+        component.setUpdateMethod("updateByException");
+        assertFalse(component.update());
+        // an error is not caught
+        component.setUpdateMethod("updateByError");
+        try {
+            component.update();
+            fail();
+        } catch (StackOverflowError ex) {
+            // expected
+        }
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Component whose update methods fail.
+     */
+    private static class FailingComponent extends Component {
+
+        public FailingComponent(String Name) {
+            super(Name);
+        }
+
+        @Update(description="Throws an exception.", parameter={})
+        public boolean updateByException() {
+            throw new IllegalStateException("Update failed.");
+        }
+
+        @Update(description="Throws an error.", parameter={})
+        public boolean updateByError() {
+            throw new StackOverflowError();
+        }
+
+    }
+
 }
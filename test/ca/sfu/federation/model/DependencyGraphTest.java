@@ -0,0 +1,120 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.model.geometry.CoordinateSystem;
+import ca.sfu.federation.model.geometry.Point;
+import java.util.Collection;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author dmarques
+ */
+public class DependencyGraphTest extends TestCase {
+    
+    public DependencyGraphTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testDependants() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        Point p1 = new Point("p1");
+        p1.registerInContext(assembly);
+        Point p2 = new Point("p2");
+        p2.registerInContext(assembly);
+        ModelTestUtils.placePoints(p1, p2);
+        p2.setInput("X", "p1.x + 1");
+        DependencyGraph graph = assembly.getGraph();
+        List<INamed> dependants = graph.getDependants(cs);
+        assertEquals(2, dependants.size());
+        assertTrue(dependants.contains(p1) && dependants.contains(p2));
+        assertEquals(2, graph.getPredecessors(p2).size());
+        assertFalse(graph.hasDependants(p2));
+        assertEquals(dependants, DependencyGraph.getDependantsInModel(cs));
+        // the index follows input changes
+        p2.setInput("X", "1");
+        assertFalse(graph.hasDependants(p1));
+        assertEquals(1, graph.getPredecessors(p2).size());
+        // and removals
+        assembly.remove(p1);
+        assertEquals(1, graph.getDependants(cs).size());
+        assertTrue(graph.getDependants(p1).isEmpty());
+    }
+
+    public void testMissingDependancies() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        Point[] points = ModelTestUtils.createPoints(assembly, 20);
+        for (int i=0;i<points.length;i++) {
+            points[i].setInput("X", "0");
+        }
+        Point other = new Point("other");
+        other.registerInContext(assembly);
+        // the points depend on an element that is not in the graph
+        CountingGraph graph = new CountingGraph();
+        for (int i=0;i<points.length;i++) {
+            graph.add(points[i]);
+        }
+        assertEquals(points.length, graph.rebuilt);
+        // adding an element on which no point waits rebuilds only its own edges
+        graph.add(other);
+        assertEquals(points.length + 1, graph.rebuilt);
+        // adding the missing element rebuilds the edges of the points that wait on it
+        graph.add(cs);
+        assertEquals(2 * points.length + 2, graph.rebuilt);
+        assertEquals(points.length, graph.getDependants(cs).size());
+        // a removed element is missing again, and is found when it returns
+        graph.remove(cs);
+        assertEquals(0, graph.getDependants(cs).size());
+        graph.add(cs);
+        assertEquals(points.length, graph.getDependants(cs).size());
+        List<INamed> order = graph.getElementsInTopologicalOrder();
+        assertTrue(order.indexOf(cs) < order.indexOf(points[0]));
+    }
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Graph that counts how often the edges of an element are rebuilt.
+     */
+    private static class CountingGraph extends DependencyGraph {
+
+        private int rebuilt = 0;
+
+        @Override
+        protected Collection getDependancies(INamed Named) {
+            this.rebuilt++;
+            return super.getDependancies(Named);
+        }
+
+    }
+
+}
@@ -0,0 +1,81 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.model.geometry.Point;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author dmarques
+ */
+public class ElementStoreTest extends TestCase {
+    
+    public ElementStoreTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testElementStore() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        Point[] p = new Point[1000];
+        for (int i=0;i<p.length;i++) {
+            p[i] = new Point("p" + i);
+            p[i].registerInContext(assembly);
+        }
+        assertSame(p[500], assembly.getElementMap().get("p500"));
+        assertSame(p[999], assembly.lookup("p999"));
+        assertEquals("p0_1", assembly.getNextName("p0"));
+        // the element map is a read-only view in insertion order
+        Map map = assembly.getElementMap();
+        assertEquals(1000, map.size());
+        assertEquals("p0", map.keySet().iterator().next());
+        try {
+            map.put("q", p[0]);
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException ex) {
+            // expected
+        }
+        try {
+            assembly.add(new Point("p1"));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        // renamed elements are reindexed
+        p[1].setName("renamed");
+        assertFalse(assembly.hasObject("p1"));
+        assertSame(p[1], assembly.lookup("renamed"));
+        assertSame(p[1], map.get("renamed"));
+        // removed elements are released
+        assembly.remove(p[2]);
+        assertFalse(map.containsKey("p2"));
+        assertEquals(999, map.size());
+        new Point("p2").registerInContext(assembly);
+        assertTrue(assembly.hasObject("p2"));
+    }
+
+}
@@ -15,6 +15,10 @@
  */
 package ca.sfu.federation.model;
 
+import ca.sfu.federation.model.geometry.CoordinateSystem;
+import ca.sfu.federation.model.geometry.Line;
+import ca.sfu.federation.model.geometry.Point;
+import java.util.Arrays;
 import junit.framework.TestCase;
 
 /**
@@ -36,6 +40,318 @@ public class ExpressionSolverTest extends TestCase {
     protected void tearDown() throws Exception {
         super.tearDown();
     }
-    // TODO add test methods here. The name must begin with 'test'. For example:
-    // public void testHello() {}
+
+    /**
+     * Solve the expression in an empty context.
+     */
+    private Object solve(String MyExpression) {
+        ExpressionSolver solver = new ExpressionSolver(MyExpression, new Assembly("context"));
+        solver.solve();
+        return solver.getResult();
+    }
+
+    public void testNumberLiteral() {
+        assertEquals(Double.valueOf(0.5), solve("0.5"));
+        assertEquals(Double.valueOf(1500.0), solve("1.5e3"));
+    }
+
+    public void testStringLiteral() {
+        assertEquals("hello world", solve("\"hello world\""));
+        assertEquals("ab", solve("'a' + 'b'"));
+    }
+
+    public void testOperatorPrecedence() {
+        assertEquals(Double.valueOf(7.0), solve("1 + 2 * 3"));
+        assertEquals(Double.valueOf(9.0), solve("(1 + 2) * 3"));
+        assertEquals(Double.valueOf(1.0), solve("10 - 4 - 5"));
+        assertEquals(Double.valueOf(1.0), solve("7 % 3"));
+        assertEquals(Double.valueOf(512.0), solve("2 ^ 3 ^ 2"));
+    }
+
+    public void testUnaryOperators() {
+        assertEquals(Double.valueOf(-4.0), solve("-2 ^ 2"));
+        assertEquals(Double.valueOf(-1.0), solve("2 * -0.5"));
+    }
+
+    public void testCompiledMatchesInterpreted() {
+        String[] statements = {"1 + 2 * 3", "-(4 - 6) / 4", "2 ^ 0.5 % 1", "'x' + 1"};
+        for (int i=0;i<statements.length;i++) {
+            Expression tree = new Expression(statements[i], new Assembly("context"));
+            assertEquals(statements[i], tree.solve(), ExpressionCompiler.compile(tree).evaluate());
+        }
+    }
+
+    public void testNumericPath() {
+        ExpressionSolver solver = new ExpressionSolver("(1 + 2) * -0.5 ^ 2", new Assembly("context"));
+        assertTrue(solver.isNumeric());
+        assertEquals(-0.75, solver.solveDouble(), 0.0);
+        assertFalse(new ExpressionSolver("'a' + 1", new Assembly("context")).isNumeric());
+    }
+
+    public void testMalformedExpression() {
+        String[] malformed = {"1 +", "(1 + 2", "1 2", "* 3", "1 $ 2"};
+        for (int i=0;i<malformed.length;i++) {
+            try {
+                new Expression(malformed[i], new Assembly("context"));
+                fail("Expected '" + malformed[i] + "' to be rejected");
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+    }
+
+    public void testReference() throws Exception {
+        Assembly assembly = new Assembly("context");
+        Assembly child = new Assembly("child");
+        child.registerInContext(assembly);
+        ExpressionSolver solver = new ExpressionSolver("child", assembly);
+        assertSame(child, solver.getResult());
+        assertTrue(solver.getDependancies().contains(child));
+        assertEquals("childchild", new ExpressionSolver("child.name + child.name", assembly).getResult());
+        assertEquals(Boolean.FALSE, new ExpressionSolver("!child.visible && child.visible", assembly).getResult());
+    }
+
+    public void testReferenceRebinding() throws Exception {
+        Assembly assembly = new Assembly("context");
+        Assembly first = new Assembly("child");
+        first.registerInContext(assembly);
+        ExpressionSolver solver = new ExpressionSolver("child", assembly);
+        solver.solve();
+        assertSame(first, solver.getResult());
+        // replace the referenced object
+        assembly.remove(first);
+        Assembly second = new Assembly("child");
+        second.registerInContext(assembly);
+        solver.solve();
+        assertSame(second, solver.getResult());
+        // the reference can no longer be resolved
+        assembly.remove(second);
+        try {
+            solver.solve();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public void testSharedCompilation() throws Exception {
+        ParametricModel model = new ParametricModel();
+        Scenario scenario = new Scenario("context");
+        scenario.registerInContext(model);
+        Scenario other = new Scenario("other");
+        other.registerInContext(model);
+        ExpressionCache cache = model.getExpressionCache();
+        new ExpressionSolver("0.5", scenario);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        ExpressionSolver solver = new ExpressionSolver(" 0.5 ", scenario);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(new Double(0.5), solver.getResult());
+        // the context is part of the key
+        new ExpressionSolver("0.5", other);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.size());
+        // each model keeps its own expressions
+        ParametricModel second = new ParametricModel();
+        new ExpressionSolver("0.5", second);
+        assertEquals(2, cache.size());
+        assertEquals(1, second.getExpressionCache().size());
+        // contexts outside of a model are not cached
+        new ExpressionSolver("0.5", new Assembly("assembly"));
+        assertEquals(2, cache.size());
+    }
+
+    public void testResultClassFollowsStructure() throws Exception {
+        ParametricModel model = new ParametricModel();
+        Scenario scenario = new Scenario("scenario");
+        scenario.registerInContext(model);
+        Point p1 = new Point("p1");
+        p1.registerInContext(scenario);
+        Line line = new Line("line");
+        line.registerInContext(scenario);
+        line.setUpdateMethod("updateByPoints");
+        line.setInput("StartPoint", "p1");
+        // the cached statement now names an object of another class
+        scenario.remove(p1);
+        new CoordinateSystem("p1").registerInContext(scenario);
+        try {
+            line.setInput("StartPoint", "p1");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public void testResultMemoization() throws Exception {
+        Assembly assembly = new Assembly("context");
+        Assembly child = new Assembly("child");
+        child.registerInContext(assembly);
+        ExpressionSolver solver = new ExpressionSolver("child.name + child.name", assembly);
+        Object first = solver.getResult();
+        assertTrue(solver.isCurrent());
+        assertSame(first, solver.getResult());
+        // a change to the referenced object invalidates the result
+        ExpressionSolver visible = new ExpressionSolver("child.visible", assembly);
+        assertEquals(Boolean.TRUE, visible.getResult());
+        child.setVisible(false);
+        assertFalse(visible.isCurrent());
+        assertEquals(Boolean.FALSE, visible.getResult());
+        // the result is not affected by changes to unrelated objects
+        Assembly other = new Assembly("other");
+        other.setVisible(false);
+        assertTrue(visible.isCurrent());
+    }
+
+    public void testConstantFolding() throws Exception {
+        Assembly assembly = new Assembly("context");
+        Expression folded = new Expression("2*3.5 + -1", assembly);
+        assertEquals(Expression.NUMBER_LITERAL, folded.getType());
+        assertEquals(new Double(6.0), folded.solve());
+        Expression text = new Expression("'a' + 'b'", assembly);
+        assertEquals(Expression.STRING_LITERAL, text.getType());
+        // operators that can not be applied to their operands are left for the solver
+        assertEquals(Expression.COMPOUND, new Expression("'a' - 1", assembly).getType());
+        assertEquals(Expression.COMPOUND, new Expression("!0", assembly).getType());
+    }
+
+    public void testCommonSubexpressions() throws Exception {
+        Assembly assembly = new Assembly("context");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        Point p1 = new Point("p1");
+        p1.registerInContext(assembly);
+        Point p2 = new Point("p2");
+        p2.registerInContext(assembly);
+        p1.setUpdateMethod("updateByCSAndCoordinates");
+        p2.setUpdateMethod("updateByCSAndCoordinates");
+        p1.setInput("MyCoordinateSystem", "cs");
+        p2.setInput("MyCoordinateSystem", "cs");
+        p1.setInput("X", "cs.x * 2 + 1");
+        p2.setInput("X", "cs.x * 2 - 1");
+        Expression x1 = p1.getInputTable().getInput("X").getSolver().getExpression();
+        Expression x2 = p2.getInputTable().getInput("X").getSolver().getExpression();
+        assertNotSame(x1.getParameters()[0], x2.getParameters()[0]);
+        // cs, cs.x and cs.x * 2 are shared
+        assertEquals(3, new ExpressionOptimizer().optimize(assembly));
+        x1 = p1.getInputTable().getInput("X").getSolver().getExpression();
+        x2 = p2.getInputTable().getInput("X").getSolver().getExpression();
+        assertSame(x1.getParameters()[0], x2.getParameters()[0]);
+        // shared evaluators follow changes to the referenced objects
+        cs.setX(new Double(3));
+        assertEquals(new Double(7), p1.getInputTable().getInput("X").getResult());
+        assertEquals(new Double(5), p2.getInputTable().getInput("X").getResult());
+    }
+
+    public void testFunctions() throws Exception {
+        Assembly assembly = new Assembly("context");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        cs.setX(new Double(4));
+        // calls with literal arguments are folded
+        Expression folded = new Expression("max(1, 3, 2) + pow(2, 3)", assembly);
+        assertEquals(Expression.NUMBER_LITERAL, folded.getType());
+        assertEquals(new Double(11), folded.solve());
+        assertEquals(new Double(2), new ExpressionSolver("sqrt(cs.x)", assembly).getResult());
+        assertEquals(new Double(1), new ExpressionSolver("clamp(cs.x, 0, 1)", assembly).getResult());
+        assertEquals(new Double(4), new ExpressionSolver("distance(cs, midpoint(cs, cs)) + dot(cs, cs) / cs.x", assembly).getResult());
+        // the call site result follows changes to named arguments
+        ExpressionSolver solver = new ExpressionSolver("dot(cs, cs)", assembly);
+        assertEquals(new Double(16), solver.getResult());
+        cs.setX(new Double(3));
+        assertEquals(new Double(9), solver.getResult());
+        try {
+            new Expression("unknown(1)", assembly);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            new Expression("sin(1, 2)", assembly);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public void testCollections() throws Exception {
+        Assembly assembly = new Assembly("context");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        cs.setX(new Double(2));
+        assertTrue(Arrays.equals(new double[]{1, 2, 3}, (double[]) solve("[1, 1+1, 3]")));
+        assertTrue(Arrays.equals(new double[0], (double[]) solve("[]")));
+        double[] range = (double[]) solve("[0..100 step 0.5]");
+        assertEquals(201, range.length);
+        assertEquals(100.0, range[200], 0.0);
+        assertTrue(Arrays.equals(new double[]{3, 2, 1}, (double[]) solve("[3..1 step -1]")));
+        // element-wise arithmetic and functions
+        assertTrue(Arrays.equals(new double[]{2, 4, 6}, (double[]) new ExpressionSolver("[1..3] * cs.x", assembly).getResult()));
+        assertTrue(Arrays.equals(new double[]{11, 22}, (double[]) solve("[1, 2] + [10, 20]")));
+        assertTrue(Arrays.equals(new double[]{-1, -2}, (double[]) solve("-[1, 2]")));
+        assertTrue(Arrays.equals(new double[]{1, 2}, (double[]) solve("sqrt([1, 4])")));
+        assertTrue(Arrays.equals(new double[]{0, 2, 4}, (double[]) new ExpressionSolver("[0..cs.x*2 step cs.x]", assembly).getResult()));
+        try {
+            solve("[1, 2] + [1, 2, 3]");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        assertEquals(ExpressionCollections.MAX_RANGE, ((double[]) solve("[1.." + ExpressionCollections.MAX_RANGE + "]")).length);
+        try {
+            solve("[0..1000000000]");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public void testResultTypeInference() throws Exception {
+        Assembly assembly = new Assembly("context");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        assertEquals(Double.class, new ExpressionSolver("cs.x * 2", assembly).getResultClass());
+        assertEquals(String.class, new ExpressionSolver("'a' + cs.x", assembly).getResultClass());
+        assertEquals(double[].class, new ExpressionSolver("[1..cs.x]", assembly).getResultClass());
+        assertEquals(CoordinateSystem.class, new ExpressionSolver("cs", assembly).getResultClass());
+        assertEquals(Double.class, new ExpressionSolver("distance(cs, cs)", assembly).getResultClass());
+        // numeric references take the primitive path
+        assertTrue(new ExpressionSolver("cs.x + 1", assembly).isNumeric());
+        // operators that can not apply to their operands are rejected before solving
+        String[] invalid = {"'a' * cs.x", "!cs.x", "cs + 1", "sqrt(cs)", "distance(cs, 1)"};
+        for (int i=0;i<invalid.length;i++) {
+            try {
+                new ExpressionSolver(invalid[i], assembly);
+                fail("Expected IllegalArgumentException for " + invalid[i]);
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+    }
+
+    public void testInputTypeCheck() throws Exception {
+        Assembly assembly = new Assembly("context");
+        CoordinateSystem cs = new CoordinateSystem("cs");
+        cs.registerInContext(assembly);
+        Point p = new Point("p");
+        p.registerInContext(assembly);
+        p.setUpdateMethod("updateByCSAndCoordinates");
+        p.setInput("X", "cs.x + 1");
+        Input x = p.getInputTable().getInput("X");
+        try {
+            p.setInput("X", "'abc'");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        // a rejected value leaves the input unchanged
+        assertEquals("cs.x + 1", x.getUserInput());
+        try {
+            p.getInputTable().validateInput("MyCoordinateSystem", "cs.x");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        p.getInputTable().validateInput("MyCoordinateSystem", "cs");
+    }
+
 }
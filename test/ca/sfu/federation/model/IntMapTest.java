@@ -0,0 +1,62 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author dmarques
+ */
+public class IntMapTest extends TestCase {
+    
+    public IntMapTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testGrowthAndRemoval() throws Exception {
+        // entries are kept through growth and removal
+        IntMap map = new IntMap();
+        for (int i=1;i<=1000;i++) {
+            map.put(i, i * 2);
+        }
+        for (int i=1;i<=1000;i+=2) {
+            assertEquals(i * 2, map.remove(i));
+        }
+        assertEquals(500, map.size());
+        for (int i=1;i<=1000;i++) {
+            assertEquals(i % 2 == 0 ? i * 2 : -1, map.get(i));
+        }
+        assertEquals(-1, map.remove(1));
+        try {
+            map.put(0, 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.model.geometry.Point;
+
+/**
+ * Model fixtures shared by the model tests.
+ * @author dmarques
+ */
+final class ModelTestUtils {
+
+    private ModelTestUtils() {
+    }
+
+    /**
+     * Create points named p0 to pN in a context, and place them in the
+     * coordinate system cs of that context.
+     * @param Context Context.
+     * @param Count Number of points.
+     * @return Points.
+     */
+    static Point[] createPoints(IContext Context, int Count) throws Exception {
+        Point[] points = new Point[Count];
+        for (int i=0;i<Count;i++) {
+            points[i] = new Point("p" + i);
+            points[i].registerInContext(Context);
+        }
+        placePoints(points);
+        // return result
+        return points;
+    }
+
+    /**
+     * Place points in the coordinate system cs, with Y and Z inputs of 0.  The
+     * X input is left to the test.
+     * @param Points Points.
+     */
+    static void placePoints(Point... Points) throws Exception {
+        for (int i=0;i<Points.length;i++) {
+            Points[i].setUpdateMethod("updateByCSAndCoordinates");
+            Points[i].setInput("MyCoordinateSystem", "cs");
+            Points[i].setInput("Y", "0");
+            Points[i].setInput("Z", "0");
+        }
+    }
+
+}
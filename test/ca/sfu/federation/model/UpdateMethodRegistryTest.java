@@ -0,0 +1,61 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model;
+
+import ca.sfu.federation.model.geometry.Point;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author dmarques
+ */
+public class UpdateMethodRegistryTest extends TestCase {
+    
+    public UpdateMethodRegistryTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testUpdateMethodRegistry() throws Exception {
+        List methods = UpdateMethodRegistry.getUpdateMethods(Point.class);
+        assertEquals(2, methods.size());
+        assertSame(UpdateMethodRegistry.getUpdateMethod(Point.class, "updateByCSAndCoordinates"), UpdateMethodRegistry.getUpdateMethod(Point.class, "updateByCSAndCoordinates"));
+        assertEquals("updateDefault", UpdateMethodRegistry.getDefaultMethod(Point.class).getName());
+        assertNull(UpdateMethodRegistry.getUpdateMethod(Point.class, "getX"));
+        assertTrue(UpdateMethodRegistry.hasMethod(Point.class, "getX"));
+        // the named method exists but is not an update method
+        Point p = new Point("p");
+        try {
+            p.setUpdateMethod("getX");
+            fail("Expected NonExistantUpdateAnnotationException");
+        } catch (ca.sfu.federation.model.exception.NonExistantUpdateAnnotationException ex) {
+            // expected
+        }
+        p.setUpdateMethod("updateByCSAndCoordinates");
+        assertEquals(4, p.getInputTable().getInputs().length);
+    }
+
+}
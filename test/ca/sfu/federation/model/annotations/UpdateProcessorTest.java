@@ -0,0 +1,171 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.model.annotations;
+
+import ca.sfu.federation.model.Assembly;
+import ca.sfu.federation.model.Component;
+import ca.sfu.federation.model.UpdateDispatcher;
+import ca.sfu.federation.model.UpdateMethodRegistry;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import junit.framework.TestCase;
+
+/**
+ * UpdateProcessor test.
+ * @author Davis Marques
+ */
+public class UpdateProcessorTest extends TestCase {
+
+    private File dir;
+
+    public UpdateProcessorTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.dir = File.createTempFile("processor", "");
+        this.dir.delete();
+        this.dir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(this.dir);
+        super.tearDown();
+    }
+
+    /**
+     * Compile a source file with the processor.
+     * @return Compiler errors.
+     */
+    private String compile(String ClassName, String Source, boolean Succeed) throws IOException {
+        File src = new File(this.dir, "src/" + ClassName.replace('.', '/') + ".java");
+        File classes = new File(this.dir, "classes");
+        File generated = new File(this.dir, "generated");
+        src.getParentFile().mkdirs();
+        classes.mkdirs();
+        generated.mkdirs();
+        Writer writer = new FileWriter(src);
+        writer.write(Source);
+        writer.close();
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, null);
+        List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", classes.getPath(), "-s", generated.getPath());
+        JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, options, null, files.getJavaFileObjects(src));
+        task.setProcessors(Arrays.asList(new UpdateProcessor()));
+        boolean result = task.call().booleanValue();
+        files.close();
+        StringBuilder errors = new StringBuilder();
+        Iterator<Diagnostic<? extends JavaFileObject>> iter = diagnostics.getDiagnostics().iterator();
+        while (iter.hasNext()) {
+            Diagnostic<? extends JavaFileObject> diagnostic = iter.next();
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.append(diagnostic.getMessage(null)).append('\n');
+            }
+        }
+        assertEquals(errors.toString(), Succeed, result);
+        return errors.toString();
+    }
+
+    private static void delete(File MyFile) {
+        File[] children = MyFile.listFiles();
+        for (int i=0;children!=null && i<children.length;i++) {
+            delete(children[i]);
+        }
+        MyFile.delete();
+    }
+
+    public void testDispatcher() throws Exception {
+        compile("sample.Counter",
+                "package sample;\n" +
+                "import ca.sfu.federation.model.annotations.*;\n" +
+                "public class Counter extends ca.sfu.federation.model.Component {\n" +
+                "    public int count;\n" +
+                "    public String label;\n" +
+                "    public Counter() { super(\"counter\"); }\n" +
+                "    @Default @Update(parameter={})\n" +
+                "    public boolean updateDefault() { count = 1; return true; }\n" +
+                "    @Update(description=\"By \\\"count\\\" and label.\", parameter={\"Count\",\"Label\"})\n" +
+                "    public boolean updateByCount(int Count, String Label) { count = Count; label = Label; return true; }\n" +
+                "    @Reference(inContext={\"a.b\"})\n" +
+                "    public Object getOwner() { return null; }\n" +
+                "}\n", true);
+        assertTrue(new File(this.dir, "generated/sample/Counter" + UpdateDispatcher.SUFFIX + ".java").exists());
+        URLClassLoader loader = new URLClassLoader(new URL[] {new File(this.dir, "classes").toURI().toURL()}, getClass().getClassLoader());
+        Class counter = loader.loadClass("sample.Counter");
+        assertTrue(UpdateDispatcher.class.isAssignableFrom(loader.loadClass("sample.Counter" + UpdateDispatcher.SUFFIX)));
+        // the registry reads the descriptor
+        assertEquals(2, UpdateMethodRegistry.getUpdateMethods(counter).size());
+        assertEquals("updateDefault", UpdateMethodRegistry.getDefaultMethod(counter).getName());
+        assertEquals("a.b", UpdateMethodRegistry.getReferenceContexts(counter, "getOwner")[0]);
+        assertTrue(UpdateMethodRegistry.hasMethod(counter, "getOwner"));
+        // update through the dispatcher
+        Component element = (Component) counter.newInstance();
+        element.registerInContext(new Assembly("assembly"));
+        element.setUpdateMethod("updateByCount");
+        element.setInput("Count", "2 + 1");
+        element.setInput("Label", "'x'");
+        assertTrue(element.update());
+        Field count = counter.getField("count");
+        assertEquals(3, count.getInt(element));
+        assertEquals("x", counter.getField("label").get(element));
+    }
+
+    public void testParameterCountMismatch() throws Exception {
+        String errors = compile("sample.Bad",
+                "package sample;\n" +
+                "import ca.sfu.federation.model.annotations.*;\n" +
+                "public class Bad extends ca.sfu.federation.model.Component {\n" +
+                "    public Bad() { super(\"bad\"); }\n" +
+                "    @Update(parameter={\"X\"})\n" +
+                "    public boolean updateByXY(double X, double Y) { return true; }\n" +
+                "    @Default\n" +
+                "    public boolean updateOther() { return true; }\n" +
+                "}\n", false);
+        assertTrue(errors, errors.indexOf("names 1 parameters, but the method declares 2") != -1);
+        assertTrue(errors, errors.indexOf("does not have an Update annotation") != -1);
+        assertFalse(new File(this.dir, "generated/sample/Bad" + UpdateDispatcher.SUFFIX + ".java").exists());
+    }
+
+    public void testNotComponent() throws Exception {
+        String errors = compile("sample.Plain",
+                "package sample;\n" +
+                "import ca.sfu.federation.model.annotations.*;\n" +
+                "public class Plain {\n" +
+                "    @Update(parameter={})\n" +
+                "    public boolean updateDefault() { return true; }\n" +
+                "}\n", false);
+        assertTrue(errors, errors.indexOf("is not a Component") != -1);
+    }
+
+}
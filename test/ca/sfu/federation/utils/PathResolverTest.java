@@ -0,0 +1,94 @@
+/**
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package ca.sfu.federation.utils;
+
+import ca.sfu.federation.model.Assembly;
+import ca.sfu.federation.model.geometry.Point;
+import java.lang.ref.WeakReference;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author dmarques
+ */
+public class PathResolverTest extends TestCase {
+    
+    public PathResolverTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testPathResolver() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        Assembly sub = new Assembly("sub");
+        sub.registerInContext(assembly);
+        Point p = new Point("p");
+        p.registerInContext(sub);
+        p.setX(2.0);
+        // references are parsed once
+        String[] path = PathResolver.parse("sub.p.x");
+        assertSame(path, PathResolver.parse("sub.p.x"));
+        assertEquals(3, path.length);
+        // nested references resolve through each context
+        assertEquals(Double.valueOf(2.0), assembly.lookup("sub.p.x"));
+        p.setX(3.0);
+        assertEquals(Double.valueOf(3.0), assembly.lookup("sub.p.x"));
+        // bindings follow structural changes
+        sub.remove(p);
+        assertNull(assembly.lookup("sub.p.x"));
+        Point q = new Point("q");
+        q.registerInContext(sub);
+        q.setX(5.0);
+        q.setName("p");
+        assertEquals(Double.valueOf(5.0), assembly.lookup("sub.p.x"));
+        try {
+            assembly.lookup("missing.x");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public void testBindingsAreReleased() throws Exception {
+        Assembly assembly = new Assembly("assembly");
+        Assembly sub = new Assembly("sub");
+        sub.registerInContext(assembly);
+        Point p = new Point("p");
+        p.registerInContext(sub);
+        assertEquals(Double.valueOf(0.0), assembly.lookup("sub.p.x"));
+        assertEquals(Double.valueOf(0.0), sub.lookup("p.x"));
+        // the cached bindings do not keep the contexts alive
+        WeakReference ref = new WeakReference(assembly);
+        assembly = null;
+        sub = null;
+        p = null;
+        for (int i=0;i<50 && ref.get() != null;i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+    }
+
+}